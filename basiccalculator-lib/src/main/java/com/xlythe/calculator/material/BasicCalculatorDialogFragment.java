@@ -16,18 +16,13 @@
 package com.xlythe.calculator.material;
 
 import android.animation.Animator;
-import android.animation.Animator.AnimatorListener;
-import android.animation.AnimatorSet;
-import android.animation.ArgbEvaluator;
-import android.animation.ObjectAnimator;
-import android.animation.ValueAnimator;
 import android.annotation.SuppressLint;
 import android.app.Dialog;
+import android.content.Context;
 import android.content.res.Resources;
+import android.graphics.Rect;
 import android.os.Bundle;
-import android.text.Editable;
 import android.text.TextUtils;
-import android.text.TextWatcher;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -36,16 +31,18 @@ import android.view.View;
 import android.view.View.OnKeyListener;
 import android.view.View.OnLongClickListener;
 import android.view.ViewGroup;
+import android.view.ViewStub;
 import android.view.Window;
-import android.view.animation.AccelerateDecelerateInterpolator;
 import android.widget.Button;
 import android.widget.PopupMenu;
 import android.widget.TextView;
 
 import androidx.annotation.ColorInt;
 import androidx.annotation.IdRes;
+import androidx.annotation.LayoutRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
 import androidx.fragment.app.DialogFragment;
 import androidx.lifecycle.MutableLiveData;
 
@@ -53,19 +50,20 @@ import com.xlythe.calculator.material.CalculatorExpressionEvaluator.EvaluateCall
 import com.xlythe.calculator.material.util.TextUtil;
 import com.xlythe.calculator.material.util.ViewUtils;
 import com.xlythe.calculator.material.view.AnimationFinishedListener;
+import com.xlythe.calculator.material.view.CalculatorKeypadView;
+import com.xlythe.calculator.material.view.CalculatorPadView;
 import com.xlythe.calculator.material.view.DisplayOverlay;
+import com.xlythe.calculator.material.view.DisplayTransitions;
+import com.xlythe.calculator.material.view.HistoryAdapter;
 import com.xlythe.calculator.material.view.FormattedNumberEditText;
+import com.xlythe.calculator.material.view.FrameMonitor;
 import com.xlythe.calculator.material.view.ResizingEditText.OnTextSizeChangeListener;
+import com.xlythe.calculator.material.view.RevealOverlay;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
-import io.codetail.animation.SupportAnimator;
-import io.codetail.animation.ViewAnimationUtils;
-import io.codetail.widget.RevealView;
-
 /**
  * A very basic calculator. Maps button clicks to the display, and solves on each key press.
  */
@@ -76,16 +74,18 @@ public class BasicCalculatorDialogFragment extends DialogFragment
     // instance state keys
     private static final String KEY_CURRENT_STATE = NAME + "_currentState";
     private static final String KEY_CURRENT_EXPRESSION = NAME + "_currentExpression";
-    private final ViewGroup.LayoutParams mLayoutParams = new ViewGroup.LayoutParams(
-            ViewGroup.LayoutParams.MATCH_PARENT,
-            ViewGroup.LayoutParams.MATCH_PARENT);
     private CalculatorState mCurrentState;
 
-    private DecimalFormat decimalFormat = new DecimalFormat("#.########", DecimalFormatSymbols.getInstance(Locale.US));
-    private DecimalFormat decimalFormatSci = new DecimalFormat("0.########E0", DecimalFormatSymbols.getInstance(Locale.US));
-
     private CalculatorExpressionTokenizer mTokenizer;
     private CalculatorExpressionEvaluator mEvaluator;
+    private HistoryStore mHistory;
+    @Nullable
+    private EvaluationMetrics mMetrics;
+    @Nullable
+    private FrameMonitor mFrameMonitor;
+    // The result of the last evaluation, exactly.
+    @Nullable
+    private Double mLastResult;
     private DisplayOverlay mDisplayView;
     private FormattedNumberEditText mFormulaEditText;
     private TextView mResultEditText;
@@ -93,43 +93,56 @@ public class BasicCalculatorDialogFragment extends DialogFragment
     private View mEqualButton;
     private View mClearButton;
     private TextView mInfoView;
-    private final TextWatcher mFormulaTextWatcher = new TextWatcher() {
+    private final FormattedNumberEditText.OnExpressionChangeListener mFormulaChangeListener =
+            new FormattedNumberEditText.OnExpressionChangeListener() {
         @Override
-        public void beforeTextChanged(CharSequence charSequence, int start, int count, int after) {
+        public void onExpressionChanged(FormattedNumberEditText.ExpressionChange change) {
+            setState(CalculatorState.INPUT);
+            mEvaluator.evaluateAsync(change.getText(), BasicCalculatorDialogFragment.this);
         }
-
+    };
+    private final List<CalculatorKeypadView> mKeypads = new ArrayList<>();
+    private final CalculatorKeypadView.OnKeyClickListener mKeyClickListener =
+            new CalculatorKeypadView.OnKeyClickListener() {
         @Override
-        public void onTextChanged(CharSequence charSequence, int start, int count, int after) {
+        public void onKeyClick(CalculatorKeypadView keypad, int id, CharSequence text) {
+            mCurrentButton = keypad;
+            mCurrentKeyId = id;
+            onButtonClick(id, text);
         }
 
         @Override
-        public void afterTextChanged(Editable editable) {
-            setState(CalculatorState.INPUT);
-            mEvaluator.evaluate(editable, BasicCalculatorDialogFragment.this);
+        public boolean onKeyLongClick(CalculatorKeypadView keypad, int id) {
+            mCurrentButton = keypad;
+            mCurrentKeyId = id;
+            return onButtonLongClick(id);
         }
     };
     private View mCurrentButton;
+    // The key of mCurrentButton that was pressed, if it's a keypad.
+    private int mCurrentKeyId = View.NO_ID;
     private Animator mCurrentAnimator;
     private final OnKeyListener mFormulaOnKeyListener = new OnKeyListener() {
         @Override
         public boolean onKey(View view, int keyCode, KeyEvent keyEvent) {
             if (keyCode == KeyEvent.KEYCODE_NUMPAD_ENTER || keyCode == KeyEvent.KEYCODE_ENTER) {
                 if (keyEvent.getAction() == KeyEvent.ACTION_UP) {
-                    mCurrentButton = mEqualButton;
+                    setCurrentButton(mEqualButton, R.id.eq);
                     onEquals();
                 }
                 // ignore all other actions
                 return true;
             }
-            if (mFormulaEditText != null) {
-                setState(CalculatorState.INPUT);
-                mEvaluator.evaluate(mFormulaEditText.getCleanText(),
-                        BasicCalculatorDialogFragment.this);
-            }
             return false;
         }
     };
     private ViewGroup mDisplayForeground;
+    private RevealOverlay mRevealOverlay;
+    private DisplayTransitions mTransitions;
+    @Nullable
+    private CalculatorPadView mPadView;
+    private final int[] mRevealLocation = new int[2];
+    private final Rect mRevealBounds = new Rect();
 
     private View mConfirmButton;
     private TextView mConfirmResultTextView;
@@ -137,10 +150,58 @@ public class BasicCalculatorDialogFragment extends DialogFragment
     @Nullable
     private Consumer<Double> mOnResultConfirmed;
 
+    /**
+     * Loads the calculator engine and settings on a background thread, so the first calculator
+     * opens faster. Call it early, e.g. when the app starts. Calling it again does nothing.
+     */
+    public static void prewarm(Context context) {
+        prewarm(context, false);
+    }
+
+    /**
+     * Like {@link #prewarm(Context)}, and if {@code inflateView} is set and {@code context} is an
+     * activity, also inflates the calculator's views in the background. The next calculator
+     * dialog shown in that activity uses them instead of inflating its own. Call it on the main
+     * thread.
+     * <p>
+     * The views get the activity's dialog theme, so they're only right for fragments that don't
+     * set their own style.
+     */
+    public static void prewarm(Context context, boolean inflateView) {
+        CalculatorPrewarmer.prewarmEngine(context);
+        if (inflateView) {
+            CalculatorPrewarmer.prewarmView(context);
+        }
+    }
+
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
-        return inflater.inflate(R.layout.bscalc_fragment_basic_calculator, container, false);
+        View view = getShowsDialog() ? CalculatorPrewarmer.takeView(inflater.getContext()) : null;
+        if (view != null) {
+            return view;
+        }
+        view = inflater.inflate(R.layout.bscalc_fragment_basic_calculator, container, false);
+        boolean useKeypadView = getResources().getBoolean(R.bool.bscalc_use_keypad_view);
+        inflateStub(view, R.id.base_stub, getBasePadLayout(useKeypadView));
+        inflateStub(view, R.id.pad_advanced_stub, getAdvancedPadLayout(useKeypadView));
+        return view;
+    }
+
+    @LayoutRes
+    static int getBasePadLayout(boolean useKeypadView) {
+        return useKeypadView ? R.layout.bscalc_pad_base_keypad : R.layout.bscalc_pad_base;
+    }
+
+    @LayoutRes
+    static int getAdvancedPadLayout(boolean useKeypadView) {
+        return useKeypadView ? R.layout.bscalc_pad_advanced_keypad : R.layout.bscalc_pad_advanced;
+    }
+
+    private static void inflateStub(View view, @IdRes int id, @LayoutRes int layout) {
+        ViewStub stub = view.findViewById(id);
+        stub.setLayoutResource(layout);
+        stub.inflate();
     }
 
     @Override
@@ -148,7 +209,19 @@ public class BasicCalculatorDialogFragment extends DialogFragment
         super.onViewCreated(view, savedInstanceState);
         savedInstanceState = savedInstanceState == null ? Bundle.EMPTY : savedInstanceState;
         initialize(savedInstanceState);
-        mEvaluator.evaluate(mFormulaEditText.getCleanText(), this);
+        mEvaluator.evaluateAsync(mFormulaEditText.getCleanText(), this);
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mEvaluator.shutdown();
+        // Stops the history from telling the adapter about changes.
+        mDisplayView.setAdapter(null);
+        if (mFrameMonitor != null) {
+            mFrameMonitor.stop();
+        }
+        mPadView = null;
     }
 
     public final <T extends View> T findViewById(@IdRes int id) {
@@ -159,39 +232,68 @@ public class BasicCalculatorDialogFragment extends DialogFragment
 
         mDisplayView = findViewById(R.id.display);
         mDisplayForeground = findViewById(R.id.the_clear_animation);
+        mRevealOverlay = new RevealOverlay(mDisplayForeground);
         mFormulaEditText = findViewById(R.id.formula);
         mResultEditText = findViewById(R.id.result);
         mDeleteButton = findViewById(R.id.del);
         mClearButton = findViewById(R.id.clr);
-        mEqualButton = findViewById(R.id.pad_numeric).findViewById(R.id.eq);
         mInfoView = findViewById(R.id.info);
+        mTransitions = new DisplayTransitions(mFormulaEditText, mResultEditText);
+        View padView = findViewById(R.id.pad_pager);
+        if (padView instanceof CalculatorPadView) {
+            mPadView = (CalculatorPadView) padView;
+            mPadView.setFrameMonitor(mFrameMonitor);
+        }
 
-        if (mEqualButton == null || mEqualButton.getVisibility() != View.VISIBLE) {
-            mEqualButton = findViewById(R.id.pad_operator).findViewById(R.id.eq);
+        // With keypad views, the pads and their buttons don't exist.
+        View numericPad = findViewById(R.id.pad_numeric);
+        View operatorPad = findViewById(R.id.pad_operator);
+        mEqualButton = numericPad != null ? numericPad.findViewById(R.id.eq) : null;
+        if ((mEqualButton == null || mEqualButton.getVisibility() != View.VISIBLE) && operatorPad != null) {
+            mEqualButton = operatorPad.findViewById(R.id.eq);
+        }
+        for (View pad : new View[]{findViewById(R.id.base), findViewById(R.id.pad_advanced)}) {
+            if (pad instanceof CalculatorKeypadView) {
+                CalculatorKeypadView keypad = (CalculatorKeypadView) pad;
+                keypad.setOnKeyClickListener(mKeyClickListener);
+                mKeypads.add(keypad);
+            }
         }
 
         mTokenizer = new CalculatorExpressionTokenizer(requireContext());
-        mEvaluator = new CalculatorExpressionEvaluator(mTokenizer);
+        mEvaluator = new CalculatorExpressionEvaluator(mTokenizer,
+                CompiledExpressionCache.DEFAULT_MAX_SIZE,
+                ContextCompat.getMainExecutor(requireContext()));
+        mEvaluator.setMetrics(mMetrics);
+        mHistory = CalculatorHistory.get(requireContext());
+        mDisplayView.setAdapter(new HistoryAdapter(mHistory, mTokenizer));
 
         setState(CalculatorState.values()[
                 savedInstanceState.getInt(KEY_CURRENT_STATE, CalculatorState.INPUT.ordinal())]);
 
         mFormulaEditText.setText(mTokenizer.getLocalizedExpression(
                 savedInstanceState.getString(KEY_CURRENT_EXPRESSION, "")));
-        mFormulaEditText.addTextChangedListener(mFormulaTextWatcher);
+        mFormulaEditText.addOnExpressionChangeListener(mFormulaChangeListener);
         mFormulaEditText.setOnKeyListener(mFormulaOnKeyListener);
         mFormulaEditText.setOnTextSizeChangeListener(this);
         mFormulaEditText.setShowSoftInputOnFocus(false);
 
-        mDeleteButton.setOnLongClickListener(this);
-        findViewById(R.id.lparen).setOnLongClickListener(this);
-        findViewById(R.id.rparen).setOnLongClickListener(this);
-        findViewById(R.id.fun_sin).setOnLongClickListener(this);
-        findViewById(R.id.fun_cos).setOnLongClickListener(this);
-        findViewById(R.id.fun_tan).setOnLongClickListener(this);
+        // Keys of keypad views are long clickable if their xml says so.
+        int[] longClickIds = {R.id.del, R.id.lparen, R.id.rparen, R.id.fun_sin, R.id.fun_cos, R.id.fun_tan};
+        for (int viewId : longClickIds) {
+            View button = findViewById(viewId);
+            if (button != null) {
+                button.setOnLongClickListener(this);
+            }
+        }
 
         Button dot = findViewById(R.id.dec_point);
-        dot.setText(String.valueOf(Constants.DECIMAL_POINT));
+        if (dot != null) {
+            dot.setText(String.valueOf(Constants.DECIMAL_POINT));
+        }
+        for (CalculatorKeypadView keypad : mKeypads) {
+            keypad.setKeyText(R.id.dec_point, String.valueOf(Constants.DECIMAL_POINT));
+        }
 
         int[] viewIds = {R.id.digit_0, R.id.digit_1, R.id.digit_2, R.id.digit_3, R.id.digit_4,
                 R.id.digit_5, R.id.digit_6, R.id.digit_7, R.id.digit_7, R.id.digit_8, R.id.digit_9,
@@ -200,7 +302,10 @@ public class BasicCalculatorDialogFragment extends DialogFragment
                 R.id.const_pi, R.id.const_e, R.id.op_pow, R.id.op_div, R.id.lparen, R.id.rparen, R.id.btn_sqrt,
                 R.id.btn_const_imaginary, R.id.btn_percent, R.id.del,};
         for (int viewId : viewIds) {
-            findViewById(viewId).setOnClickListener(this::onButtonClick);
+            View button = findViewById(viewId);
+            if (button != null) {
+                button.setOnClickListener(this::onButtonClick);
+            }
         }
 
         // DEG|RAD button
@@ -258,7 +363,7 @@ public class BasicCalculatorDialogFragment extends DialogFragment
                     }
                     invalidateDetails();
                     setState(CalculatorState.INPUT);
-                    getEvaluator().evaluate(mFormulaEditText.getCleanText(), BasicCalculatorDialogFragment.this);
+                    getEvaluator().evaluateAsync(mFormulaEditText.getCleanText(), BasicCalculatorDialogFragment.this);
                     return true;
                 }
             });
@@ -293,9 +398,54 @@ public class BasicCalculatorDialogFragment extends DialogFragment
         saveHistory(mFormulaEditText.getCleanText(), TextUtil.getCleanText(mResultEditText));
     }
 
+    /**
+     * Adds a calculation to the history, unless there's nothing to it (no expression, or one
+     * that's already the result) or it's too long to keep. Returns false if either is missing.
+     * <p>
+     * Both are taken as displayed, and normalized here. Normalizing isn't idempotent (in degree
+     * mode "sin(" becomes "sind(", and then "sindd("), so don't pass a normalized expression.
+     */
     protected boolean saveHistory(String expr, String result) {
-        return result != null && expr != null;
+        if (result == null || expr == null) {
+            return false;
+        }
+        String normalizedExpr = mTokenizer.getNormalizedExpression(expr);
+        String normalizedResult = mTokenizer.getNormalizedExpression(result);
+        if (!normalizedExpr.isEmpty() && !normalizedExpr.equals(normalizedResult)) {
+            // The displayed result is rounded; use the exact one if it's what's displayed.
+            Double value = mLastResult != null && formatForReading(mLastResult).equals(result)
+                    ? mLastResult : parseResult(normalizedResult);
+            // A pasted expression can be too long for a record; it's left out of the history.
+            if (value != null && HistoryStore.canAppend(normalizedExpr)) {
+                mHistory.append(normalizedExpr, mTokenizer.useRadians(), value);
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private static Double parseResult(String normalizedResult) {
+        try {
+            return Double.parseDouble(normalizedResult);
+        } catch (NumberFormatException e) {
+            // An error message.
+            return null;
+        }
+    }
+
+    /**
+     * Returns the history that {@link #saveHistory} adds to.
+     */
+    protected HistoryStore getHistory() {
+        return mHistory;
+    }
 
+    /**
+     * Returns the index that finds calculations in {@link #getHistory} by part of their
+     * expression or result. It's built in the background the first time it's asked for.
+     */
+    protected HistorySearchIndex getHistorySearchIndex() {
+        return CalculatorHistory.getSearchIndex(requireContext());
     }
 
     @Override
@@ -320,11 +470,11 @@ public class BasicCalculatorDialogFragment extends DialogFragment
             invalidateEqualsButton();
 
             if (state == CalculatorState.RESULT || state == CalculatorState.ERROR) {
-                mDeleteButton.setVisibility(View.GONE);
-                mClearButton.setVisibility(View.VISIBLE);
+                setButtonVisibility(mDeleteButton, R.id.del, View.GONE);
+                setButtonVisibility(mClearButton, R.id.clr, View.VISIBLE);
             } else {
-                mDeleteButton.setVisibility(View.VISIBLE);
-                mClearButton.setVisibility(View.GONE);
+                setButtonVisibility(mDeleteButton, R.id.del, View.VISIBLE);
+                setButtonVisibility(mClearButton, R.id.clr, View.GONE);
             }
 
             if (state == CalculatorState.ERROR) {
@@ -348,10 +498,45 @@ public class BasicCalculatorDialogFragment extends DialogFragment
 //        }
 //    }
 
-    @SuppressLint("NonConstantResourceId")
+    private void setButtonVisibility(@Nullable View button, @IdRes int id, int visibility) {
+        if (button != null) {
+            button.setVisibility(visibility);
+        }
+        for (CalculatorKeypadView keypad : mKeypads) {
+            keypad.setKeyVisibility(id, visibility);
+        }
+    }
+
+    /**
+     * Sets the button that animations start from: {@code button}, or else the key {@code id} of
+     * a keypad view.
+     */
+    private void setCurrentButton(@Nullable View button, @IdRes int id) {
+        mCurrentButton = button;
+        mCurrentKeyId = View.NO_ID;
+        if (button != null) {
+            return;
+        }
+        for (CalculatorKeypadView keypad : mKeypads) {
+            if (keypad.hasKey(id)) {
+                mCurrentButton = keypad;
+                mCurrentKeyId = id;
+                return;
+            }
+        }
+    }
+
     public void onButtonClick(View view) {
         mCurrentButton = view;
-        int id = view.getId();
+        mCurrentKeyId = View.NO_ID;
+        onButtonClick(view.getId(), view instanceof TextView ? ((TextView) view).getText() : null);
+    }
+
+    /**
+     * Handles a click on the button or keypad key with the given id and text.
+     */
+    @SuppressLint("NonConstantResourceId")
+    protected void onButtonClick(@IdRes int id, CharSequence text) {
         if (id == R.id.eq) {
             onEquals();
         } else if (id == R.id.del) {
@@ -359,19 +544,26 @@ public class BasicCalculatorDialogFragment extends DialogFragment
         } else if (id == R.id.clr) {
             onClear();
         } else if (id == R.id.fun_cos || id == R.id.fun_sin || id == R.id.fun_tan || id == R.id.fun_ln || id == R.id.fun_log) {// Add left parenthesis after functions.
-            insert(((Button) view).getText() + "(");
+            insert(text + "(");
         } else if (id == R.id.op_add || id == R.id.op_sub || id == R.id.op_mul || id == R.id.op_div || id == R.id.op_fact || id == R.id.op_pow) {
-            mFormulaEditText.insert(((Button) view).getText().toString());
+            mFormulaEditText.insert(text.toString());
         } else {
-            insert(((Button) view).getText().toString());
+            insert(text.toString());
         }
     }
 
-    @SuppressLint({"NonConstantResourceId", "SetTextI18n"})
     @Override
     public boolean onLongClick(View view) {
         mCurrentButton = view;
-        int id = view.getId();
+        mCurrentKeyId = View.NO_ID;
+        return onButtonLongClick(view.getId());
+    }
+
+    /**
+     * Handles a long click on the button or keypad key with the given id.
+     */
+    @SuppressLint({"NonConstantResourceId", "SetTextI18n"})
+    protected boolean onButtonLongClick(@IdRes int id) {
         if (id == R.id.del) {
             saveHistory(mFormulaEditText.getCleanText(), TextUtil.getCleanText(mResultEditText));
             onClear();
@@ -410,10 +602,16 @@ public class BasicCalculatorDialogFragment extends DialogFragment
     @Override
     public void onEvaluate(String expr, @Nullable Double resultNum, String errorMessage) {
         mResultData.postValue(resultNum);
+        mLastResult = resultNum;
 
+        EvaluationMetrics metrics = mMetrics;
+        long start = metrics != null ? System.nanoTime() : 0;
         String result = null;
         if (resultNum != null) {
             result = formatForReading(resultNum);
+            if (metrics != null) {
+                start = metrics.record(EvaluationMetrics.Stage.FORMAT, start);
+            }
         }
 
         if (mCurrentState == CalculatorState.INPUT) {
@@ -422,9 +620,12 @@ public class BasicCalculatorDialogFragment extends DialogFragment
             } else {
                 mResultEditText.setText(TextUtil.formatText(result));
             }
+            if (metrics != null) {
+                metrics.record(EvaluationMetrics.Stage.RENDER, start);
+            }
         } else if (errorMessage != null) {
             onError(errorMessage);
-        } else if (saveHistory(expr, result)) {
+        } else if (saveHistory(mFormulaEditText.getCleanText(), result)) {
             mDisplayView.scrollToMostRecent();
             onResult(result);
         } else if (mCurrentState == CalculatorState.EVALUATE) {
@@ -436,14 +637,14 @@ public class BasicCalculatorDialogFragment extends DialogFragment
 
     @NonNull
     private String formatForReading(double value) {
-        if (value > 1E12) {
-            return decimalFormatSci.format(value);
-        } else {
-            return decimalFormat.format(value);
-        }
+        return ResultFormatter.format(value);
     }
 
+    /**
+     * Starts a new group in the history; calculations saved from now on belong together.
+     */
     protected void incrementGroupId() {
+        mHistory.incrementGroupId();
     }
 
     protected void invalidateEqualsButton() {
@@ -458,29 +659,15 @@ public class BasicCalculatorDialogFragment extends DialogFragment
             return;
         }
 
-        // Calculate the values needed to perform the scale and translation animations,
-        // maintaining the same apparent baseline for the displayed text.
-        final float textScale = oldSize / textView.getTextSize();
-        final float translationX;
-        translationX = (1.0f - textScale) *
-                (textView.getWidth() / 2.0f - textView.getPaddingEnd());
-        final float translationY = (1.0f - textScale) *
-                (textView.getHeight() / 2.0f - textView.getPaddingBottom());
-        final AnimatorSet animatorSet = new AnimatorSet();
-        animatorSet.playTogether(
-                ObjectAnimator.ofFloat(textView, View.SCALE_X, textScale, 1.0f),
-                ObjectAnimator.ofFloat(textView, View.SCALE_Y, textScale, 1.0f),
-                ObjectAnimator.ofFloat(textView, View.TRANSLATION_X, translationX, 0.0f),
-                ObjectAnimator.ofFloat(textView, View.TRANSLATION_Y, translationY, 0.0f));
-        animatorSet.setDuration(getResources().getInteger(android.R.integer.config_mediumAnimTime));
-        animatorSet.setInterpolator(new AccelerateDecelerateInterpolator());
-        animatorSet.start();
+        track(mTransitions.animateTextSize(textView, oldSize), FrameMonitor.Animation.TEXT_SIZE);
     }
 
     protected void onEquals() {
         String text = mFormulaEditText.getCleanText();
         if (mCurrentState == CalculatorState.INPUT) {
             setState(CalculatorState.EVALUATE);
+            // Evaluate right away, and make sure a late preview result can't be mistaken for it.
+            mEvaluator.cancelPendingEvaluations();
             mEvaluator.evaluate(text, this);
         }
     }
@@ -490,53 +677,29 @@ public class BasicCalculatorDialogFragment extends DialogFragment
         mFormulaEditText.backspace();
     }
 
-    private void reveal(View sourceView, @ColorInt int color, final AnimatorListener listener) {
-        // Make reveal cover the display
-        final RevealView revealView = new RevealView(requireContext());
-        revealView.setLayoutParams(mLayoutParams);
-        revealView.setRevealColor(color);
-        mDisplayForeground.addView(revealView);
-
-        final SupportAnimator revealAnimator;
-        final int[] clearLocation = new int[2];
+    private void reveal(View sourceView, @ColorInt int color, Runnable onRevealed) {
+        final int[] location = mRevealLocation;
+        final float centerX;
+        final float centerY;
         if (sourceView != null) {
-            sourceView.getLocationInWindow(clearLocation);
-            clearLocation[0] += sourceView.getWidth() / 2;
-            clearLocation[1] += sourceView.getHeight() / 2;
-        } else {
-            clearLocation[0] = mDisplayForeground.getWidth() / 2;
-            clearLocation[1] = mDisplayForeground.getHeight() / 2;
-        }
-        final int revealCenterX = clearLocation[0] - revealView.getLeft();
-        final int revealCenterY = clearLocation[1] - revealView.getTop();
-        final double x1_2 = Math.pow(revealView.getLeft() - revealCenterX, 2);
-        final double x2_2 = Math.pow(revealView.getRight() - revealCenterX, 2);
-        final double y_2 = Math.pow(revealView.getTop() - revealCenterY, 2);
-        final float revealRadius = (float) Math.max(Math.sqrt(x1_2 + y_2), Math.sqrt(x2_2 + y_2));
-
-        revealAnimator =
-                ViewAnimationUtils.createCircularReveal(revealView,
-                        revealCenterX, revealCenterY, 0.0f, revealRadius);
-        revealAnimator.setDuration(
-                getResources().getInteger(android.R.integer.config_longAnimTime));
-        revealAnimator.addListener(listener);
-
-        final Animator alphaAnimator = ObjectAnimator.ofFloat(revealView, View.ALPHA, 0.0f);
-        alphaAnimator.setDuration(getResources().getInteger(android.R.integer.config_mediumAnimTime));
-        alphaAnimator.addListener(new AnimationFinishedListener() {
-            @Override
-            public void onAnimationFinished() {
-                mDisplayForeground.removeView(revealView);
-            }
-        });
-
-        revealAnimator.addListener(new AnimationFinishedListener() {
-            @Override
-            public void onAnimationFinished() {
-                play(alphaAnimator);
+            // From the center of the button, or of the key pressed on a keypad view.
+            final Rect bounds = mRevealBounds;
+            bounds.set(0, 0, sourceView.getWidth(), sourceView.getHeight());
+            if (sourceView instanceof CalculatorKeypadView) {
+                ((CalculatorKeypadView) sourceView).getKeyBounds(mCurrentKeyId, bounds);
             }
-        });
-        play(revealAnimator);
+            sourceView.getLocationInWindow(location);
+            centerX = location[0] + bounds.exactCenterX();
+            centerY = location[1] + bounds.exactCenterY();
+            mDisplayForeground.getLocationInWindow(location);
+        } else {
+            centerX = mDisplayForeground.getWidth() / 2f;
+            centerY = mDisplayForeground.getHeight() / 2f;
+            location[0] = 0;
+            location[1] = 0;
+        }
+        mCurrentAnimator = mRevealOverlay.reveal(centerX - location[0], centerY - location[1], color, onRevealed);
+        track(mCurrentAnimator, FrameMonitor.Animation.REVEAL);
     }
 
     protected void play(Animator animator) {
@@ -548,6 +711,16 @@ public class BasicCalculatorDialogFragment extends DialogFragment
             }
         });
         animator.start();
+        track(animator, FrameMonitor.Animation.OTHER);
+    }
+
+    /**
+     * Times the frames of {@code animator}, which was just started, if there's a frame monitor.
+     */
+    private void track(Animator animator, FrameMonitor.Animation animation) {
+        if (mFrameMonitor != null) {
+            mFrameMonitor.track(animation, animator, mDisplayView);
+        }
     }
 
 //    @Override
@@ -564,9 +737,9 @@ public class BasicCalculatorDialogFragment extends DialogFragment
             return;
         }
         reveal(mCurrentButton, ViewUtils.getColor(requireContext(), com.google.android.material.R.attr.colorAccent),
-                new AnimationFinishedListener() {
+                new Runnable() {
                     @Override
-                    public void onAnimationFinished() {
+                    public void run() {
                         mFormulaEditText.clear();
                         incrementGroupId();
                     }
@@ -584,9 +757,9 @@ public class BasicCalculatorDialogFragment extends DialogFragment
         }
 
         reveal(mCurrentButton, ViewUtils.getColor(requireContext(), com.google.android.material.R.attr.colorError),
-                new AnimationFinishedListener() {
+                new Runnable() {
                     @Override
-                    public void onAnimationFinished() {
+                    public void run() {
                         setState(CalculatorState.ERROR);
                         mResultEditText.setText(errorMessage);
                     }
@@ -628,51 +801,60 @@ public class BasicCalculatorDialogFragment extends DialogFragment
         // Move the formula all the way to the top of the screen
         final float formulaTranslationY = -mFormulaEditText.getBottom();
 
-        // Use a value animator to fade to the final text color over the course of the animation.
-        final int resultTextColor = mResultEditText.getCurrentTextColor();
-        final int formulaTextColor = mFormulaEditText.getCurrentTextColor();
-        final ValueAnimator textColorAnimator =
-                ValueAnimator.ofObject(new ArgbEvaluator(), resultTextColor, formulaTextColor);
-        textColorAnimator.addUpdateListener(valueAnimator -> mResultEditText.setTextColor((Integer) valueAnimator.getAnimatedValue()));
         mResultEditText.setText(TextUtil.formatText(result));
-        mResultEditText.setPivotX(mResultEditText.getWidth() / 2f);
-        mResultEditText.setPivotY(0f);
-
-        final AnimatorSet animatorSet = new AnimatorSet();
-        animatorSet.playTogether(
-                textColorAnimator,
-                ObjectAnimator.ofFloat(mResultEditText, View.SCALE_X, resultScale),
-                ObjectAnimator.ofFloat(mResultEditText, View.SCALE_Y, resultScale),
-                ObjectAnimator.ofFloat(mResultEditText, View.TRANSLATION_X, resultTranslationX),
-                ObjectAnimator.ofFloat(mResultEditText, View.TRANSLATION_Y, resultTranslationY),
-                ObjectAnimator.ofFloat(mFormulaEditText, View.TRANSLATION_Y, formulaTranslationY));
-        animatorSet.setDuration(getResources().getInteger(android.R.integer.config_longAnimTime));
-        animatorSet.setInterpolator(new AccelerateDecelerateInterpolator());
-        animatorSet.addListener(new AnimationFinishedListener() {
-            @Override
-            public void onAnimationFinished() {
-                // Reset all of the values modified during the animation.
-                mResultEditText.setPivotY(mResultEditText.getHeight() / 2.0f);
-                mResultEditText.setTextColor(resultTextColor);
-                mResultEditText.setScaleX(1.0f);
-                mResultEditText.setScaleY(1.0f);
-                mResultEditText.setTranslationX(0.0f);
-                mResultEditText.setTranslationY(0.0f);
-                mFormulaEditText.setTranslationY(0.0f);
-
-                // Finally update the formula to use the current result.
-                mFormulaEditText.setText(result);
-                setState(CalculatorState.RESULT);
-            }
-        });
-
-        play(animatorSet);
+        mCurrentAnimator = mTransitions.showResult(resultScale, resultTranslationX, resultTranslationY,
+                formulaTranslationY, new Runnable() {
+                    @Override
+                    public void run() {
+                        // Finally update the formula to use the current result.
+                        mFormulaEditText.setText(result);
+                        setState(CalculatorState.RESULT);
+                    }
+                });
+        track(mCurrentAnimator, FrameMonitor.Animation.RESULT);
     }
 
     protected CalculatorExpressionEvaluator getEvaluator() {
         return mEvaluator;
     }
 
+    /**
+     * Times each stage from a keystroke to its result on screen into {@code metrics}: the
+     * evaluator's stages, formatting the result, and setting it on the result view. Pass null,
+     * the default, to time nothing. Can be called before the calculator is shown.
+     */
+    public void setMetrics(@Nullable EvaluationMetrics metrics) {
+        mMetrics = metrics;
+        if (mEvaluator != null) {
+            mEvaluator.setMetrics(metrics);
+        }
+    }
+
+    @Nullable
+    public EvaluationMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Times the frames of the display's animations and of dragging the advanced pad into
+     * {@code monitor}. Pass null, the default, to time nothing. Can be called before the
+     * calculator is shown.
+     */
+    public void setFrameMonitor(@Nullable FrameMonitor monitor) {
+        if (mFrameMonitor != null) {
+            mFrameMonitor.stop();
+        }
+        mFrameMonitor = monitor;
+        if (mPadView != null) {
+            mPadView.setFrameMonitor(monitor);
+        }
+    }
+
+    @Nullable
+    public FrameMonitor getFrameMonitor() {
+        return mFrameMonitor;
+    }
+
     public void setOnResultConfirmed(@Nullable Consumer<Double> onResultConfirmed) {
         this.mOnResultConfirmed = onResultConfirmed;
     }
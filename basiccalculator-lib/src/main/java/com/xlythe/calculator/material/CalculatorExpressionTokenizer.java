@@ -16,77 +16,58 @@
 package com.xlythe.calculator.material;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Locale;
 
-public class CalculatorExpressionTokenizer {
+/**
+ * Feeds the core {@link ExpressionTokenizer} with operator symbols from resources and the angle
+ * mode from {@link CalculatorSettings}, rebuilding its tables when either changes.
+ */
+public class CalculatorExpressionTokenizer extends ExpressionTokenizer {
     private final Context mContext;
-    private final List<Localizer> mReplacements;
+    // SharedPreferences only keeps a weak reference to its listeners, so hold on to it here.
+    private final SharedPreferences.OnSharedPreferenceChangeListener mSettingsListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    if (CalculatorSettings.KEY_USE_RADIANS.equals(key)) {
+                        mSettingsGeneration++;
+                    }
+                }
+            };
+    private volatile int mSettingsGeneration;
+    private volatile int mAppliedGeneration;
+    private volatile Locale mAppliedLocale;
 
     public CalculatorExpressionTokenizer(Context context) {
+        super(createConfig(context));
         mContext = context;
-        mReplacements = new LinkedList<Localizer>();
+        mAppliedLocale = getLocale(context);
+        CalculatorSettings.registerOnChangeListener(context, mSettingsListener);
     }
 
-    private void generateReplacements(Context context) {
-        mReplacements.clear();
-        //mReplacements.add(new Localizer(",", String.valueOf(Constants.MATRIX_SEPARATOR)));
-        mReplacements.add(new Localizer(".", String.valueOf(Constants.DECIMAL_POINT)));
-        mReplacements.add(new Localizer("0", "0"));
-        mReplacements.add(new Localizer("1", "1"));
-        mReplacements.add(new Localizer("2", "2"));
-        mReplacements.add(new Localizer("3", "3"));
-        mReplacements.add(new Localizer("4", "4"));
-        mReplacements.add(new Localizer("5", "5"));
-        mReplacements.add(new Localizer("6", "6"));
-        mReplacements.add(new Localizer("7", "7"));
-        mReplacements.add(new Localizer("8", "8"));
-        mReplacements.add(new Localizer("9", "9"));
-        mReplacements.add(new Localizer("/", context.getString(R.string.bscalc_op_div)));
-        mReplacements.add(new Localizer("*", context.getString(R.string.bscalc_op_mul)));
-        mReplacements.add(new Localizer("-", context.getString(R.string.bscalc_op_sub)));
-        mReplacements.add(new Localizer("cbrt", context.getString(R.string.bscalc_op_cbrt)));
-        mReplacements.add(new Localizer("asin", com.xlythe.calculator.material.Constants.ASIN));
-        mReplacements.add(new Localizer("acos", com.xlythe.calculator.material.Constants.ACOS));
-        mReplacements.add(new Localizer("atan", com.xlythe.calculator.material.Constants.ATAN));
-        mReplacements.add(new Localizer("sin", com.xlythe.calculator.material.Constants.SIN));
-        mReplacements.add(new Localizer("cos", com.xlythe.calculator.material.Constants.COS));
-        mReplacements.add(new Localizer("tan", com.xlythe.calculator.material.Constants.TAN));
-        if (!CalculatorSettings.useRadians(context)) {
-            mReplacements.add(new Localizer("sind", "sin"));
-            mReplacements.add(new Localizer("cosd", "cos"));
-            mReplacements.add(new Localizer("tand", "tan"));
-        }
-        mReplacements.add(new Localizer("ln", "ln"));
-        mReplacements.add(new Localizer("log","log"));
-        mReplacements.add(new Localizer("det", "det"));
-        mReplacements.add(new Localizer("Infinity", "∞"));
-    }
-
-    public String getNormalizedExpression(String expr) {
-        generateReplacements(mContext);
-        for (Localizer replacement : mReplacements) {
-            expr = expr.replace(replacement.local, replacement.english);
-        }
-        return expr;
+    private static TokenizerConfig createConfig(Context context) {
+        return new TokenizerConfig(
+                context.getString(R.string.bscalc_op_div),
+                context.getString(R.string.bscalc_op_mul),
+                context.getString(R.string.bscalc_op_sub),
+                context.getString(R.string.bscalc_op_cbrt),
+                CalculatorSettings.useRadians(context));
     }
 
-    public String getLocalizedExpression(String expr) {
-        generateReplacements(mContext);
-        for (Localizer replacement : mReplacements) {
-            expr = expr.replace(replacement.english, replacement.local);
-        }
-        return expr;
+    private static Locale getLocale(Context context) {
+        return context.getResources().getConfiguration().getLocales().get(0);
     }
 
-    private class Localizer {
-        String english;
-        String local;
-
-        Localizer(String english, String local) {
-            this.english = english;
-            this.local = local;
+    @Override
+    protected void refreshConfig() {
+        int generation = mSettingsGeneration;
+        Locale locale = getLocale(mContext);
+        if (generation != mAppliedGeneration || !locale.equals(mAppliedLocale)) {
+            setConfig(createConfig(mContext));
+            mAppliedGeneration = generation;
+            mAppliedLocale = locale;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,36 @@
+package com.xlythe.calculator.material;
+
+import android.content.Context;
+
+import java.io.File;
+
+/**
+ * The history every calculator in the process shares, kept in the app's no-backup files.
+ */
+final class CalculatorHistory {
+    private static final String DIRECTORY = "bscalc_history";
+
+    private static HistoryStore sStore;
+    private static HistorySearchIndex sSearchIndex;
+
+    private CalculatorHistory() {
+    }
+
+    static synchronized HistoryStore get(Context context) {
+        if (sStore == null) {
+            sStore = new HistoryStore(new File(context.getApplicationContext().getNoBackupFilesDir(), DIRECTORY));
+        }
+        return sStore;
+    }
+
+    /**
+     * Returns the search index of the history, which is built the first time it's asked for.
+     */
+    static synchronized HistorySearchIndex getSearchIndex(Context context) {
+        if (sSearchIndex == null) {
+            Context appContext = context.getApplicationContext();
+            sSearchIndex = new HistorySearchIndex(get(appContext), new CalculatorExpressionTokenizer(appContext));
+        }
+        return sSearchIndex;
+    }
+}
@@ -0,0 +1,159 @@
+package com.xlythe.calculator.material;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.util.TypedValue;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewStub;
+
+import androidx.annotation.IdRes;
+import androidx.annotation.LayoutRes;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater;
+import androidx.fragment.app.FragmentActivity;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Does the work of opening the first calculator ahead of time, for
+ * {@link BasicCalculatorDialogFragment#prewarm}.
+ * <p>
+ * The engine, the settings and the history are loaded on a background thread, once per process. The view
+ * hierarchy, pads included, is inflated by an {@link AsyncLayoutInflater} and kept for the next
+ * calculator dialog shown in the same activity. It's dropped if the activity is destroyed first.
+ */
+final class CalculatorPrewarmer {
+    private static final AtomicBoolean sEngineStarted = new AtomicBoolean();
+
+    // The prewarmed hierarchy, the activity it was inflated for, and whether one is on its way.
+    // Only touched on the main thread.
+    @Nullable
+    private static View sView;
+    @Nullable
+    private static FragmentActivity sActivity;
+    private static boolean sInflating;
+
+    private CalculatorPrewarmer() {
+    }
+
+    static void prewarmEngine(Context context) {
+        if (!sEngineStarted.compareAndSet(false, true)) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                CalculatorExpressionEvaluator.prewarm();
+                // Loads the preferences file, which the tokenizer reads as it's created.
+                CalculatorSettings.useRadians(appContext);
+                try {
+                    // Opens the history, which may have to be repaired after a crash.
+                    CalculatorHistory.get(appContext).size();
+                } catch (IOException e) {
+                    // Reported again when the history is used.
+                }
+            }
+        }, "CalculatorPrewarm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @MainThread
+    static void prewarmView(Context context) {
+        final FragmentActivity activity = findActivity(context);
+        if (activity == null || sInflating || (sView != null && sActivity == activity)
+                || activity.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        // The theme a dialog of that activity gets, unless the fragment sets its own style.
+        TypedValue value = new TypedValue();
+        activity.getTheme().resolveAttribute(android.R.attr.dialogTheme, value, true);
+        Context themedContext = new ContextThemeWrapper(activity, value.resourceId);
+
+        final boolean useKeypadView = themedContext.getResources().getBoolean(R.bool.bscalc_use_keypad_view);
+        final AsyncLayoutInflater inflater = new AsyncLayoutInflater(themedContext);
+        sInflating = true;
+        inflater.inflate(R.layout.bscalc_fragment_basic_calculator, null, (view, resid, parent) -> {
+            // The pads are inflated in the background too, then take the place of their stubs.
+            final int[] pending = {2};
+            Runnable onPadInflated = () -> {
+                if (--pending[0] == 0) {
+                    onViewInflated(activity, view);
+                }
+            };
+            inflatePad(inflater, view, R.id.base_stub,
+                    BasicCalculatorDialogFragment.getBasePadLayout(useKeypadView), onPadInflated);
+            inflatePad(inflater, view, R.id.pad_advanced_stub,
+                    BasicCalculatorDialogFragment.getAdvancedPadLayout(useKeypadView), onPadInflated);
+        });
+    }
+
+    /**
+     * Returns the prewarmed hierarchy if it was inflated for the activity of {@code context}, and
+     * forgets it. Returns null otherwise.
+     */
+    @MainThread
+    @Nullable
+    static View takeView(Context context) {
+        if (sView == null || findActivity(context) != sActivity) {
+            return null;
+        }
+        View view = sView;
+        sView = null;
+        sActivity = null;
+        return view;
+    }
+
+    private static void inflatePad(AsyncLayoutInflater inflater, View view, @IdRes int stubId,
+                                   @LayoutRes int layout, final Runnable onInflated) {
+        final ViewStub stub = view.findViewById(stubId);
+        inflater.inflate(layout, (ViewGroup) stub.getParent(), (pad, resid, parent) -> {
+            // As ViewStub.inflate does.
+            int index = parent.indexOfChild(stub);
+            parent.removeViewInLayout(stub);
+            if (stub.getInflatedId() != View.NO_ID) {
+                pad.setId(stub.getInflatedId());
+            }
+            parent.addView(pad, index, stub.getLayoutParams());
+            onInflated.run();
+        });
+    }
+
+    private static void onViewInflated(final FragmentActivity activity, View view) {
+        sInflating = false;
+        if (activity.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        sView = view;
+        sActivity = activity;
+        activity.getLifecycle().addObserver(new LifecycleEventObserver() {
+            @Override
+            public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+                if (event == Lifecycle.Event.ON_DESTROY && sActivity == activity) {
+                    sView = null;
+                    sActivity = null;
+                }
+            }
+        });
+    }
+
+    @Nullable
+    private static FragmentActivity findActivity(Context context) {
+        while (context instanceof ContextWrapper) {
+            if (context instanceof FragmentActivity) {
+                return (FragmentActivity) context;
+            }
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return null;
+    }
+}
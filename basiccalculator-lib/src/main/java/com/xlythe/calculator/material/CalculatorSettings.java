@@ -1,17 +1,23 @@
 package com.xlythe.calculator.material;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 
 import androidx.preference.PreferenceManager;
 
 public class CalculatorSettings {
+    static final String KEY_USE_RADIANS = "bscalc_USE_RADIANS";
 
     static void setRadiansEnabled(Context context, boolean enabled) {
-        PreferenceManager.getDefaultSharedPreferences(context).edit().putBoolean("bscalc_USE_RADIANS", enabled).apply();
+        PreferenceManager.getDefaultSharedPreferences(context).edit().putBoolean(KEY_USE_RADIANS, enabled).apply();
     }
 
     static boolean useRadians(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean("bscalc_USE_RADIANS", true);
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(KEY_USE_RADIANS, true);
+    }
+
+    static void registerOnChangeListener(Context context, SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        PreferenceManager.getDefaultSharedPreferences(context).registerOnSharedPreferenceChangeListener(listener);
     }
 
 }
@@ -5,21 +5,78 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.xlythe.calculator.material.Constants;
+
 /**
  * For formatting text in the display
  */
 public class TextUtil {
+    /** Put between groups of three digits, and stripped from the clean text. */
+    public static final char GROUPING_SEPARATOR = ' ';
+
     public static String getCleanText(TextView textView) {
         return removeFormatting(textView.getText().toString());
     }
 
+    /**
+     * Groups the digits of the integer part of each number in the input, e.g. 1234567.891 becomes
+     * 1 234 567.891. Exponents of scientific notation are left alone.
+     */
     public static String formatText(String input) {
-        return  input;
+        StringBuilder builder = null;
+        // Everything before this has been copied into the builder.
+        int copied = 0;
+        int length = input.length();
+        int i = 0;
+        while (i < length) {
+            if (!Character.isDigit(input.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < length && Character.isDigit(input.charAt(i))) {
+                i++;
+            }
+            if (i - start <= 3 || !isIntegerPart(input, start)) {
+                continue;
+            }
+            if (builder == null) {
+                builder = new StringBuilder(length + length / 3);
+            }
+            builder.append(input, copied, start);
+            for (int j = start; j < i; j++) {
+                if (j > start && (i - j) % 3 == 0) {
+                    builder.append(GROUPING_SEPARATOR);
+                }
+                builder.append(input.charAt(j));
+            }
+            copied = i;
+        }
+        if (builder == null) {
+            return input;
+        }
+        return builder.append(input, copied, length).toString();
+    }
+
+    /**
+     * Returns false if the digits at {@code start} follow a decimal point or are the exponent of
+     * scientific notation.
+     */
+    private static boolean isIntegerPart(String input, int start) {
+        int i = start - 1;
+        if (i >= 0 && input.charAt(i) == Constants.DECIMAL_POINT) {
+            return false;
+        }
+        if (i >= 0 && (input.charAt(i) == '-' || input.charAt(i) == Constants.MINUS)) {
+            i--;
+        }
+        return i <= 0 || (input.charAt(i) != 'E' && input.charAt(i) != 'e')
+                || !Character.isDigit(input.charAt(i - 1));
     }
 
     @NonNull
     protected static String removeFormatting(String input) {
-            input = input.replace(String.valueOf(' '), "");
+            input = input.replace(String.valueOf(GROUPING_SEPARATOR), "");
         return input;
     }
 
@@ -17,18 +17,47 @@
 package com.xlythe.calculator.material.view;
 
 import android.text.Editable;
+import android.text.NoCopySpan;
 import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextWatcher;
 
-import com.xlythe.calculator.material.Constants;
-import com.xlythe.calculator.material.Solver;
+import com.xlythe.calculator.material.ExpressionBuffer;
 
+/**
+ * The text of a calculator display. It keeps the view's {@link ExpressionBuffer} holding the same
+ * text, and types into it with the keypad's rules, read from the buffer's tokens.
+ */
 public class CalculatorEditable extends SpannableStringBuilder {
     private static final char[] ORIGINALS = {'-', '*', '/'};
     private static final char[] REPLACEMENTS = {'−', '×', '÷'};
+    private final ExpressionBuffer mBuffer;
     private boolean isInsideReplace = false;
+    // Set while the buffer's own edit is on its way in, so it isn't copied back.
+    private boolean mApplyingBufferEdit;
 
-    private CalculatorEditable(CharSequence source) {
+    private CalculatorEditable(CharSequence source, ExpressionBuffer buffer) {
         super(source);
+        mBuffer = buffer;
+        mBuffer.set(this);
+        // Watchers may edit the text again as soon as they hear about a change, so the buffer is
+        // updated by a watcher that goes before all others.
+        setSpan(new BufferUpdater(), 0, length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE | Spanned.SPAN_PRIORITY);
+    }
+
+    /**
+     * Copies the buffer's last edit in, as is.
+     */
+    public void applyBufferEdit() {
+        int start = mBuffer.getChangeStart();
+        isInsideReplace = true;
+        mApplyingBufferEdit = true;
+        try {
+            super.replace(start, mBuffer.getChangeEnd(), mBuffer, start, start + mBuffer.getChangeLength());
+        } finally {
+            isInsideReplace = false;
+            mApplyingBufferEdit = false;
+        }
     }
 
     @Override
@@ -51,54 +80,49 @@ public class CalculatorEditable extends SpannableStringBuilder {
             delta = delta.replace(ORIGINALS[i], REPLACEMENTS[i]);
         }
 
-        int length = delta.length();
-        if (length == 1) {
-            char text = delta.charAt(0);
-
-            // don't allow two dots in the same number
-            if (text == Constants.DECIMAL_POINT) {
-                int p = start - 1;
-                while (p >= 0 && Solver.isDigit(charAt(p))) {
-                    --p;
-                }
-                if (p >= 0 && charAt(p) == Constants.DECIMAL_POINT) {
-                    return super.replace(start, end, "");
-                }
-            }
-
-            char prevChar = start > 0 ? charAt(start - 1) : '\0';
-
-            // don't allow 2 successive minuses
-            if (text == Constants.MINUS && prevChar == Constants.MINUS) {
-                return super.replace(start, end, "");
-            }
-
-            // don't allow the first character to be an operator
-            if (start == 0 && Solver.isOperator(text) && text != Constants.MINUS) {
+        if (delta.length() == 1) {
+            int insertionStart = mBuffer.getTokens().getInsertionStart(this, start, delta.charAt(0));
+            if (insertionStart < 0) {
                 return super.replace(start, end, "");
             }
+            start = insertionStart;
+        }
+        return super.replace(start, end, delta);
+    }
 
-            // don't allow multiple successive operators
-            if (Solver.isOperator(text) && text != Constants.MINUS) {
-                while (Solver.isOperator(prevChar)) {
-                    if (start == 1) {
-                        return super.replace(start, end, "");
-                    }
+    private class BufferUpdater implements TextWatcher, NoCopySpan {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
 
-                    --start;
-                    prevChar = start > 0 ? charAt(start - 1) : '\0';
-                }
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+            if (mApplyingBufferEdit) {
+                // Watchers may edit the text again before we're done; those edits are copied.
+                mApplyingBufferEdit = false;
+            } else {
+                mBuffer.replace(start, start + before, s, start, start + count);
             }
         }
-        return super.replace(start, end, delta);
+
+        @Override
+        public void afterTextChanged(Editable s) {
+        }
     }
 
+    /**
+     * Makes the text of one view. Each new Editable replaces the last as the view's text, and sets
+     * the buffer to it.
+     */
     public static class Factory extends Editable.Factory {
-        public Factory() {
+        private final ExpressionBuffer mBuffer;
+
+        public Factory(ExpressionBuffer buffer) {
+            mBuffer = buffer;
         }
 
         public Editable newEditable(CharSequence source) {
-            return new CalculatorEditable(source);
+            return new CalculatorEditable(source, mBuffer);
         }
     }
 }
@@ -0,0 +1,580 @@
+package com.xlythe.calculator.material.view;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.content.res.XmlResourceParser;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.util.Xml;
+import android.view.HapticFeedbackConstants;
+import android.view.InflateException;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.accessibility.AccessibilityEvent;
+import android.widget.Button;
+
+import androidx.annotation.IdRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.XmlRes;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.accessibility.AccessibilityNodeInfoCompat;
+import androidx.customview.widget.ExploreByTouchHelper;
+
+import com.xlythe.calculator.material.R;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A keypad that draws all of its keys itself, in place of a {@link CalculatorPadGridLayout} of
+ * buttons. The keys are read from the xml resource given as {@code keys}, and placed in a grid of
+ * {@link android.R.attr#rowCount} by {@link android.R.attr#columnCount} cells, each key at its
+ * {@code layout_row} and {@code layout_column} or else in the cell after the previous key's.
+ * <p>
+ * Key bounds are computed once per layout, and the key under a touch is looked up in a table of
+ * the grid's cells. Pressed keys get a ripple drawn by the view, and each key is exposed to
+ * accessibility services as a virtual button.
+ */
+public class CalculatorKeypadView extends View {
+    private static final String TAG_KEY = "Key";
+    private static final int RIPPLE_ENTER_DURATION = 225;
+    private static final int RIPPLE_EXIT_DURATION = 150;
+    private static final int[] STATE_PRESSED = {android.R.attr.state_enabled, android.R.attr.state_pressed};
+    private static final int[] STATE_ENABLED = {android.R.attr.state_enabled};
+    private static final int[] STATE_DISABLED = {};
+
+    private final List<Key> mKeys = new ArrayList<>();
+    private final int mRowCount;
+    private final int mColumnCount;
+    // The index of the visible key in each cell, row by row, or -1.
+    private final int[] mCells;
+    private float mCellWidth;
+    private float mCellHeight;
+
+    private final TextPaint mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mFillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final KeypadAccessibilityHelper mTouchHelper;
+    private final int mTouchSlop;
+    private OnKeyClickListener mListener;
+
+    // The key being pressed, or -1.
+    private int mPressedKey = -1;
+    private boolean mLongClickPerformed;
+    private final Runnable mLongPress = new Runnable() {
+        @Override
+        public void run() {
+            if (mPressedKey >= 0 && performKeyLongClick(mPressedKey)) {
+                mLongClickPerformed = true;
+            }
+        }
+    };
+
+    // The key the ripple is drawn on, or -1, with its radius and opacity as fractions.
+    private int mRippleKey = -1;
+    private float mRippleRadius;
+    private float mRippleAlpha;
+    private final ValueAnimator mRippleEnter;
+    private final ValueAnimator mRippleExit;
+
+    public CalculatorKeypadView(Context context) {
+        this(context, null);
+    }
+
+    public CalculatorKeypadView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public CalculatorKeypadView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.CalculatorKeypadView, defStyle, 0);
+        mRowCount = Math.max(a.getInt(R.styleable.CalculatorKeypadView_android_rowCount, 1), 1);
+        mColumnCount = Math.max(a.getInt(R.styleable.CalculatorKeypadView_android_columnCount, 1), 1);
+        int keys = a.getResourceId(R.styleable.CalculatorKeypadView_keys, 0);
+        a.recycle();
+
+        mCells = new int[mRowCount * mColumnCount];
+        if (keys != 0) {
+            loadKeys(keys);
+        }
+        updateCells();
+
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+        mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+
+        mRippleEnter = ValueAnimator.ofFloat(0f, 1f);
+        mRippleEnter.setDuration(RIPPLE_ENTER_DURATION);
+        mRippleEnter.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(@NonNull ValueAnimator animation) {
+                mRippleRadius = (float) animation.getAnimatedValue();
+                invalidate();
+            }
+        });
+        mRippleExit = ValueAnimator.ofFloat(1f, 0f);
+        mRippleExit.setDuration(RIPPLE_EXIT_DURATION);
+        mRippleExit.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(@NonNull ValueAnimator animation) {
+                mRippleAlpha = (float) animation.getAnimatedValue();
+                invalidate();
+            }
+        });
+        mRippleExit.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(@NonNull Animator animation) {
+                mRippleKey = -1;
+                invalidate();
+            }
+        });
+
+        mTouchHelper = new KeypadAccessibilityHelper();
+        ViewCompat.setAccessibilityDelegate(this, mTouchHelper);
+    }
+
+    public void setOnKeyClickListener(@Nullable OnKeyClickListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Returns true if one of the keys has the given id, visible or not.
+     */
+    public boolean hasKey(@IdRes int id) {
+        return indexOf(id) >= 0;
+    }
+
+    /**
+     * Shows or hides a key. Keys that share cells can be swapped this way, like a button that's
+     * {@link View#GONE} in a {@link CalculatorPadGridLayout}.
+     */
+    public void setKeyVisibility(@IdRes int id, int visibility) {
+        int index = indexOf(id);
+        if (index < 0 || mKeys.get(index).visible == (visibility == VISIBLE)) {
+            return;
+        }
+        mKeys.get(index).visible = visibility == VISIBLE;
+        if (index == mPressedKey) {
+            cancelPress();
+        }
+        updateCells();
+        mTouchHelper.invalidateRoot();
+        invalidate();
+    }
+
+    public void setKeyText(@IdRes int id, CharSequence text) {
+        int index = indexOf(id);
+        if (index >= 0) {
+            mKeys.get(index).text = text;
+            mTouchHelper.invalidateVirtualView(index);
+            invalidate();
+        }
+    }
+
+    /**
+     * Gets the bounds of a visible key, relative to this view.
+     *
+     * @return False if there's no such key, leaving {@code outRect} as it was.
+     */
+    public boolean getKeyBounds(@IdRes int id, Rect outRect) {
+        int index = indexOf(id);
+        if (index < 0 || !mKeys.get(index).visible) {
+            return false;
+        }
+        mKeys.get(index).bounds.roundOut(outRect);
+        return true;
+    }
+
+    private int indexOf(@IdRes int id) {
+        for (int i = 0; i < mKeys.size(); i++) {
+            if (mKeys.get(i).id == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void loadKeys(@XmlRes int id) {
+        XmlResourceParser parser = getResources().getXml(id);
+        try {
+            int next = 0;
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type == XmlPullParser.START_TAG && TAG_KEY.equals(parser.getName())) {
+                    Key key = new Key(getContext(), Xml.asAttributeSet(parser), next, mColumnCount);
+                    mKeys.add(key);
+                    next = key.row * mColumnCount + key.column + key.columnSpan;
+                }
+            }
+        } catch (XmlPullParserException | IOException e) {
+            throw new InflateException("Couldn't read the keys in " + getResources().getResourceName(id), e);
+        } finally {
+            parser.close();
+        }
+    }
+
+    private void updateCells() {
+        Arrays.fill(mCells, -1);
+        for (int i = 0; i < mKeys.size(); i++) {
+            Key key = mKeys.get(i);
+            if (!key.visible) {
+                continue;
+            }
+            int lastRow = Math.min(key.row + key.rowSpan, mRowCount);
+            int lastColumn = Math.min(key.column + key.columnSpan, mColumnCount);
+            for (int row = key.row; row < lastRow; row++) {
+                for (int column = key.column; column < lastColumn; column++) {
+                    mCells[row * mColumnCount + column] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the visible key at the given point, or -1.
+     */
+    private int findKey(float x, float y) {
+        float left = x - getPaddingLeft();
+        float top = y - getPaddingTop();
+        if (left < 0 || top < 0 || mCellWidth <= 0 || mCellHeight <= 0) {
+            return -1;
+        }
+        int column = (int) (left / mCellWidth);
+        int row = (int) (top / mCellHeight);
+        if (column >= mColumnCount || row >= mRowCount) {
+            return -1;
+        }
+        return mCells[row * mColumnCount + column];
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        int paddingLeft = getPaddingLeft();
+        int paddingTop = getPaddingTop();
+        mCellWidth = (float) (right - left - paddingLeft - getPaddingRight()) / mColumnCount;
+        mCellHeight = (float) (bottom - top - paddingTop - getPaddingBottom()) / mRowCount;
+        for (Key key : mKeys) {
+            key.bounds.set(
+                    paddingLeft + key.column * mCellWidth,
+                    paddingTop + key.row * mCellHeight,
+                    paddingLeft + (key.column + key.columnSpan) * mCellWidth,
+                    paddingTop + (key.row + key.rowSpan) * mCellHeight);
+            // Like the square buttons of CalculatorPadGridLayout, centered in their cells.
+            key.radius = Math.min(key.bounds.width(), key.bounds.height()) / 2;
+            mTextPaint.setTextSize(key.textSize);
+            mTextPaint.setTypeface(key.typeface);
+            key.baseline = key.bounds.centerY() - (mTextPaint.ascent() + mTextPaint.descent()) / 2;
+            if (key.icon != null) {
+                int width = key.icon.getIntrinsicWidth();
+                int height = key.icon.getIntrinsicHeight();
+                float scale = Math.min(1f, 2 * key.radius / Math.max(Math.max(width, height), 1));
+                int halfWidth = Math.round(width * scale / 2);
+                int halfHeight = Math.round(height * scale / 2);
+                int centerX = Math.round(key.bounds.centerX());
+                int centerY = Math.round(key.bounds.centerY());
+                key.icon.setBounds(centerX - halfWidth, centerY - halfHeight,
+                        centerX + halfWidth, centerY + halfHeight);
+            }
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        for (Key key : mKeys) {
+            if (key.visible && key.backgroundColor != Color.TRANSPARENT) {
+                mFillPaint.setColor(key.backgroundColor);
+                canvas.drawRect(key.bounds, mFillPaint);
+            }
+        }
+        for (int i = 0; i < mKeys.size(); i++) {
+            Key key = mKeys.get(i);
+            if (!key.visible) {
+                continue;
+            }
+            if (i == mRippleKey) {
+                mFillPaint.setColor(key.highlightColor);
+                mFillPaint.setAlpha(Math.round(Color.alpha(key.highlightColor) * mRippleAlpha));
+                canvas.drawCircle(key.bounds.centerX(), key.bounds.centerY(),
+                        key.radius * mRippleRadius, mFillPaint);
+            }
+            int[] state = !isEnabled() ? STATE_DISABLED : i == mPressedKey ? STATE_PRESSED : STATE_ENABLED;
+            if (key.icon != null) {
+                key.icon.setState(state);
+                key.icon.draw(canvas);
+            }
+            if (key.text != null && key.textColor != null) {
+                mTextPaint.setTextSize(key.textSize);
+                mTextPaint.setTypeface(key.typeface);
+                mTextPaint.setColor(key.textColor.getColorForState(state, key.textColor.getDefaultColor()));
+                canvas.drawText(key.text, 0, key.text.length(), key.bounds.centerX(), key.baseline, mTextPaint);
+            }
+        }
+    }
+
+    @SuppressLint("ClickableViewAccessibility")
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!isEnabled()) {
+            return false;
+        }
+        float x = event.getX();
+        float y = event.getY();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                int key = findKey(x, y);
+                if (key < 0) {
+                    return false;
+                }
+                press(key);
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (mPressedKey >= 0) {
+                    RectF bounds = mKeys.get(mPressedKey).bounds;
+                    if (x < bounds.left - mTouchSlop || x > bounds.right + mTouchSlop
+                            || y < bounds.top - mTouchSlop || y > bounds.bottom + mTouchSlop) {
+                        cancelPress();
+                    }
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                if (mPressedKey >= 0) {
+                    int pressedKey = mPressedKey;
+                    boolean click = !mLongClickPerformed;
+                    cancelPress();
+                    if (click) {
+                        performKeyClick(pressedKey);
+                    }
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                cancelPress();
+                return true;
+        }
+        return true;
+    }
+
+    private void press(int index) {
+        cancelPress();
+        mPressedKey = index;
+        mLongClickPerformed = false;
+        if (mKeys.get(index).longClickable) {
+            postDelayed(mLongPress, ViewConfiguration.getLongPressTimeout());
+        }
+
+        // Cancelling the exit resets mRippleKey, so it's set after.
+        mRippleExit.cancel();
+        mRippleKey = index;
+        mRippleRadius = 0f;
+        mRippleAlpha = 1f;
+        mRippleEnter.start();
+        invalidate();
+    }
+
+    private void cancelPress() {
+        removeCallbacks(mLongPress);
+        if (mPressedKey < 0) {
+            return;
+        }
+        mPressedKey = -1;
+        // The ripple keeps growing while it fades.
+        mRippleExit.start();
+        invalidate();
+    }
+
+    private boolean performKeyClick(int index) {
+        playSoundEffect(SoundEffectConstants.CLICK);
+        mTouchHelper.sendEventForVirtualView(index, AccessibilityEvent.TYPE_VIEW_CLICKED);
+        if (mListener != null) {
+            Key key = mKeys.get(index);
+            mListener.onKeyClick(this, key.id, key.text);
+        }
+        return true;
+    }
+
+    private boolean performKeyLongClick(int index) {
+        if (mListener == null || !mListener.onKeyLongClick(this, mKeys.get(index).id)) {
+            return false;
+        }
+        performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+        mTouchHelper.sendEventForVirtualView(index, AccessibilityEvent.TYPE_VIEW_LONG_CLICKED);
+        return true;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        cancelPress();
+        mRippleEnter.cancel();
+        mRippleExit.cancel();
+    }
+
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        return mTouchHelper.dispatchHoverEvent(event) || super.dispatchHoverEvent(event);
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        return mTouchHelper.dispatchKeyEvent(event) || super.dispatchKeyEvent(event);
+    }
+
+    @Override
+    protected void onFocusChanged(boolean gainFocus, int direction, @Nullable Rect previouslyFocusedRect) {
+        super.onFocusChanged(gainFocus, direction, previouslyFocusedRect);
+        mTouchHelper.onFocusChanged(gainFocus, direction, previouslyFocusedRect);
+    }
+
+    public interface OnKeyClickListener {
+        void onKeyClick(CalculatorKeypadView keypad, @IdRes int id, CharSequence text);
+
+        /**
+         * Called when a key with {@code android:longClickable} set is held down.
+         *
+         * @return True if the long click was handled, in which case releasing the key doesn't
+         * click it.
+         */
+        boolean onKeyLongClick(CalculatorKeypadView keypad, @IdRes int id);
+    }
+
+    private static final class Key {
+        final int id;
+        final CharSequence contentDescription;
+        final Drawable icon;
+        final float textSize;
+        final ColorStateList textColor;
+        final Typeface typeface;
+        final int highlightColor;
+        final int backgroundColor;
+        final boolean longClickable;
+        final int row;
+        final int column;
+        final int rowSpan;
+        final int columnSpan;
+        CharSequence text;
+        boolean visible;
+
+        // Set in onLayout.
+        final RectF bounds = new RectF();
+        float radius;
+        float baseline;
+
+        Key(Context context, AttributeSet attrs, int next, int columnCount) {
+            TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.CalculatorKeypadView_Key);
+            id = a.getResourceId(R.styleable.CalculatorKeypadView_Key_android_id, View.NO_ID);
+            text = a.getText(R.styleable.CalculatorKeypadView_Key_android_text);
+            contentDescription = a.getText(R.styleable.CalculatorKeypadView_Key_android_contentDescription);
+            icon = a.getDrawable(R.styleable.CalculatorKeypadView_Key_android_src);
+            ColorStateList tint = a.getColorStateList(R.styleable.CalculatorKeypadView_Key_android_tint);
+            if (icon != null && tint != null) {
+                icon.mutate().setTintList(tint);
+            }
+            textSize = a.getDimension(R.styleable.CalculatorKeypadView_Key_android_textSize, 0f);
+            textColor = a.getColorStateList(R.styleable.CalculatorKeypadView_Key_android_textColor);
+            typeface = toTypeface(a.getInt(R.styleable.CalculatorKeypadView_Key_android_typeface, 0));
+            highlightColor = a.getColor(R.styleable.CalculatorKeypadView_Key_android_colorControlHighlight, Color.TRANSPARENT);
+            backgroundColor = a.getColor(R.styleable.CalculatorKeypadView_Key_keyBackgroundColor, Color.TRANSPARENT);
+            visible = a.getInt(R.styleable.CalculatorKeypadView_Key_android_visibility, 0) == 0;
+            longClickable = a.getBoolean(R.styleable.CalculatorKeypadView_Key_android_longClickable, false);
+            int row = a.getInt(R.styleable.CalculatorKeypadView_Key_android_layout_row, -1);
+            int column = a.getInt(R.styleable.CalculatorKeypadView_Key_android_layout_column, -1);
+            rowSpan = Math.max(a.getInt(R.styleable.CalculatorKeypadView_Key_android_layout_rowSpan, 1), 1);
+            columnSpan = Math.max(a.getInt(R.styleable.CalculatorKeypadView_Key_android_layout_columnSpan, 1), 1);
+            a.recycle();
+
+            if (row < 0 || column < 0) {
+                row = next / columnCount;
+                column = next % columnCount;
+            }
+            this.row = row;
+            this.column = column;
+        }
+
+        // The values of android:typeface.
+        private static Typeface toTypeface(int typeface) {
+            switch (typeface) {
+                case 1:
+                    return Typeface.SANS_SERIF;
+                case 2:
+                    return Typeface.SERIF;
+                case 3:
+                    return Typeface.MONOSPACE;
+                default:
+                    return Typeface.DEFAULT;
+            }
+        }
+    }
+
+    private final class KeypadAccessibilityHelper extends ExploreByTouchHelper {
+        private final Rect mBounds = new Rect();
+
+        KeypadAccessibilityHelper() {
+            super(CalculatorKeypadView.this);
+        }
+
+        @Override
+        protected int getVirtualViewAt(float x, float y) {
+            int key = findKey(x, y);
+            return key >= 0 ? key : INVALID_ID;
+        }
+
+        @Override
+        protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+            for (int i = 0; i < mKeys.size(); i++) {
+                if (mKeys.get(i).visible) {
+                    virtualViewIds.add(i);
+                }
+            }
+        }
+
+        @Override
+        protected void onPopulateNodeForVirtualView(int virtualViewId, @NonNull AccessibilityNodeInfoCompat node) {
+            Key key = mKeys.get(virtualViewId);
+            node.setClassName(Button.class.getName());
+            node.setText(key.text);
+            // A node needs text or a description, and icon keys have no text.
+            node.setContentDescription(key.contentDescription != null || key.text != null
+                    ? key.contentDescription : getResources().getResourceEntryName(key.id));
+            key.bounds.roundOut(mBounds);
+            node.setBoundsInParent(mBounds);
+            node.setEnabled(isEnabled());
+            node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+            if (key.longClickable) {
+                node.addAction(AccessibilityNodeInfoCompat.ACTION_LONG_CLICK);
+            }
+        }
+
+        @Override
+        protected boolean onPerformActionForVirtualView(int virtualViewId, int action, @Nullable Bundle arguments) {
+            switch (action) {
+                case AccessibilityNodeInfoCompat.ACTION_CLICK:
+                    return performKeyClick(virtualViewId);
+                case AccessibilityNodeInfoCompat.ACTION_LONG_CLICK:
+                    return performKeyLongClick(virtualViewId);
+                default:
+                    return false;
+            }
+        }
+    }
+}
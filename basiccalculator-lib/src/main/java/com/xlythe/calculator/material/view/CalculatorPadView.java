@@ -16,12 +16,12 @@
 package com.xlythe.calculator.material.view;
 
 import android.animation.Animator;
-import android.animation.ValueAnimator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.TimeAnimator;
 import android.annotation.SuppressLint;
 import android.content.Context;
-import android.graphics.Color;
 
-import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.view.MotionEventCompat;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
@@ -34,25 +34,46 @@ import com.xlythe.calculator.material.R;
 
 import io.codetail.widget.RevealFrameLayout;
 
+/**
+ * A pad with an overlay (the advanced pad) that's dragged in and out from the side.
+ * <p>
+ * The overlay is moved by a critically damped spring, stepped on every frame by one
+ * {@link TimeAnimator}, so it settles the same way at any refresh rate. Grabbing the overlay
+ * while it moves stops it where it is. When it's let go, or sent somewhere else by
+ * {@link #expand} or {@link #collapse} while moving, the spring starts from the overlay's current
+ * velocity, so a fling keeps its momentum. Nothing is allocated while dragging or animating.
+ */
 public class CalculatorPadView extends RevealFrameLayout {
-    private final DisplayAnimator mAnimator = new DisplayAnimator(0, 1f);
+    // The spring's natural frequency, in radians per second. It settles in about 9 / frequency.
+    private static final float SPRING_FREQUENCY = 30f;
+    // How far ahead a fling is projected, in seconds, to decide where the overlay goes.
+    private static final float FLING_PROJECTION = 0.2f;
+
+    private final TimeAnimator mSpring = new TimeAnimator();
+    // Where the overlay is, from 0 (collapsed) to 1 (expanded), how fast it moves, per second,
+    // and where the spring takes it.
+    private float mPosition;
+    private float mVelocity;
+    private float mTarget;
+    // Where the overlay was when the drag started.
+    private float mDragStart;
+    @Nullable
+    private Animator.AnimatorListener mSpringListener;
     private VelocityTracker mVelocityTracker;
     private int mTouchSlop;
     private int mMinimumFlingVelocity;
     private int mMaximumFlingVelocity;
     private float mInitialMotion;
     private float mLastMotion;
-    private float mLastDelta;
     private float mOffset;
     private float mOverlayMargin;
     private boolean mInterceptingTouchEvents = false;
-    private TranslateState mLastState = TranslateState.COLLAPSED;
     private TranslateState mState = TranslateState.COLLAPSED;
 
     private View mBase;
     private SolidLayout mOverlay;
-
-    private Animator mActiveAnimator;
+    @Nullable
+    private FrameMonitor mFrameMonitor;
 
     public CalculatorPadView(Context context) {
         super(context);
@@ -76,6 +97,36 @@ public class CalculatorPadView extends RevealFrameLayout {
         mTouchSlop = vc.getScaledTouchSlop();
         mOffset = getResources().getDimensionPixelSize(R.dimen.bscalc_pad_page_margin);
         mOverlayMargin = getResources().getDimensionPixelSize(R.dimen.bscalc_shadow_margin);
+        mSpring.setTimeListener(new TimeAnimator.TimeListener() {
+            @Override
+            public void onTimeUpdate(TimeAnimator animation, long totalTime, long deltaTime) {
+                stepSpring(deltaTime / 1000f);
+            }
+        });
+        mSpring.addListener(new AnimatorListenerAdapter() {
+            private boolean mCanceled;
+
+            @Override
+            public void onAnimationStart(Animator animation) {
+                mCanceled = false;
+            }
+
+            @Override
+            public void onAnimationCancel(Animator animation) {
+                mCanceled = true;
+            }
+
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                if (mSpringListener != null) {
+                    mSpring.removeListener(mSpringListener);
+                    mSpringListener = null;
+                }
+                if (!mCanceled) {
+                    onSpringFinished();
+                }
+            }
+        });
         getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
             @Override
             public void onGlobalLayout() {
@@ -94,7 +145,6 @@ public class CalculatorPadView extends RevealFrameLayout {
 
     private void setState(TranslateState state) {
         if (mState != state) {
-            mLastState = mState;
             mState = state;
 
             if (mState == TranslateState.EXPANDED) {
@@ -119,6 +169,10 @@ public class CalculatorPadView extends RevealFrameLayout {
     }
 
     protected View getBase() {
+        // The base is inflated from a ViewStub after this view is.
+        if (mBase == null) {
+            mBase = findViewById(R.id.base);
+        }
         return mBase;
     }
 
@@ -142,11 +196,7 @@ public class CalculatorPadView extends RevealFrameLayout {
         }
         setEnabled(mOverlay, false);
 
-        if (state == TranslateState.EXPANDED) {
-            mOverlay.setTranslationX(-mOverlayMargin);
-        } else {
-            mOverlay.setTranslationX(getWidth() + mOffset - mOverlayMargin);
-        }
+        setPosition(state == TranslateState.EXPANDED ? 1f : 0f);
 
         return invalidate;
     }
@@ -171,6 +221,9 @@ public class CalculatorPadView extends RevealFrameLayout {
             case MotionEvent.ACTION_DOWN:
                 mInitialMotion = pos;
                 mLastMotion = pos;
+                mDragStart = mPosition;
+                // A moving overlay is caught right away.
+                mInterceptingTouchEvents = mSpring.isStarted();
                 handleDown();
                 break;
             case MotionEvent.ACTION_MOVE:
@@ -218,6 +271,7 @@ public class CalculatorPadView extends RevealFrameLayout {
                 handleMove(event);
                 break;
             case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
                 handleUp(event);
                 break;
         }
@@ -225,65 +279,69 @@ public class CalculatorPadView extends RevealFrameLayout {
         return true;
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        stopSpring();
+        if (mFrameMonitor != null) {
+            mFrameMonitor.end(FrameMonitor.Animation.PAD_DRAG);
+        }
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
     protected void handleDown() {
+        // Stops a moving overlay where it is, so it can be dragged from there.
+        stopSpring();
     }
 
     protected void handleMove(MotionEvent event) {
-        float percent = getCurrentPercent();
-        mAnimator.onUpdate(percent);
-        mLastDelta = mLastMotion - event.getRawX();
         mLastMotion = event.getRawX();
+        setPosition(getCurrentPercent());
         setState(TranslateState.PARTIAL);
-        resetAnimator();
         setEnabled(mOverlay, true);
+        if (mFrameMonitor != null) {
+            mFrameMonitor.begin(FrameMonitor.Animation.PAD_DRAG, this);
+        }
     }
 
     protected void handleUp(MotionEvent event) {
         mVelocityTracker.computeCurrentVelocity(1000, mMaximumFlingVelocity);
-        if (Math.abs(mVelocityTracker.getXVelocity()) > mMinimumFlingVelocity) {
-            // the sign on velocity seems unreliable, so use last delta to determine direction
-            if (mLastDelta > 0) {
-                expand();
-            } else {
-                collapse();
-            }
+        float velocity = mVelocityTracker.getXVelocity();
+        mVelocityTracker.clear();
+        // Dragging to the left expands.
+        mVelocity = getWidth() > 0 ? -velocity / getWidth() : 0f;
+        float projection = mPosition;
+        if (Math.abs(velocity) > mMinimumFlingVelocity) {
+            projection += mVelocity * FLING_PROJECTION;
+        }
+        if (projection >= 0.5f) {
+            expand();
         } else {
-            if (mLastMotion > getWidth() / 2f) {
-                expand();
-            } else {
-                collapse();
-            }
+            collapse();
         }
-        mVelocityTracker.recycle();
-        mVelocityTracker = null;
     }
 
-    private void resetAnimator() {
-        if (mActiveAnimator != null) {
-            mActiveAnimator.cancel();
-            mActiveAnimator = null;
-        }
+    /**
+     * Times the frames of dragging the overlay, and of the spring, into {@code monitor}. Pass
+     * null, the default, to time nothing.
+     */
+    public void setFrameMonitor(@Nullable FrameMonitor monitor) {
+        mFrameMonitor = monitor;
     }
 
     public void expand() {
         expand(null);
     }
 
-    public void expand(Animator.AnimatorListener listener) {
-        resetAnimator();
-
-        mActiveAnimator = new DisplayAnimator(getCurrentPercent(), 1f);
-        if (listener != null) {
-            mActiveAnimator.addListener(listener);
-        }
-        mActiveAnimator.addListener(new AnimationFinishedListener() {
-            @Override
-            public void onAnimationFinished() {
-                showFab();
-                setEnabled(mOverlay, true);
-            }
-        });
-        mActiveAnimator.start();
+    /**
+     * Moves the overlay in. {@code listener} is told when it's in place, or, with a cancel, when
+     * it's sent elsewhere or grabbed before that.
+     */
+    public void expand(@Nullable Animator.AnimatorListener listener) {
+        springTo(1f, listener);
         setState(TranslateState.EXPANDED);
     }
 
@@ -291,22 +349,73 @@ public class CalculatorPadView extends RevealFrameLayout {
         collapse(null);
     }
 
-    public void collapse(Animator.AnimatorListener listener) {
-        resetAnimator();
+    /**
+     * Moves the overlay out. {@code listener} is told when it's out, or, with a cancel, when it's
+     * sent elsewhere or grabbed before that.
+     */
+    public void collapse(@Nullable Animator.AnimatorListener listener) {
+        springTo(0f, listener);
+        setState(TranslateState.COLLAPSED);
+    }
 
-        mActiveAnimator = new DisplayAnimator(getCurrentPercent(), 0f);
+    private void springTo(float target, @Nullable Animator.AnimatorListener listener) {
+        // A moving overlay keeps its position and velocity; only the target changes.
+        if (mSpring.isStarted()) {
+            mSpring.cancel();
+        }
+        mTarget = target;
         if (listener != null) {
-            mActiveAnimator.addListener(listener);
+            mSpringListener = listener;
+            mSpring.addListener(listener);
+        }
+        mSpring.start();
+        if (mFrameMonitor != null) {
+            // The drag, if there was one, lasts until the overlay settles.
+            mFrameMonitor.track(FrameMonitor.Animation.PAD_DRAG, mSpring, this);
+        }
+    }
+
+    private void stepSpring(float dt) {
+        // The exact solution of a critically damped spring, so the step size doesn't matter.
+        float displacement = mPosition - mTarget;
+        float a = mVelocity + SPRING_FREQUENCY * displacement;
+        float decay = (float) Math.exp(-SPRING_FREQUENCY * dt);
+        float position = mTarget + (displacement + a * dt) * decay;
+        mVelocity = (mVelocity - SPRING_FREQUENCY * a * dt) * decay;
+
+        // It's done once it's within half a pixel and slower than 60 pixels a second, or if a
+        // fling carried it past the end.
+        float width = Math.max(getWidth(), 1);
+        boolean overshot = (position - mTarget) * displacement < 0;
+        if (overshot || (Math.abs(position - mTarget) * width < 0.5f && Math.abs(mVelocity) * width < 60f)) {
+            setPosition(mTarget);
+            mVelocity = 0f;
+            mSpring.end();
+        } else {
+            setPosition(position);
         }
-        mActiveAnimator.addListener(new AnimationFinishedListener() {
-            @Override
-            public void onAnimationFinished() {
-                hideFab();
-                setEnabled(mOverlay, false);
-            }
-        });
-        mActiveAnimator.start();
-        setState(TranslateState.COLLAPSED);
+    }
+
+    private void onSpringFinished() {
+        if (mTarget == 1f) {
+            showFab();
+            setEnabled(mOverlay, true);
+        } else {
+            hideFab();
+            setEnabled(mOverlay, false);
+        }
+    }
+
+    private void stopSpring() {
+        if (mSpring.isStarted()) {
+            mSpring.cancel();
+        }
+        mVelocity = 0f;
+    }
+
+    private void setPosition(float position) {
+        mPosition = position;
+        mOverlay.setTranslationX((getWidth() + mOffset) * (1 - position) - mOverlayMargin);
     }
 
     protected void showFab() {
@@ -326,14 +435,11 @@ public class CalculatorPadView extends RevealFrameLayout {
         view.setPreventParentTouchEvents(!enabled);
     }
 
+    /**
+     * Returns where the current drag puts the overlay, from 0 (collapsed) to 1 (expanded).
+     */
     protected float getCurrentPercent() {
-        float percent = (mInitialMotion - mLastMotion) / getWidth();
-
-        // Start at 100% if open
-        if (mState == TranslateState.EXPANDED ||
-                (mState == TranslateState.PARTIAL && mLastState == TranslateState.EXPANDED)) {
-            percent += 1f;
-        }
+        float percent = mDragStart + (mInitialMotion - mLastMotion) / getWidth();
         percent = Math.min(Math.max(percent, 0f), 1f);
         return percent;
     }
@@ -341,52 +447,4 @@ public class CalculatorPadView extends RevealFrameLayout {
     public enum TranslateState {
         EXPANDED, COLLAPSED, PARTIAL
     }
-
-    /**
-     * An animator that goes from 0 to 100%
-     **/
-    private class DisplayAnimator extends ValueAnimator {
-        public DisplayAnimator(float start, float end) {
-            super();
-            setFloatValues(start, end);
-            addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(@NonNull ValueAnimator animation) {
-                    float percent = (float) animation.getAnimatedValue();
-                    onUpdate(percent);
-                }
-            });
-        }
-
-        public void onUpdate(float percent) {
-            // Update the drag animation
-            View overlay = getChildAt(1);
-            overlay.setTranslationX((getWidth() + mOffset) * (1 - percent) - mOverlayMargin);
-        }
-
-        float scale(float percent, float goal) {
-            return 1f - percent * (1f - goal);
-        }
-
-        int mixColors(float percent, int initColor, int goalColor) {
-            int a1 = Color.alpha(goalColor);
-            int r1 = Color.red(goalColor);
-            int g1 = Color.green(goalColor);
-            int b1 = Color.blue(goalColor);
-
-            int a2 = Color.alpha(initColor);
-            int r2 = Color.red(initColor);
-            int g2 = Color.green(initColor);
-            int b2 = Color.blue(initColor);
-
-            percent = Math.min(1, percent);
-            percent = Math.max(0, percent);
-            float a = a1 * percent + a2 * (1 - percent);
-            float r = r1 * percent + r2 * (1 - percent);
-            float g = g1 * percent + g2 * (1 - percent);
-            float b = b1 * percent + b2 * (1 - percent);
-
-            return Color.argb((int) a, (int) r, (int) g, (int) b);
-        }
-    }
-}
\ No newline at end of file
+}
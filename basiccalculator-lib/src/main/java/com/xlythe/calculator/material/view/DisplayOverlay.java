@@ -1,21 +1,60 @@
 package com.xlythe.calculator.material.view;
 
 import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.annotation.SuppressLint;
 import android.content.Context;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
 import android.view.ViewConfiguration;
+import android.view.animation.DecelerateInterpolator;
 import android.widget.RelativeLayout;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.xlythe.calculator.material.R;
+
 /**
  * The display overlay is a container that intercepts touch events on top of:
  * 1. the display, i.e. the formula and result views
  * 2. the history view, which is revealed by dragging down on the display
  * <p>
  * This overlay passes vertical scrolling events down to the history recycler view
- * when applicable.  If the user attempts to scroll up and the recycler is already
- * scrolled all the way up, then we intercept the event and collapse the history.
+ * when applicable.  If the user attempts to scroll down and the recycler is already
+ * scrolled all the way to the most recent entry, then we intercept the event and
+ * collapse the history.
  */
 public class DisplayOverlay extends RelativeLayout {
+    // How many entries the history keeps ready to be shown, beyond the ones on screen.
+    private static final int ITEM_VIEW_CACHE_SIZE = 4;
+
+    private RecyclerView mHistoryView;
+    private View mMainDisplay;
+    private LinearLayoutManager mLayoutManager;
+
+    private TranslateState mState = TranslateState.COLLAPSED;
+    // How far the history is pulled down, from 0 (collapsed) to 1 (expanded).
+    private float mPosition;
+    private final ValueAnimator mAnimator = ValueAnimator.ofFloat(0f, 1f);
+    private float mAnimationStart;
+    private float mAnimationEnd;
+    @Nullable
+    private Animator.AnimatorListener mAnimatorListener;
+
+    private int mTouchSlop;
+    private int mMinimumFlingVelocity;
+    private int mMaximumFlingVelocity;
+    @Nullable
+    private VelocityTracker mVelocityTracker;
+    private float mInitialMotion;
+    private float mDragStart;
+    private boolean mDragging;
 
     public DisplayOverlay(Context context) {
         super(context);
@@ -35,25 +74,211 @@ public class DisplayOverlay extends RelativeLayout {
 
     private void setup() {
         ViewConfiguration vc = ViewConfiguration.get(getContext());
+        mTouchSlop = vc.getScaledTouchSlop();
+        mMinimumFlingVelocity = vc.getScaledMinimumFlingVelocity();
+        mMaximumFlingVelocity = vc.getScaledMaximumFlingVelocity();
+
+        mAnimator.setDuration(getResources().getInteger(android.R.integer.config_shortAnimTime));
+        mAnimator.setInterpolator(new DecelerateInterpolator());
+        mAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(@NonNull ValueAnimator animation) {
+                setPosition(mAnimationStart
+                        + (mAnimationEnd - mAnimationStart) * animation.getAnimatedFraction());
+            }
+        });
+        mAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(@NonNull Animator animation) {
+                // Listeners are only told about the animation they were given with.
+                if (mAnimatorListener != null) {
+                    mAnimator.removeListener(mAnimatorListener);
+                    mAnimatorListener = null;
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onFinishInflate() {
+        super.onFinishInflate();
+        mMainDisplay = findViewById(R.id.main_display);
+        mHistoryView = findViewById(R.id.history);
+        mLayoutManager = new LinearLayoutManager(getContext());
+        // The most recent entry is at the bottom, next to the display.
+        mLayoutManager.setStackFromEnd(true);
+        mHistoryView.setLayoutManager(mLayoutManager);
+        mHistoryView.setHasFixedSize(true);
+        mHistoryView.setItemViewCacheSize(ITEM_VIEW_CACHE_SIZE);
+        // Entries only change from empty to read; fading them in would look like flicker.
+        mHistoryView.setItemAnimator(null);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        setPosition(mPosition);
+    }
+
+    /**
+     * Shows {@code adapter}, usually a {@link HistoryAdapter}, in the history. Pass null to
+     * detach the current one.
+     */
+    public void setAdapter(@Nullable RecyclerView.Adapter<?> adapter) {
+        mHistoryView.setAdapter(adapter);
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mInitialMotion = event.getRawY();
+                mDragging = false;
+                if (mAnimator.isStarted()) {
+                    // Catches the history where it is, so it can be dragged from there.
+                    mAnimator.cancel();
+                    startDrag(event);
+                }
+                break;
+            case MotionEvent.ACTION_MOVE:
+                float delta = event.getRawY() - mInitialMotion;
+                if (!mDragging && Math.abs(delta) > mTouchSlop) {
+                    if (mState == TranslateState.COLLAPSED ? delta > 0
+                            : delta < 0 && !mHistoryView.canScrollVertically(1)) {
+                        startDrag(event);
+                    }
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mDragging = false;
+                break;
+        }
+        return mDragging;
+    }
+
+    @SuppressLint("ClickableViewAccessibility")
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!mDragging) {
+            // Nothing under the touch took it, so the drag is watched for here.
+            onInterceptTouchEvent(event);
+            return true;
+        }
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        mVelocityTracker.addMovement(event);
+
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_MOVE:
+                float height = Math.max(getHeight(), 1);
+                setPosition(Math.max(0f, Math.min(1f, mDragStart + (event.getRawY() - mInitialMotion) / height)));
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mDragging = false;
+                mVelocityTracker.computeCurrentVelocity(1000, mMaximumFlingVelocity);
+                float velocity = mVelocityTracker.getYVelocity();
+                mVelocityTracker.clear();
+                if (Math.abs(velocity) > mMinimumFlingVelocity ? velocity > 0 : mPosition >= 0.5f) {
+                    expand();
+                } else {
+                    collapse();
+                }
+                break;
+        }
+        return true;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mAnimator.isStarted()) {
+            mAnimator.end();
+        }
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    private void startDrag(MotionEvent event) {
+        mDragging = true;
+        mInitialMotion = event.getRawY();
+        mDragStart = mPosition;
+        mState = TranslateState.PARTIAL;
+        if (mVelocityTracker != null) {
+            mVelocityTracker.clear();
+        }
+        // Only the entries near the most recent are read while the history is pulled down.
+        scrollToMostRecent();
+        getParent().requestDisallowInterceptTouchEvent(true);
+    }
+
+    public void expand() {
+        expand(null);
+    }
+
+    /**
+     * Pulls the history down over the display. {@code listener} is told when it's in place.
+     */
+    public void expand(@Nullable Animator.AnimatorListener listener) {
+        animateTo(1f, listener);
+        mState = TranslateState.EXPANDED;
     }
 
     public void collapse() {
         collapse(null);
     }
 
-    public void collapse(Animator.AnimatorListener listener) {
-
+    /**
+     * Pushes the history back up, out of sight. {@code listener} is told when it's gone.
+     */
+    public void collapse(@Nullable Animator.AnimatorListener listener) {
+        animateTo(0f, listener);
+        mState = TranslateState.COLLAPSED;
     }
 
     public boolean isExpanded() {
-        return false;
+        return mState == TranslateState.EXPANDED;
     }
 
+    /**
+     * Scrolls the history to the most recent entry.
+     */
     public void scrollToMostRecent() {
+        RecyclerView.Adapter<?> adapter = mHistoryView.getAdapter();
+        if (adapter != null && adapter.getItemCount() > 0) {
+            mHistoryView.stopScroll();
+            mHistoryView.scrollToPosition(adapter.getItemCount() - 1);
+        }
+    }
+
+    private void animateTo(float position, @Nullable Animator.AnimatorListener listener) {
+        if (mAnimator.isStarted()) {
+            mAnimator.cancel();
+        }
+        mAnimationStart = mPosition;
+        mAnimationEnd = position;
+        if (listener != null) {
+            mAnimatorListener = listener;
+            mAnimator.addListener(listener);
+        }
+        mAnimator.start();
+    }
+
+    private void setPosition(float position) {
+        mPosition = position;
+        int height = getHeight();
+        mHistoryView.setTranslationY((position - 1f) * height);
+        mMainDisplay.setTranslationY(position * height);
+        // Out of sight, the history isn't drawn.
+        mHistoryView.setVisibility(position > 0f ? View.VISIBLE : View.INVISIBLE);
     }
 
     public enum TranslateState {
-        EXPANDED, COLLAPSED
+        EXPANDED, COLLAPSED, PARTIAL
     }
 
 
@@ -0,0 +1,204 @@
+package com.xlythe.calculator.material.view;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ArgbEvaluator;
+import android.animation.ValueAnimator;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.view.View;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The display's text animations: a view growing or shrinking to a new text size, and the result
+ * moving into the formula's place after "=".
+ * <p>
+ * Each animation is one animator, created once and restarted with new values. It only changes
+ * scale and translation, which the render thread applies to the view as it is, and the views
+ * are on hardware layers while it runs. The result takes the formula's color by tinting its
+ * layer as it's composited, so the text isn't drawn again on every frame.
+ */
+public class DisplayTransitions {
+    // How many tints the result's color goes through.
+    private static final int TINT_STEPS = 32;
+
+    private final TextView mFormula;
+    private final TextView mResult;
+
+    private final ValueAnimator mTextSizeAnimator;
+    @Nullable
+    private TextView mTextSizeView;
+    private float mTextScale;
+    private float mTextTranslationX;
+    private float mTextTranslationY;
+    private int mTextSizeLayerType;
+    // False while the result animation owns the view's layer, so it's left for it to restore.
+    private boolean mTextSizeOwnsLayer;
+
+    private final ValueAnimator mResultAnimator;
+    private final float[] mResultFrom = new float[4];
+    private final float[] mResultTo = new float[4];
+    private int mResultLayerType;
+    private int mFormulaLayerType;
+    private int mResultColor;
+    private final Paint mResultPaint = new Paint();
+    private final PorterDuffColorFilter[] mTints = new PorterDuffColorFilter[TINT_STEPS + 1];
+    private int mTintFrom;
+    private int mTintTo;
+    @Nullable
+    private Runnable mOnResultShown;
+
+    public DisplayTransitions(TextView formula, TextView result) {
+        mFormula = formula;
+        mResult = result;
+
+        mTextSizeAnimator = ValueAnimator.ofFloat(0f, 1f);
+        mTextSizeAnimator.setDuration(formula.getResources().getInteger(android.R.integer.config_mediumAnimTime));
+        mTextSizeAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
+        mTextSizeAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(@NonNull ValueAnimator animation) {
+                float remaining = 1f - animation.getAnimatedFraction();
+                mTextSizeView.setScaleX(1f + (mTextScale - 1f) * remaining);
+                mTextSizeView.setScaleY(1f + (mTextScale - 1f) * remaining);
+                mTextSizeView.setTranslationX(mTextTranslationX * remaining);
+                mTextSizeView.setTranslationY(mTextTranslationY * remaining);
+            }
+        });
+        mTextSizeAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(@NonNull Animator animation) {
+                if (mTextSizeOwnsLayer) {
+                    mTextSizeView.setLayerType(mTextSizeLayerType, null);
+                }
+            }
+        });
+
+        mResultAnimator = ValueAnimator.ofFloat(0f, 1f);
+        mResultAnimator.setDuration(result.getResources().getInteger(android.R.integer.config_longAnimTime));
+        mResultAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
+        mResultAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(@NonNull ValueAnimator animation) {
+                float fraction = animation.getAnimatedFraction();
+                mResult.setScaleX(lerp(0, fraction));
+                mResult.setScaleY(lerp(0, fraction));
+                mResult.setTranslationX(lerp(1, fraction));
+                mResult.setTranslationY(lerp(2, fraction));
+                mFormula.setTranslationY(lerp(3, fraction));
+                mResultPaint.setColorFilter(mTints[Math.round(fraction * TINT_STEPS)]);
+                mResult.setLayerPaint(mResultPaint);
+            }
+        });
+        mResultAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(@NonNull Animator animation) {
+                // Reset all of the values modified during the animation.
+                mResult.setLayerType(mResultLayerType, null);
+                mFormula.setLayerType(mFormulaLayerType, null);
+                mResult.setPivotY(mResult.getHeight() / 2f);
+                mResult.setTextColor(mResultColor);
+                mResult.setScaleX(1f);
+                mResult.setScaleY(1f);
+                mResult.setTranslationX(0f);
+                mResult.setTranslationY(0f);
+                mFormula.setTranslationY(0f);
+
+                Runnable onResultShown = mOnResultShown;
+                mOnResultShown = null;
+                if (onResultShown != null) {
+                    onResultShown.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Animates {@code view} from {@code oldSize} to its current text size, keeping the apparent
+     * baseline of its text where it was.
+     *
+     * @return The running animation.
+     */
+    public Animator animateTextSize(TextView view, float oldSize) {
+        if (mTextSizeAnimator.isStarted()) {
+            mTextSizeAnimator.end();
+        }
+        mTextSizeView = view;
+        mTextScale = oldSize / view.getTextSize();
+        mTextTranslationX = (1f - mTextScale) * (view.getWidth() / 2f - view.getPaddingEnd());
+        mTextTranslationY = (1f - mTextScale) * (view.getHeight() / 2f - view.getPaddingBottom());
+        // The result animation already has both views on layers, and puts them back when it ends.
+        mTextSizeOwnsLayer = !mResultAnimator.isStarted() || (view != mResult && view != mFormula);
+        if (mTextSizeOwnsLayer) {
+            mTextSizeLayerType = view.getLayerType();
+            view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        }
+        mTextSizeAnimator.start();
+        return mTextSizeAnimator;
+    }
+
+    /**
+     * Scales and moves the result, which must already show its new text, into the formula's
+     * place and fades it to the formula's color, while the formula moves out of the way. Both
+     * views are put back as they were at the end.
+     *
+     * @param onShown Run once the result is in place, e.g. to move it into the formula.
+     * @return The running animation.
+     */
+    public Animator showResult(float scale, float translationX, float translationY,
+                               float formulaTranslationY, @Nullable Runnable onShown) {
+        if (mResultAnimator.isStarted()) {
+            mResultAnimator.end();
+        }
+        // Otherwise its layer would be saved as the view's own, and restored when this ends.
+        if (mTextSizeAnimator.isStarted()) {
+            mTextSizeAnimator.end();
+        }
+        mResultFrom[0] = mResult.getScaleX();
+        mResultFrom[1] = mResult.getTranslationX();
+        mResultFrom[2] = mResult.getTranslationY();
+        mResultFrom[3] = mFormula.getTranslationY();
+        mResultTo[0] = scale;
+        mResultTo[1] = translationX;
+        mResultTo[2] = translationY;
+        mResultTo[3] = formulaTranslationY;
+        mOnResultShown = onShown;
+
+        mResultColor = mResult.getCurrentTextColor();
+        updateTints(mResultColor, mFormula.getCurrentTextColor());
+        // The tints give the text its color, alpha included.
+        mResult.setTextColor(Color.WHITE);
+        mResultPaint.setColorFilter(mTints[0]);
+        mResultLayerType = mResult.getLayerType();
+        mFormulaLayerType = mFormula.getLayerType();
+        mResult.setLayerType(View.LAYER_TYPE_HARDWARE, mResultPaint);
+        mFormula.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        mResult.setPivotX(mResult.getWidth() / 2f);
+        mResult.setPivotY(0f);
+        mResultAnimator.start();
+        return mResultAnimator;
+    }
+
+    private float lerp(int property, float fraction) {
+        return mResultFrom[property] + (mResultTo[property] - mResultFrom[property]) * fraction;
+    }
+
+    private void updateTints(int from, int to) {
+        if (mTints[0] != null && from == mTintFrom && to == mTintTo) {
+            return;
+        }
+        ArgbEvaluator evaluator = new ArgbEvaluator();
+        for (int i = 0; i <= TINT_STEPS; i++) {
+            int color = (Integer) evaluator.evaluate((float) i / TINT_STEPS, from, to);
+            mTints[i] = new PorterDuffColorFilter(color, PorterDuff.Mode.SRC_IN);
+        }
+        mTintFrom = from;
+        mTintTo = to;
+    }
+}
@@ -0,0 +1,279 @@
+package com.xlythe.calculator.material.view;
+
+import android.text.Editable;
+import android.text.Spanned;
+import android.text.TextPaint;
+import android.text.style.MetricAffectingSpan;
+
+import com.xlythe.calculator.material.Constants;
+import com.xlythe.calculator.material.ExpressionTokens;
+import com.xlythe.calculator.material.util.TextUtil;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Groups the digits of numbers and raises exponents in the formula, for
+ * {@link FormattedNumberEditText}.
+ * <p>
+ * Only the numbers and exponents an edit touches are formatted again. Separators are added and
+ * removed one at a time, so spans and the selection move with the text, and each of those edits
+ * is recorded so a position from before formatting can be mapped to one after it. Exponent spans
+ * are moved with setSpan rather than replaced, and spans that are no longer needed are kept for
+ * the next exponent.
+ */
+final class ExpressionFormatter {
+    private static final int MAX_POOLED_SPANS = 8;
+
+    private final ArrayDeque<ExponentSpan> mSpanPool = new ArrayDeque<>();
+    // The separators added (+1) or removed (-1) by the last pass, and where, in order.
+    private int[] mEditPositions = new int[8];
+    private int[] mEditDeltas = new int[8];
+    private int mEditCount;
+
+    /**
+     * Formats the numbers and exponents touching {@code [start, end)}, the range an edit just
+     * replaced. {@code tokens} must be kept up to date with {@code text} as it changes.
+     */
+    void format(Editable text, ExpressionTokens tokens, int start, int end) {
+        mEditCount = 0;
+        groupNumbers(text, tokens, start, end);
+        raiseExponents(text, tokens, mapPosition(start), mapPosition(end));
+    }
+
+    /**
+     * Maps a position in the text from before the last {@link #format} to the same place after it.
+     */
+    int mapPosition(int position) {
+        for (int i = 0; i < mEditCount; i++) {
+            if (mEditPositions[i] < position) {
+                position += mEditDeltas[i];
+            }
+        }
+        return position;
+    }
+
+    private void groupNumbers(Editable text, ExpressionTokens tokens, int start, int end) {
+        // Right to left, so formatting a number doesn't move the ones still to be formatted. How a
+        // number is formatted depends on up to three characters before it (the "1E-" of 1E-1000),
+        // and the edit may have left a separator right before it.
+        int i = tokens.indexAt(Math.min(end + 3, text.length() - 1));
+        while (i >= 0 && tokens.getEnd(i) >= start - 1) {
+            if (!isInNumber(text, tokens, i)) {
+                i--;
+                continue;
+            }
+            int first = i;
+            while (first > 0 && isInNumber(text, tokens, first - 1)) {
+                first--;
+            }
+            int last = i;
+            while (last + 1 < tokens.getCount() && isInNumber(text, tokens, last + 1)) {
+                last++;
+            }
+            // Deleting digits can leave a separator on either side of a number.
+            int numberEnd = tokens.getEnd(last);
+            if (numberEnd < text.length() && text.charAt(numberEnd) == TextUtil.GROUPING_SEPARATOR) {
+                remove(text, numberEnd);
+            }
+            int numberStart = tokens.getStart(first);
+            groupDigits(text, numberStart, numberEnd, !isExponentDigits(text, numberStart));
+            if (numberStart > 0 && text.charAt(numberStart - 1) == TextUtil.GROUPING_SEPARATOR) {
+                remove(text, numberStart - 1);
+            }
+            i = first - 1;
+        }
+    }
+
+    private static boolean isInNumber(Editable text, ExpressionTokens tokens, int index) {
+        int type = tokens.getType(index);
+        if (type == ExpressionTokens.NUMBER) {
+            return true;
+        }
+        return type == ExpressionTokens.SPACE
+                && text.charAt(tokens.getStart(index)) == TextUtil.GROUPING_SEPARATOR
+                && index > 0 && tokens.getType(index - 1) == ExpressionTokens.NUMBER
+                && index + 1 < tokens.getCount() && tokens.getType(index + 1) == ExpressionTokens.NUMBER;
+    }
+
+    /**
+     * Returns true if the number at {@code start} is the exponent of scientific notation, as in
+     * 1.5E10, which isn't grouped.
+     */
+    private static boolean isExponentDigits(CharSequence text, int start) {
+        int i = start - 1;
+        if (i >= 0 && (text.charAt(i) == '-' || text.charAt(i) == Constants.MINUS)) {
+            i--;
+        }
+        return i > 0 && (text.charAt(i) == 'E' || text.charAt(i) == 'e')
+                && Character.isDigit(text.charAt(i - 1));
+    }
+
+    /**
+     * Puts a separator between every three digits of the integer part of the number in
+     * {@code [start, end)} if {@code group} is set, and nowhere else.
+     */
+    private void groupDigits(Editable text, int start, int end, boolean group) {
+        int integerEnd = start;
+        while (group && integerEnd < end && text.charAt(integerEnd) != Constants.DECIMAL_POINT) {
+            integerEnd++;
+        }
+        for (int p = end - 1; p >= integerEnd; p--) {
+            if (text.charAt(p) == TextUtil.GROUPING_SEPARATOR) {
+                remove(text, p);
+            }
+        }
+
+        // How many digits are to the right, and how many separators right after the current one.
+        int digits = 0;
+        int separators = 0;
+        for (int p = integerEnd - 1; p >= start; p--) {
+            if (text.charAt(p) == TextUtil.GROUPING_SEPARATOR) {
+                separators++;
+                continue;
+            }
+            int wanted = digits > 0 && digits % 3 == 0 ? 1 : 0;
+            for (; separators > wanted; separators--) {
+                remove(text, p + 1);
+            }
+            if (separators < wanted) {
+                insert(text, p + 1);
+            }
+            separators = 0;
+            digits++;
+        }
+    }
+
+    private void insert(Editable text, int position) {
+        text.insert(position, String.valueOf(TextUtil.GROUPING_SEPARATOR));
+        record(position, 1);
+    }
+
+    private void remove(Editable text, int position) {
+        text.delete(position, position + 1);
+        record(position, -1);
+    }
+
+    private void record(int position, int delta) {
+        if (mEditCount == mEditPositions.length) {
+            mEditPositions = Arrays.copyOf(mEditPositions, 2 * mEditCount);
+            mEditDeltas = Arrays.copyOf(mEditDeltas, 2 * mEditCount);
+        }
+        mEditPositions[mEditCount] = position;
+        mEditDeltas[mEditCount] = delta;
+        mEditCount++;
+    }
+
+    private void raiseExponents(Editable text, ExpressionTokens tokens, int start, int end) {
+        // Typing the operand of "2^-" has to find the '^' before the minus. A '^' the edit removed
+        // leaves its span starting at the end of the edit, or one further if a separator went in.
+        int from = Math.max(start - 1, 0);
+        while (from > 0 && text.charAt(from) == Constants.MINUS) {
+            from--;
+        }
+        int to = Math.min(end + 2, text.length());
+        // Spans the edit touched may have lost their '^' or have to grow or shrink.
+        ExponentSpan[] spans = text.getSpans(from, to, ExponentSpan.class);
+        for (ExponentSpan span : spans) {
+            int caret = text.getSpanStart(span) - 1;
+            if (caret < 0 || text.charAt(caret) != Constants.POWER) {
+                recycle(text, span);
+            } else {
+                raise(text, tokens, caret, span);
+            }
+        }
+
+        // Any '^' the edit touched gets an exponent, unless it has one already.
+        for (int i = tokens.indexAt(from); i >= 0 && i < tokens.getCount() && tokens.getStart(i) < to; i++) {
+            int caret = tokens.getStart(i);
+            if (text.charAt(caret) != Constants.POWER || hasSpanAt(text, caret + 1)) {
+                continue;
+            }
+            ExponentSpan span = mSpanPool.poll();
+            raise(text, tokens, caret, span != null ? span : new ExponentSpan());
+        }
+    }
+
+    private static boolean hasSpanAt(Spanned text, int start) {
+        for (ExponentSpan span : text.getSpans(start, start, ExponentSpan.class)) {
+            if (text.getSpanStart(span) == start) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void raise(Editable text, ExpressionTokens tokens, int caret, ExponentSpan span) {
+        int end = findExponentEnd(text, tokens, tokens.indexAt(caret) + 1);
+        if (end <= caret + 1) {
+            recycle(text, span);
+            return;
+        }
+        if (text.getSpanStart(span) != caret + 1 || text.getSpanEnd(span) != end) {
+            text.setSpan(span, caret + 1, end, Spanned.SPAN_EXCLUSIVE_INCLUSIVE);
+        }
+    }
+
+    /**
+     * Returns where the operand starting at token {@code index} ends: a number, a parenthesized
+     * group, or a name and its arguments, after any minus signs. Returns -1 if there's none.
+     */
+    private static int findExponentEnd(Editable text, ExpressionTokens tokens, int index) {
+        int count = tokens.getCount();
+        while (index < count && tokens.getType(index) == ExpressionTokens.OPERATOR
+                && text.charAt(tokens.getStart(index)) == Constants.MINUS) {
+            index++;
+        }
+        if (index >= count) {
+            return -1;
+        }
+        int type = tokens.getType(index);
+        if (type == ExpressionTokens.NUMBER) {
+            while (index + 1 < count && isInNumber(text, tokens, index + 1)) {
+                index++;
+            }
+            return tokens.getEnd(index);
+        }
+        if (type == ExpressionTokens.NAME) {
+            if (index + 1 >= count || tokens.getType(index + 1) != ExpressionTokens.LEFT_PARENTHESIS) {
+                return tokens.getEnd(index);
+            }
+            index++;
+        }
+        if (tokens.getType(index) == ExpressionTokens.LEFT_PARENTHESIS) {
+            int match = tokens.findMatchingParenthesis(index);
+            // Until it's closed, everything after it is part of the exponent.
+            return match >= 0 ? tokens.getEnd(match) : text.length();
+        }
+        return -1;
+    }
+
+    private void recycle(Editable text, ExponentSpan span) {
+        text.removeSpan(span);
+        if (mSpanPool.size() < MAX_POOLED_SPANS) {
+            mSpanPool.add(span);
+        }
+    }
+
+    /**
+     * Raises and shrinks the text of an exponent.
+     */
+    static final class ExponentSpan extends MetricAffectingSpan {
+        private static final float SCALE = 0.7f;
+
+        @Override
+        public void updateDrawState(TextPaint tp) {
+            apply(tp);
+        }
+
+        @Override
+        public void updateMeasureState(TextPaint tp) {
+            apply(tp);
+        }
+
+        private static void apply(TextPaint tp) {
+            tp.baselineShift += (int) (tp.ascent() / 2);
+            tp.setTextSize(tp.getTextSize() * SCALE);
+        }
+    }
+}
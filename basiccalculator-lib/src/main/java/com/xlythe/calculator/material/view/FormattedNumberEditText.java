@@ -19,13 +19,15 @@ package com.xlythe.calculator.material.view;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.text.Editable;
+import android.text.SpannableStringBuilder;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
 
-import com.xlythe.calculator.material.Constants;
-import com.xlythe.calculator.material.Solver;
+import com.xlythe.calculator.material.ExpressionBuffer;
+import com.xlythe.calculator.material.ExpressionTokens;
 import com.xlythe.calculator.material.util.TextUtil;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -34,14 +36,43 @@ import java.util.Set;
 /**
  * FormattedNumberEditText adds more advanced functionality to NumberEditText.
  * <p>
- * Commas will appear as numbers are typed, exponents will be raised, and backspacing
+ * Digits will be grouped as numbers are typed, exponents will be raised, and backspacing
  * on sin( and log( will remove the whole word. Because of the formatting, getText() will
- * no longer return the correct value. getCleanText() has been added instead.
+ * no longer return the correct value. getCleanText() has been added instead. Formatting is
+ * done by an {@link ExpressionFormatter}, which only reformats what each edit touched.
+ * <p>
+ * Keypad input is applied to the {@link ExpressionBuffer} that mirrors the text, and only the
+ * range that changed is replaced in the Editable, so a keystroke doesn't copy the whole formula.
+ * Formatting reads the buffer's tokens.
+ * <p>
+ * Listeners added with {@link #addOnExpressionChangeListener} are told exactly what changed in the
+ * clean text, and get the clean text itself, computed once per change and shared. The change is
+ * made of the ranges the Editable reported as replaced, mapped past the separators; formatting
+ * only moves separators, so it adds nothing to it. TextWatchers share one Editable of the clean
+ * text, which is kept in step with the changes and isn't theirs to edit.
  */
 @SuppressLint("SetTextI18n")
 public class FormattedNumberEditText extends NumberEditText {
     private final Set<TextWatcher> mTextWatchers = new HashSet<>();
+    private final List<OnExpressionChangeListener> mExpressionChangeListeners = new ArrayList<>();
     private boolean mTextWatchersEnabled = true;
+    // The clean text, built on demand and dropped whenever the text changes.
+    private String mCleanText;
+    private long mVersion;
+    // The length of the clean text, and what changed in it since the last dispatch: the range
+    // that's new, or -1 if nothing, and by how much it grew.
+    private int mCleanLength;
+    private int mChangeStart = -1;
+    private int mChangeEnd;
+    private int mChangeDelta;
+    // The clean text for TextWatchers, kept in step with the changes, if there are any.
+    private Editable mWatcherText;
+    // Holds the same text as the Editable, kept in step by the Editable itself.
+    private ExpressionBuffer mBuffer;
+    private final ExpressionFormatter mFormatter = new ExpressionFormatter();
+    // The range the last edit replaced, which onFormat formats again.
+    private int mFormatStart;
+    private int mFormatEnd;
     private final TextWatcher mTextWatcher = new TextWatcher() {
         @Override
         public void beforeTextChanged(CharSequence s, int start, int count, int after) {
@@ -49,6 +80,12 @@ public class FormattedNumberEditText extends NumberEditText {
 
         @Override
         public void onTextChanged(CharSequence s, int start, int before, int count) {
+            mCleanText = null;
+            if (mTextWatchersEnabled && mBuffer != null) {
+                mFormatStart = start;
+                mFormatEnd = start + count;
+                recordChange(start, count);
+            }
         }
 
         @Override
@@ -57,10 +94,10 @@ public class FormattedNumberEditText extends NumberEditText {
             mTextWatchersEnabled = false;
             onFormat(s);
             mTextWatchersEnabled = true;
+            dispatchChange();
         }
     };
     private List<String> mKeywords;
-    private boolean mIsInserting;
 
     public FormattedNumberEditText(Context context) {
         super(context);
@@ -73,6 +110,8 @@ public class FormattedNumberEditText extends NumberEditText {
     }
 
     private void setUp(Context context, AttributeSet attrs) {
+        mBuffer = getBuffer();
+        mCleanLength = getCleanText().length();
         addTextChangedListener(mTextWatcher);
         invalidateKeywords(context);
     }
@@ -98,7 +137,7 @@ public class FormattedNumberEditText extends NumberEditText {
     }
 
     protected void onFormat(Editable s) {
-
+        mFormatter.format(s, mBuffer.getTokens(), mFormatStart, mFormatEnd);
     }
 
     @Override
@@ -108,92 +147,146 @@ public class FormattedNumberEditText extends NumberEditText {
         if (watcher.equals(mTextWatcher) || mTextWatchers == null) {
             super.addTextChangedListener(watcher);
         } else {
+            if (mWatcherText == null) {
+                mWatcherText = new SpannableStringBuilder(getCleanText());
+            }
             mTextWatchers.add(watcher);
         }
     }
 
     @Override
-    public void setText(CharSequence text, BufferType type) {
-        if (mTextWatchersEnabled) {
-            for (TextWatcher textWatcher : mTextWatchers) {
-                textWatcher.beforeTextChanged(getCleanText(), 0, 0, 0);
+    public void removeTextChangedListener(TextWatcher watcher) {
+        if (mTextWatchers != null && mTextWatchers.remove(watcher)) {
+            if (mTextWatchers.isEmpty()) {
+                mWatcherText = null;
             }
+        } else {
+            super.removeTextChangedListener(watcher);
         }
+    }
+
+    /**
+     * Adds a listener for changes to the clean text. Unlike a TextWatcher, it's called once per
+     * change, after formatting, with exactly what changed.
+     */
+    public void addOnExpressionChangeListener(OnExpressionChangeListener listener) {
+        mExpressionChangeListeners.add(listener);
+    }
+
+    public void removeOnExpressionChangeListener(OnExpressionChangeListener listener) {
+        mExpressionChangeListeners.remove(listener);
+    }
+
+    @Override
+    public void setText(CharSequence text, BufferType type) {
         super.setText(text, type);
-        if (text != null && !mIsInserting) {
+        if (text != null) {
             setSelection(getText().length());
         }
         invalidateTextSize();
-        if (mTextWatchersEnabled) {
-            for (TextWatcher textWatcher : mTextWatchers) {
-                textWatcher.afterTextChanged(getEditableFactory().newEditable(getCleanText()));
-                textWatcher.onTextChanged(getCleanText(), 0, 0, 0);
-            }
-        }
     }
 
-    public String getCleanText() {
-        return TextUtil.getCleanText(this);
+    /**
+     * Adds an edit that put {@code count} characters at {@code start} of the text to what changed
+     * in the clean text since the last dispatch. The buffer must already have the edit.
+     */
+    private void recordChange(int start, int count) {
+        ExpressionTokens tokens = mBuffer.getTokens();
+        int spaces = tokens.getSpacesBefore(start);
+        int cleanLength = mBuffer.length() - tokens.getSpacesBefore(mBuffer.length());
+        int cleanStart = start - spaces;
+        int cleanEnd = start + count - tokens.getSpacesBefore(start + count);
+        int delta = cleanLength - mCleanLength;
+        mCleanLength = cleanLength;
+        if (mChangeStart < 0) {
+            mChangeStart = cleanStart;
+            mChangeEnd = cleanEnd;
+            mChangeDelta = delta;
+            return;
+        }
+        // Where the edit ended before it, and so where the range it replaced ended.
+        int replacedEnd = cleanEnd - delta;
+        int end = mChangeEnd;
+        if (end >= replacedEnd) {
+            end += delta;
+        } else if (end > cleanStart) {
+            end = cleanEnd;
+        }
+        mChangeStart = Math.min(mChangeStart, cleanStart);
+        mChangeEnd = Math.max(end, cleanEnd);
+        mChangeDelta += delta;
     }
 
-    public void insert(String delta) {
-        String currentText = getText().toString();
-        int selectionHandle = getSelectionStart();
-        String textBeforeInsertionHandle = currentText.substring(0, selectionHandle);
-        String textAfterInsertionHandle = currentText.substring(selectionHandle, currentText.length());
-
-        // Add extra rules for decimal points and operators
-        if (delta.length() == 1) {
-            char text = delta.charAt(0);
-
-            // don't allow two dots in the same number
-            if (text == Constants.DECIMAL_POINT) {
-                int p = selectionHandle - 1;
-                while (p >= 0 && Solver.isDigit(getText().charAt(p))) {
-                    if (getText().charAt(p) == Constants.DECIMAL_POINT) {
-                        return;
-                    }
-                    --p;
-                }
-                p = selectionHandle;
-                while (p < getText().length() && Solver.isDigit(getText().charAt(p))) {
-                    if (getText().charAt(p) == Constants.DECIMAL_POINT) {
-                        return;
-                    }
-                    ++p;
-                }
+    /**
+     * Tells the listeners and watchers what changed in the clean text since the last call.
+     */
+    private void dispatchChange() {
+        String text = getCleanText();
+        int start = 0;
+        int before = 0;
+        int count = 0;
+        if (mChangeStart >= 0) {
+            start = mChangeStart;
+            count = mChangeEnd - mChangeStart;
+            before = count - mChangeDelta;
+            mChangeStart = -1;
+        }
+
+        ExpressionChange change = new ExpressionChange(++mVersion, text, start, before, count);
+        for (int i = 0; i < mExpressionChangeListeners.size(); i++) {
+            mExpressionChangeListeners.get(i).onExpressionChanged(change);
+        }
+        if (mWatcherText != null) {
+            for (TextWatcher textWatcher : mTextWatchers) {
+                textWatcher.beforeTextChanged(mWatcherText, start, before, count);
+            }
+            mWatcherText.replace(start, start + before, text, start, start + count);
+            for (TextWatcher textWatcher : mTextWatchers) {
+                textWatcher.onTextChanged(mWatcherText, start, before, count);
             }
+            for (TextWatcher textWatcher : mTextWatchers) {
+                textWatcher.afterTextChanged(mWatcherText);
+            }
+        }
+    }
 
-            char prevChar = selectionHandle > 0 ? getText().charAt(selectionHandle - 1) : '\0';
+    /**
+     * Returns the version of the text, which goes up by one with every change listeners are told
+     * about.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
 
-            // don't allow 2 successive minuses
-            if (text == Constants.MINUS && prevChar == Constants.MINUS) {
-                return;
-            }
+    public String getCleanText() {
+        if (mCleanText == null) {
+            mCleanText = TextUtil.getCleanText(this);
+        }
+        return mCleanText;
+    }
 
-            // don't allow the first character to be an operator
-            if (selectionHandle == 0 && Solver.isOperator(text) && text != Constants.MINUS) {
-                return;
-            }
+    /**
+     * Returns the tokens of the displayed text, kept up to date with every edit, for bracket
+     * matching and token-wise deletion. Positions are in the displayed text, not the clean text.
+     */
+    public ExpressionTokens getTokens() {
+        return mBuffer.getTokens();
+    }
 
-            // don't allow multiple successive operators
-            if (Solver.isOperator(text) && text != Constants.MINUS) {
-                while (Solver.isOperator(prevChar)) {
-                    if (selectionHandle == 1) {
-                        return;
-                    }
-
-                    --selectionHandle;
-                    prevChar = selectionHandle > 0 ? getText().charAt(selectionHandle - 1) : '\0';
-                    textBeforeInsertionHandle = textBeforeInsertionHandle.substring(0, selectionHandle);
-                }
-            }
+    public void insert(String delta) {
+        int selection = mBuffer.insert(getSelectionStart(), delta);
+        if (selection >= 0) {
+            applyBufferEdit();
+            setSelection(mFormatter.mapPosition(selection));
         }
+    }
 
-        mIsInserting = true;
-        setText(textBeforeInsertionHandle + delta + textAfterInsertionHandle);
-        setSelection((textBeforeInsertionHandle + delta).length());
-        mIsInserting = false;
+    /**
+     * Copies the buffer's last edit into the Editable.
+     */
+    private void applyBufferEdit() {
+        ((CalculatorEditable) getText()).applyBufferEdit();
+        invalidateTextSize();
     }
 
     public void clear() {
@@ -214,36 +307,13 @@ public class FormattedNumberEditText extends NumberEditText {
 
     @Override
     public void backspace() {
-        // Check and remove keywords
-        String text = getText().toString();
-        int selectionHandle = getSelectionStart();
-        String textBeforeInsertionHandle = text.substring(0, selectionHandle);
-        String textAfterInsertionHandle = text.substring(selectionHandle, text.length());
-
-        for (String s : mKeywords) {
-            if (textBeforeInsertionHandle.endsWith(s)) {
-                int deletionLength = s.length();
-                String newText = textBeforeInsertionHandle.substring(0, textBeforeInsertionHandle.length() - deletionLength) + textAfterInsertionHandle;
-                setText(newText);
-                setSelection(selectionHandle - deletionLength);
-                return;
-            }
-        }
-
-        // Override NumberEditText's method -- because commas might disappear, it complicates things
-        if (selectionHandle != 0) {
-            setText(textBeforeInsertionHandle.substring(0, textBeforeInsertionHandle.length() - 1)
-                    + textAfterInsertionHandle);
-
-            if (getText().length() == text.length() - 2) {
-                // 2 characters were deleted (likely a comma and a number)
-                selectionHandle -= 2;
-            } else {
-                --selectionHandle;
-            }
-
-            setSelection(selectionHandle);
+        // Override NumberEditText's method -- separators may come and go before the cursor
+        int selectionHandle = mBuffer.backspace(getSelectionStart(), mKeywords);
+        if (selectionHandle < 0) {
+            return;
         }
+        applyBufferEdit();
+        setSelection(mFormatter.mapPosition(selectionHandle));
     }
 
     @Override
@@ -257,5 +327,60 @@ public class FormattedNumberEditText extends NumberEditText {
         return Math.max(0, super.getSelectionStart());
     }
 
+    public interface OnExpressionChangeListener {
+        void onExpressionChanged(ExpressionChange change);
+    }
+
+    /**
+     * One change to the clean text: {@code before} characters at {@code start} were replaced by
+     * {@code count} new ones.
+     */
+    public static final class ExpressionChange {
+        private final long mVersion;
+        private final String mText;
+        private final int mStart;
+        private final int mBefore;
+        private final int mCount;
+
+        ExpressionChange(long version, String text, int start, int before, int count) {
+            mVersion = version;
+            mText = text;
+            mStart = start;
+            mBefore = before;
+            mCount = count;
+        }
+
+        public long getVersion() {
+            return mVersion;
+        }
+
+        /**
+         * Returns the whole clean text after the change.
+         */
+        public String getText() {
+            return mText;
+        }
+
+        public int getStart() {
+            return mStart;
+        }
+
+        /**
+         * Returns how many characters were replaced.
+         */
+        public int getBefore() {
+            return mBefore;
+        }
+
+        /**
+         * Returns how many characters replaced them.
+         */
+        public int getCount() {
+            return mCount;
+        }
 
+        public CharSequence getInsertedText() {
+            return mText.subSequence(mStart, mStart + mCount);
+        }
+    }
 }
@@ -0,0 +1,239 @@
+package com.xlythe.calculator.material.view;
+
+import android.animation.Animator;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.xlythe.calculator.material.LatencyHistogram;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Times the frames drawn while the calculator animates, in a {@link LatencyHistogram} per
+ * {@link Animation}, and counts the janky ones: those that took long enough for at least one
+ * refresh of the display to be dropped.
+ * <p>
+ * Frames are timed from one {@link Choreographer} frame to the next, and only while an animation
+ * runs; a frame counts for every animation running at the time. Once started, timing a frame
+ * allocates nothing. Animations are tracked on the main thread, while the numbers can be read
+ * from any thread with {@link #getSummary}, {@link #getFrameTimes} and the counters.
+ * <p>
+ * Set on the calculator UI, and on any {@link CalculatorPadView} shown outside of it. Without a
+ * monitor, which is the default, nothing is timed.
+ */
+public final class FrameMonitor implements Choreographer.FrameCallback {
+    public enum Animation {
+        /** The color revealed over the display when it's cleared or shows an error. */
+        REVEAL,
+        /** The result moving up to take the formula's place. */
+        RESULT,
+        /** The formula's text growing or shrinking as it's typed. */
+        TEXT_SIZE,
+        /** The advanced pad following a drag, and springing into place when let go. */
+        PAD_DRAG,
+        /** Anything played with {@link com.xlythe.calculator.material.BasicCalculatorDialogFragment#play}. */
+        OTHER
+    }
+
+    private static final Animation[] ANIMATIONS = Animation.values();
+    // Used when the display isn't known yet.
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+
+    private final LatencyHistogram[] mFrameTimes = new LatencyHistogram[ANIMATIONS.length];
+    private final AtomicLongArray mJankyFrames = new AtomicLongArray(ANIMATIONS.length);
+    private final AtomicLongArray mDroppedFrames = new AtomicLongArray(ANIMATIONS.length);
+
+    // Which animations are running, and the animator each one runs until it stops, if any.
+    private final boolean[] mRunning = new boolean[ANIMATIONS.length];
+    private final Animator[] mAnimators = new Animator[ANIMATIONS.length];
+    @Nullable
+    private Choreographer mChoreographer;
+    private boolean mPosted;
+    // The last frame's time, or 0 before the first frame of a run of animations.
+    private long mLastFrameNanos;
+    private long mFrameIntervalNanos;
+
+    public FrameMonitor() {
+        for (int i = 0; i < mFrameTimes.length; i++) {
+            mFrameTimes[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Times frames for {@code animation} for as long as {@code animator}, which was just started,
+     * runs. {@code view} is the one being animated, and tells which display the frames are for.
+     */
+    public void track(Animation animation, Animator animator, View view) {
+        if (!animator.isStarted()) {
+            return;
+        }
+        mRunning[animation.ordinal()] = true;
+        mAnimators[animation.ordinal()] = animator;
+        post(view);
+    }
+
+    /**
+     * Times frames for {@code animation} until {@link #end}, for animations without an
+     * {@link Animator}, like a drag. Can be called again while it runs.
+     */
+    public void begin(Animation animation, View view) {
+        mRunning[animation.ordinal()] = true;
+        mAnimators[animation.ordinal()] = null;
+        post(view);
+    }
+
+    public void end(Animation animation) {
+        mRunning[animation.ordinal()] = false;
+        mAnimators[animation.ordinal()] = null;
+    }
+
+    /**
+     * Stops timing frames for every animation, as when the UI goes away.
+     */
+    public void stop() {
+        for (Animation animation : ANIMATIONS) {
+            end(animation);
+        }
+        if (mPosted) {
+            mChoreographer.removeFrameCallback(this);
+            mPosted = false;
+        }
+    }
+
+    private void post(View view) {
+        if (mPosted) {
+            return;
+        }
+        Display display = view.getDisplay();
+        float refreshRate = display != null ? display.getRefreshRate() : 0f;
+        if (refreshRate <= 0f) {
+            refreshRate = DEFAULT_REFRESH_RATE;
+        }
+        mFrameIntervalNanos = (long) (1_000_000_000L / refreshRate);
+        if (mChoreographer == null) {
+            mChoreographer = Choreographer.getInstance();
+        }
+        mLastFrameNanos = 0;
+        mChoreographer.postFrameCallback(this);
+        mPosted = true;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        long frameNanos = mLastFrameNanos == 0 ? -1 : frameTimeNanos - mLastFrameNanos;
+        mLastFrameNanos = frameTimeNanos;
+        // Refreshes missed between this frame and the last, rounded to the nearest.
+        long dropped = frameNanos < 0 ? 0
+                : Math.max(0, (frameNanos + mFrameIntervalNanos / 2) / mFrameIntervalNanos - 1);
+
+        boolean running = false;
+        for (int i = 0; i < mRunning.length; i++) {
+            if (!mRunning[i]) {
+                continue;
+            }
+            if (mAnimators[i] != null && !mAnimators[i].isStarted()) {
+                // It ended with the last frame.
+                end(ANIMATIONS[i]);
+                continue;
+            }
+            running = true;
+            if (frameNanos >= 0) {
+                mFrameTimes[i].record(frameNanos);
+                if (dropped > 0) {
+                    mJankyFrames.incrementAndGet(i);
+                    mDroppedFrames.addAndGet(i, dropped);
+                }
+            }
+        }
+
+        if (running) {
+            mChoreographer.postFrameCallback(this);
+        } else {
+            mPosted = false;
+        }
+    }
+
+    /**
+     * How long the frames drawn during {@code animation} took, from the frame before.
+     */
+    public LatencyHistogram getFrameTimes(Animation animation) {
+        return mFrameTimes[animation.ordinal()];
+    }
+
+    /**
+     * How many frames during {@code animation} took long enough to drop at least one refresh.
+     */
+    public long getJankyFrames(Animation animation) {
+        return mJankyFrames.get(animation.ordinal());
+    }
+
+    /**
+     * How many refreshes were dropped during {@code animation}, in all.
+     */
+    public long getDroppedFrames(Animation animation) {
+        return mDroppedFrames.get(animation.ordinal());
+    }
+
+    public Summary getSummary(Animation animation) {
+        LatencyHistogram frameTimes = getFrameTimes(animation);
+        return new Summary(animation,
+                frameTimes.getCount(),
+                getJankyFrames(animation),
+                getDroppedFrames(animation),
+                frameTimes.getPercentileNanos(50),
+                frameTimes.getPercentileNanos(95),
+                frameTimes.getPercentileNanos(99),
+                frameTimes.getMaxNanos());
+    }
+
+    /**
+     * Forgets every frame of every animation. Animations running keep being timed.
+     */
+    public void reset() {
+        for (int i = 0; i < mFrameTimes.length; i++) {
+            mFrameTimes[i].reset();
+            mJankyFrames.set(i, 0);
+            mDroppedFrames.set(i, 0);
+        }
+    }
+
+    /**
+     * The frames of one animation, as they were when it was asked for.
+     */
+    public static final class Summary {
+        public final Animation animation;
+        public final long frames;
+        public final long jankyFrames;
+        public final long droppedFrames;
+        public final long p50Nanos;
+        public final long p95Nanos;
+        public final long p99Nanos;
+        public final long maxNanos;
+
+        Summary(Animation animation, long frames, long jankyFrames, long droppedFrames,
+                long p50Nanos, long p95Nanos, long p99Nanos, long maxNanos) {
+            this.animation = animation;
+            this.frames = frames;
+            this.jankyFrames = jankyFrames;
+            this.droppedFrames = droppedFrames;
+            this.p50Nanos = p50Nanos;
+            this.p95Nanos = p95Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s: %d frames, %d janky, %d dropped, p50 %.1fms, p95 %.1fms, p99 %.1fms, max %.1fms",
+                    animation, frames, jankyFrames, droppedFrames,
+                    p50Nanos / 1e6, p95Nanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.xlythe.calculator.material.view;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+import android.widget.OverScroller;
+
+import androidx.annotation.NonNull;
+
+import com.xlythe.calculator.material.CalculatorExpressionTokenizer;
+import com.xlythe.calculator.material.FunctionSampler;
+import com.xlythe.calculator.material.R;
+import com.xlythe.calculator.material.util.ViewUtils;
+
+/**
+ * Graphs an expression as y = f(x), with a grid, and lets it be panned, flung and pinched.
+ * <p>
+ * Both axes have the same scale. The expression is sampled by a {@link FunctionSampler} on other
+ * threads, and drawn as soon as parts of it are ready. Drawing a frame only turns the sampled
+ * points into lines on screen, in buffers that are reused, so moving the graph allocates nothing.
+ */
+public class GraphView extends View {
+    // How much of the x axis is shown at first, in the graph's units.
+    private static final double DEFAULT_RANGE = 20;
+    private static final double MIN_UNITS_PER_PIXEL = 1e-12;
+    private static final double MAX_UNITS_PER_PIXEL = 1e12;
+    // Grid lines are at least this far apart, in dp.
+    private static final float MIN_GRID_SPACING = 48;
+    // The grid's alpha, out of 255, on top of the axes' color.
+    private static final int GRID_ALPHA = 64;
+
+    private FunctionSampler mSampler;
+    private final Paint mGraphPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mAxisPaint = new Paint();
+    private final Paint mGridPaint = new Paint();
+    private float[] mGridLines = new float[0];
+    private float mMinGridSpacing;
+
+    private GestureDetector mGestureDetector;
+    private ScaleGestureDetector mScaleGestureDetector;
+    private OverScroller mScroller;
+    private int mLastFlingX;
+    private int mLastFlingY;
+
+    // The point of the graph at the middle of the view, and the scale, 0 until it's laid out.
+    private double mCenterX;
+    private double mCenterY;
+    private double mUnitsPerPixel;
+
+    public GraphView(Context context) {
+        super(context);
+        setup(null);
+    }
+
+    public GraphView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        setup(attrs);
+    }
+
+    public GraphView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        setup(attrs);
+    }
+
+    private void setup(AttributeSet attrs) {
+        Context context = getContext();
+        float density = getResources().getDisplayMetrics().density;
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.GraphView);
+        int graphColor = a.getColor(R.styleable.GraphView_graphColor,
+                ViewUtils.getColor(context, com.google.android.material.R.attr.colorAccent));
+        int gridColor = a.getColor(R.styleable.GraphView_gridColor, Color.GRAY);
+        float graphWidth = a.getDimension(R.styleable.GraphView_graphWidth, 2 * density);
+        a.recycle();
+
+        mGraphPaint.setColor(graphColor);
+        mGraphPaint.setStrokeWidth(graphWidth);
+        mGraphPaint.setStrokeCap(Paint.Cap.ROUND);
+        mAxisPaint.setColor(gridColor);
+        mAxisPaint.setStrokeWidth(density);
+        mGridPaint.setColor(gridColor);
+        mGridPaint.setAlpha(Color.alpha(gridColor) * GRID_ALPHA / 255);
+        mMinGridSpacing = MIN_GRID_SPACING * density;
+
+        mSampler = new FunctionSampler(new CalculatorExpressionTokenizer(context));
+        mSampler.setOnSampledListener(new FunctionSampler.OnSampledListener() {
+            @Override
+            public void onSampled() {
+                postInvalidateOnAnimation();
+            }
+        });
+
+        mScroller = new OverScroller(context);
+        mGestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(@NonNull MotionEvent e) {
+                mScroller.forceFinished(true);
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, @NonNull MotionEvent e2, float distanceX, float distanceY) {
+                moveBy(distanceX, distanceY);
+                return true;
+            }
+
+            @Override
+            public boolean onFling(MotionEvent e1, @NonNull MotionEvent e2, float velocityX, float velocityY) {
+                mLastFlingX = 0;
+                mLastFlingY = 0;
+                mScroller.fling(0, 0, (int) -velocityX, (int) -velocityY,
+                        Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                postInvalidateOnAnimation();
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(@NonNull MotionEvent e) {
+                zoomBy(2f, e.getX(), e.getY());
+                return true;
+            }
+        });
+        mScaleGestureDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(@NonNull ScaleGestureDetector detector) {
+                zoomBy(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Graphs {@code expr}, in x. Returns false, and graphs nothing, if it's incomplete, invalid or
+     * in more than one variable.
+     */
+    public boolean setExpression(CharSequence expr) {
+        boolean graphed = mSampler.setExpression(expr.toString());
+        invalidate();
+        return graphed;
+    }
+
+    /**
+     * Shows the origin in the middle, at the scale the graph starts with.
+     */
+    public void reset() {
+        mScroller.forceFinished(true);
+        mCenterX = 0;
+        mCenterY = 0;
+        mUnitsPerPixel = getWidth() > 0 ? DEFAULT_RANGE / getWidth() : 0;
+        updateViewport();
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (mUnitsPerPixel == 0 && w > 0) {
+            mUnitsPerPixel = DEFAULT_RANGE / w;
+        }
+        updateViewport();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // Samples what was left unsampled when it was detached.
+        updateViewport();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mScroller.forceFinished(true);
+        // Started again when it's attached again, or moved.
+        mSampler.shutdown();
+    }
+
+    @SuppressLint("ClickableViewAccessibility")
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN && getParent() != null) {
+            // Drags on the graph move it, not what it's in.
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+        mScaleGestureDetector.onTouchEvent(event);
+        if (!mScaleGestureDetector.isInProgress()) {
+            mGestureDetector.onTouchEvent(event);
+        }
+        return true;
+    }
+
+    @Override
+    public void computeScroll() {
+        if (mScroller.computeScrollOffset()) {
+            int x = mScroller.getCurrX();
+            int y = mScroller.getCurrY();
+            moveBy(x - mLastFlingX, y - mLastFlingY);
+            mLastFlingX = x;
+            mLastFlingY = y;
+        }
+    }
+
+    private void moveBy(float dx, float dy) {
+        mCenterX += dx * mUnitsPerPixel;
+        mCenterY -= dy * mUnitsPerPixel;
+        updateViewport();
+        postInvalidateOnAnimation();
+    }
+
+    /**
+     * Zooms in by {@code factor}, keeping the point of the graph at {@code (focusX, focusY)} where
+     * it is.
+     */
+    private void zoomBy(float factor, float focusX, float focusY) {
+        if (mUnitsPerPixel == 0 || !(factor > 0)) {
+            return;
+        }
+        double offsetX = focusX - getWidth() / 2.0;
+        double offsetY = focusY - getHeight() / 2.0;
+        double x = mCenterX + offsetX * mUnitsPerPixel;
+        double y = mCenterY - offsetY * mUnitsPerPixel;
+        mUnitsPerPixel = Math.max(MIN_UNITS_PER_PIXEL, Math.min(MAX_UNITS_PER_PIXEL, mUnitsPerPixel / factor));
+        mCenterX = x - offsetX * mUnitsPerPixel;
+        mCenterY = y + offsetY * mUnitsPerPixel;
+        updateViewport();
+        postInvalidateOnAnimation();
+    }
+
+    /**
+     * Tells the sampler what's in view, which may start sampling tiles. Done as the graph moves
+     * rather than when it's drawn, so a frame only has to draw what's sampled.
+     */
+    private void updateViewport() {
+        int width = getWidth();
+        int height = getHeight();
+        if (width == 0 || height == 0 || mUnitsPerPixel == 0) {
+            return;
+        }
+        mSampler.setViewport(getLeftUnits(), getTopUnits(), mUnitsPerPixel, width, height);
+    }
+
+    private double getLeftUnits() {
+        return mCenterX - getWidth() / 2.0 * mUnitsPerPixel;
+    }
+
+    private double getTopUnits() {
+        return mCenterY + getHeight() / 2.0 * mUnitsPerPixel;
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+        int width = getWidth();
+        int height = getHeight();
+        if (width == 0 || height == 0 || mUnitsPerPixel == 0) {
+            return;
+        }
+        drawGrid(canvas, getLeftUnits(), getTopUnits(), width, height);
+
+        int count = mSampler.project();
+        canvas.drawLines(mSampler.getLines(), 0, count, mGraphPaint);
+    }
+
+    private void drawGrid(Canvas canvas, double left, double top, int width, int height) {
+        double spacing = getGridSpacing(mMinGridSpacing * mUnitsPerPixel);
+        double firstX = Math.ceil(left / spacing) * spacing;
+        double firstY = Math.floor(top / spacing) * spacing;
+        int columns = (int) (width * mUnitsPerPixel / spacing) + 1;
+        int rows = (int) (height * mUnitsPerPixel / spacing) + 1;
+        if (mGridLines.length < 4 * (columns + rows)) {
+            mGridLines = new float[4 * (columns + rows)];
+        }
+
+        float[] lines = mGridLines;
+        int count = 0;
+        for (int i = 0; i < columns; i++) {
+            float x = (float) ((firstX + i * spacing - left) / mUnitsPerPixel);
+            lines[count++] = x;
+            lines[count++] = 0;
+            lines[count++] = x;
+            lines[count++] = height;
+        }
+        for (int i = 0; i < rows; i++) {
+            float y = (float) ((top - (firstY - i * spacing)) / mUnitsPerPixel);
+            lines[count++] = 0;
+            lines[count++] = y;
+            lines[count++] = width;
+            lines[count++] = y;
+        }
+        canvas.drawLines(lines, 0, count, mGridPaint);
+
+        float originX = (float) (-left / mUnitsPerPixel);
+        float originY = (float) (top / mUnitsPerPixel);
+        if (originX >= 0 && originX <= width) {
+            canvas.drawLine(originX, 0, originX, height, mAxisPaint);
+        }
+        if (originY >= 0 && originY <= height) {
+            canvas.drawLine(0, originY, width, originY, mAxisPaint);
+        }
+    }
+
+    /**
+     * Returns the smallest of 1, 2 and 5 times a power of 10 that's at least {@code minSpacing}.
+     */
+    private static double getGridSpacing(double minSpacing) {
+        double power = Math.pow(10, Math.floor(Math.log10(minSpacing)));
+        double fraction = minSpacing / power;
+        if (fraction <= 1) {
+            return power;
+        } else if (fraction <= 2) {
+            return 2 * power;
+        } else if (fraction <= 5) {
+            return 5 * power;
+        }
+        return 10 * power;
+    }
+}
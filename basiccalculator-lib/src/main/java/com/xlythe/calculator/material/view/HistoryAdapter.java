@@ -0,0 +1,239 @@
+package com.xlythe.calculator.material.view;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.xlythe.calculator.material.ExpressionTokenizer;
+import com.xlythe.calculator.material.HistoryStore;
+import com.xlythe.calculator.material.R;
+import com.xlythe.calculator.material.ResultFormatter;
+import com.xlythe.calculator.material.util.TextUtil;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Shows a {@link HistoryStore}, oldest first, in a RecyclerView.
+ * <p>
+ * Entries are read a page at a time on a background thread, and only the {@link #MAX_PAGES}
+ * pages used last are kept, so memory doesn't grow with the history. Binding an entry also asks
+ * for the pages on either side of it, which are usually read before they scroll in; an entry
+ * whose page hasn't arrived yet is bound empty. Expressions and results are formatted when
+ * they're bound, not when they're read, each expression in the angle mode it was saved in.
+ */
+public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder> {
+    private static final int PAGE_SIZE = 64;
+    private static final int MAX_PAGES = 8;
+
+    // Shared by every adapter, since reads of the store take turns anyway.
+    private static final Executor sLoader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "CalculatorHistoryLoader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final HistoryStore mStore;
+    private final ExpressionTokenizer mTokenizer;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // The pages read, least recently used first, and the ones being read. Main thread only.
+    private final LinkedHashMap<Integer, HistoryStore.Entry[]> mPages =
+            new LinkedHashMap<Integer, HistoryStore.Entry[]>(MAX_PAGES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, HistoryStore.Entry[]> eldest) {
+                    return size() > MAX_PAGES;
+                }
+            };
+    private final HashSet<Integer> mLoading = new HashSet<>();
+    private int mCount;
+    private long mGeneration = -1;
+    private boolean mAttached;
+    // The page of the entry bound last. Pages further than one from it aren't read any more.
+    private volatile int mCurrentPage;
+
+    private final HistoryStore.OnChangeListener mChangeListener = new HistoryStore.OnChangeListener() {
+        @Override
+        public void onHistoryChanged(HistoryStore store) {
+            refresh();
+        }
+    };
+
+    public HistoryAdapter(HistoryStore store, ExpressionTokenizer tokenizer) {
+        mStore = store;
+        mTokenizer = tokenizer;
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        mAttached = true;
+        mStore.addOnChangeListener(mChangeListener);
+        refresh();
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        mAttached = false;
+        mStore.removeOnChangeListener(mChangeListener);
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new ViewHolder(LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.bscalc_history_entry, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        int page = position / PAGE_SIZE;
+        mCurrentPage = page;
+        HistoryStore.Entry[] entries = mPages.get(page);
+        int offset = position % PAGE_SIZE;
+        if (entries != null && offset < entries.length) {
+            HistoryStore.Entry entry = entries[offset];
+            holder.mFormula.setText(TextUtil.formatText(mTokenizer.getLocalizedExpression(entry.expression, entry.radians)));
+            holder.mResult.setText(TextUtil.formatText(ResultFormatter.format(entry.result)));
+        } else {
+            holder.mFormula.setText(null);
+            holder.mResult.setText(null);
+            if (entries != null) {
+                // Read before the entries after it were added.
+                mPages.remove(page);
+            }
+            requestPage(page);
+        }
+        requestPage(page - 1);
+        requestPage(page + 1);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mCount;
+    }
+
+    private void requestPage(final int page) {
+        if (page < 0 || page * PAGE_SIZE >= mCount || mPages.containsKey(page) || !mLoading.add(page)) {
+            return;
+        }
+        final long generation = mGeneration;
+        final int start = page * PAGE_SIZE;
+        final int end = Math.min(start + PAGE_SIZE, mCount);
+        sLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                final HistoryStore.Entry[] entries = Math.abs(page - mCurrentPage) <= 1
+                        ? readPage(generation, start, end) : null;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageRead(page, generation, entries);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns the entries in {@code [start, end)}, or null if entries were dropped since
+     * {@code generation}, which renumbered them.
+     */
+    @Nullable
+    private HistoryStore.Entry[] readPage(long generation, int start, int end) {
+        try {
+            if (mStore.getGeneration() != generation) {
+                return null;
+            }
+            HistoryStore.Entry[] entries = new HistoryStore.Entry[end - start];
+            for (int i = start; i < end; i++) {
+                entries[i - start] = mStore.get(i);
+            }
+            return mStore.getGeneration() == generation ? entries : null;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private void onPageRead(int page, long generation, @Nullable HistoryStore.Entry[] entries) {
+        if (generation != mGeneration) {
+            // Read for entries that were renumbered since.
+            return;
+        }
+        mLoading.remove(page);
+        if (!mAttached || entries == null) {
+            return;
+        }
+        mPages.put(page, entries);
+        int start = page * PAGE_SIZE;
+        notifyItemRangeChanged(start, Math.min(entries.length, mCount - start));
+    }
+
+    /**
+     * Reads the size of the store in the background, then shows the entries added, or all of
+     * them again if some were dropped.
+     */
+    private void refresh() {
+        sLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long generation;
+                final int count;
+                try {
+                    generation = mStore.getGeneration();
+                    count = mStore.size();
+                } catch (IOException e) {
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onRefreshed(generation, count);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onRefreshed(long generation, int count) {
+        if (!mAttached) {
+            return;
+        }
+        if (generation != mGeneration || count < mCount) {
+            mGeneration = generation;
+            mCount = count;
+            mPages.clear();
+            mLoading.clear();
+            notifyDataSetChanged();
+        } else if (count > mCount) {
+            int oldCount = mCount;
+            mCount = count;
+            notifyItemRangeInserted(oldCount, count - oldCount);
+        }
+    }
+
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView mFormula;
+        final TextView mResult;
+
+        ViewHolder(View view) {
+            super(view);
+            mFormula = view.findViewById(R.id.history_formula);
+            mResult = view.findViewById(R.id.history_result);
+        }
+    }
+}
@@ -16,7 +16,6 @@
 
 package com.xlythe.calculator.material.view;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.text.Editable;
 import android.text.InputType;
@@ -29,6 +28,8 @@ import android.view.inputmethod.EditorInfo;
 
 import androidx.annotation.NonNull;
 
+import com.xlythe.calculator.material.ExpressionBuffer;
+
 /**
  * NumberEditText disables the keyboard and most EditText touch events.
  * It also restricts the characters allowed from physical keyboards to only numbers
@@ -38,7 +39,9 @@ public class NumberEditText extends ResizingEditText {
     // Restrict keys from hardware keyboards
     private static final char[] ACCEPTED_CHARS = "0123456789.+-*/−×÷()!%^".toCharArray();
 
-    private final Editable.Factory mFactory = new CalculatorEditable.Factory();
+    // Holds the same text as the Editable, with the tokens the keypad's rules and formatting read.
+    private final ExpressionBuffer mBuffer = new ExpressionBuffer();
+    private final Editable.Factory mFactory = new CalculatorEditable.Factory(mBuffer);
 
     public NumberEditText(Context context) {
         super(context);
@@ -59,17 +62,20 @@ public class NumberEditText extends ResizingEditText {
         return mFactory;
     }
 
-    @SuppressLint("SetTextI18n")
+    /**
+     * Returns the buffer that mirrors the text. Edits made to it are copied into the Editable with
+     * {@link CalculatorEditable#applyBufferEdit}.
+     */
+    protected ExpressionBuffer getBuffer() {
+        return mBuffer;
+    }
+
     public void backspace() {
-        String text = getText().toString();
         int selectionHandle = getSelectionStart();
-        String textBeforeInsertionHandle = text.substring(0, selectionHandle);
-        String textAfterInsertionHandle = text.substring(selectionHandle, text.length());
-
         if (selectionHandle != 0) {
-            setText(textBeforeInsertionHandle.substring(0, textBeforeInsertionHandle.length() - 1)
-                    + textAfterInsertionHandle);
+            getText().delete(selectionHandle - 1, selectionHandle);
             setSelection(selectionHandle - 1);
+            invalidateTextSize();
         }
     }
 
@@ -18,8 +18,6 @@ package com.xlythe.calculator.material.view;
 
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.graphics.Paint;
-import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.util.TypedValue;
 import android.widget.TextView;
@@ -27,7 +25,6 @@ import android.widget.TextView;
 import androidx.appcompat.widget.AppCompatEditText;
 
 import com.xlythe.calculator.material.R;
-import com.xlythe.calculator.material.util.TextUtil;
 
 /**
  * ResizingEditText will attempt to resize the text to as large as possible (with optional
@@ -35,7 +32,7 @@ import com.xlythe.calculator.material.util.TextUtil;
  * be used.
  */
 public class ResizingEditText extends AppCompatEditText {
-    private final Paint mTempPaint = new TextPaint();
+    private final TextSizeFitter mTextSizeFitter = new TextSizeFitter();
     private float mMaximumTextSize;
     private float mMinimumTextSize;
     private float mStepTextSize;
@@ -65,6 +62,7 @@ public class ResizingEditText extends AppCompatEditText {
             mStepTextSize = a.getDimension(R.styleable.CalculatorEditText_stepTextSize,
                     (mMaximumTextSize - mMinimumTextSize) / 3);
             a.recycle();
+            mTextSizeFitter.setSizes(mMinimumTextSize, mMaximumTextSize, mStepTextSize);
 
             setTextSize(TypedValue.COMPLEX_UNIT_PX, mMaximumTextSize);
             setMinimumHeight((int) (mMaximumTextSize * 1.2) + getPaddingBottom() + getPaddingTop());
@@ -105,24 +103,7 @@ public class ResizingEditText extends AppCompatEditText {
             return getTextSize();
         }
 
-        // Count exponents, which aren't measured properly.
-        final int exponents = 0;
-
-        // Step through increasing text sizes until the text would no longer fit.
-        float lastFitTextSize = mMinimumTextSize;
-        while (lastFitTextSize < mMaximumTextSize) {
-            final float nextSize = Math.min(lastFitTextSize + mStepTextSize, mMaximumTextSize);
-            mTempPaint.setTextSize(nextSize);
-            if (mTempPaint.measureText(text) > mWidthConstraint) {
-                break;
-            } else if (nextSize + nextSize * exponents / 2 > mHeightConstraint) {
-                break;
-            } else {
-                lastFitTextSize = nextSize;
-            }
-        }
-
-        return lastFitTextSize;
+        return mTextSizeFitter.fit(text, mWidthConstraint, mHeightConstraint);
     }
 
     @Override
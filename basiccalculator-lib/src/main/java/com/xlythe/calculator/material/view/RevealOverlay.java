@@ -0,0 +1,98 @@
+package com.xlythe.calculator.material.view;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.AnimatorSet;
+import android.animation.ObjectAnimator;
+import android.animation.ValueAnimator;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.codetail.widget.RevealView;
+
+/**
+ * A circle of color that grows from a point until it covers a view, then fades out, as the
+ * clear and error animations do.
+ * <p>
+ * One overlay serves every reveal: its {@link RevealView} stays in the parent, invisible between
+ * reveals, and draws the circle itself instead of being clipped to it. Its animators are created
+ * once and only restarted, so a reveal allocates nothing while it runs.
+ */
+public class RevealOverlay {
+    private final RevealView mView;
+    private final ValueAnimator mRevealAnimator;
+    private final AnimatorSet mAnimator;
+    private float mRadius;
+    @Nullable
+    private Runnable mOnRevealed;
+
+    public RevealOverlay(ViewGroup parent) {
+        mView = new RevealView(parent.getContext());
+        // With a target, the view draws a circle rather than filling itself.
+        mView.setTarget(mView);
+        mView.setVisibility(View.INVISIBLE);
+        parent.addView(mView, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
+        mRevealAnimator = ValueAnimator.ofFloat(0f, 1f);
+        mRevealAnimator.setDuration(parent.getResources().getInteger(android.R.integer.config_longAnimTime));
+        mRevealAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(@NonNull ValueAnimator animation) {
+                mView.setRevealRadius(animation.getAnimatedFraction() * mRadius);
+            }
+        });
+        mRevealAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(@NonNull Animator animation) {
+                Runnable onRevealed = mOnRevealed;
+                mOnRevealed = null;
+                if (onRevealed != null) {
+                    onRevealed.run();
+                }
+            }
+        });
+
+        Animator fadeAnimator = ObjectAnimator.ofFloat(mView, View.ALPHA, 1f, 0f);
+        fadeAnimator.setDuration(parent.getResources().getInteger(android.R.integer.config_mediumAnimTime));
+
+        mAnimator = new AnimatorSet();
+        mAnimator.playSequentially(mRevealAnimator, fadeAnimator);
+        mAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(@NonNull Animator animation) {
+                mView.setVisibility(View.INVISIBLE);
+                mView.setAlpha(1f);
+            }
+        });
+    }
+
+    /**
+     * Reveals {@code color} from {@code (centerX, centerY)}, in the parent's coordinates, ending a
+     * reveal that's still running first.
+     *
+     * @param onRevealed Run once the color covers the parent, before it fades out.
+     * @return The running animation.
+     */
+    public Animator reveal(float centerX, float centerY, @ColorInt int color, @Nullable Runnable onRevealed) {
+        if (mAnimator.isStarted()) {
+            mAnimator.end();
+        }
+        // Far enough to reach the farthest corner.
+        float dx = Math.max(centerX - mView.getLeft(), mView.getRight() - centerX);
+        float dy = Math.max(centerY - mView.getTop(), mView.getBottom() - centerY);
+        mRadius = (float) Math.hypot(dx, dy);
+        mOnRevealed = onRevealed;
+
+        mView.setRevealColor(color);
+        mView.setCenter(centerX - mView.getLeft(), centerY - mView.getTop());
+        mView.setRevealRadius(0f);
+        mView.setVisibility(View.VISIBLE);
+        mAnimator.start();
+        return mAnimator;
+    }
+}
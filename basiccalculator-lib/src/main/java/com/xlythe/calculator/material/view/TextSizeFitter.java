@@ -0,0 +1,186 @@
+package com.xlythe.calculator.material.view;
+
+import android.graphics.Paint;
+import android.text.TextPaint;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Finds the largest of the text sizes min + step, min + 2 * step, ..., max (or min if none of
+ * them do) that a text fits in, for {@link ResizingEditText}.
+ * <p>
+ * Text width is close to linear in the text size, so the first width measured predicts the
+ * answer and usually one or two more measurements confirm it; if not, the remaining sizes are
+ * binary searched. Widths are cached per text and size. A text that differs from the previous
+ * one only at the end (typing, deleting) is measured by adding or removing the width of the
+ * changed suffix. Each such step adds to the estimate's error bound, and the text is measured in
+ * full whenever the width limit falls within that bound.
+ */
+final class TextSizeFitter {
+    private static final int MAX_CACHED_TEXTS = 16;
+    // How far a width derived from another text's width can be off, from kerning at the seam.
+    private static final float SEAM_ERROR = 0.5f;
+
+    private final Paint mPaint = new TextPaint();
+    private final Map<String, Widths> mCache = new LinkedHashMap<String, Widths>(MAX_CACHED_TEXTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Widths> eldest) {
+            return size() > MAX_CACHED_TEXTS;
+        }
+    };
+    private float mMinimumSize;
+    private float[] mSizes = new float[0];
+    private String mLastText;
+    private Widths mLastWidths;
+
+    void setSizes(float minimumSize, float maximumSize, float stepSize) {
+        mMinimumSize = minimumSize;
+        int count = stepSize > 0 ? (int) Math.ceil((maximumSize - minimumSize) / stepSize) : 1;
+        float[] sizes = new float[Math.max(count, 0)];
+        float size = minimumSize;
+        for (int i = 0; i < sizes.length; i++) {
+            size = Math.min(size + stepSize, maximumSize);
+            sizes[i] = size;
+        }
+        if (!Arrays.equals(sizes, mSizes)) {
+            mSizes = sizes;
+            mCache.clear();
+            mLastText = null;
+            mLastWidths = null;
+        }
+    }
+
+    float fit(String text, float maxWidth, float maxHeight) {
+        // Sizes that are too tall never fit, whatever the text.
+        int count = 0;
+        while (count < mSizes.length && mSizes[count] <= maxHeight) {
+            count++;
+        }
+        if (count == 0) {
+            return mMinimumSize;
+        }
+
+        Widths widths = getWidths(text);
+
+        // Invariant: size index lo fits (-1 being the minimum size, which is used regardless)
+        // and index hi doesn't (count meaning nothing past the end).
+        int lo = -1;
+        int hi = count;
+        int guess = predict(widths, text, count, maxWidth);
+        if (fits(widths, text, guess, maxWidth)) {
+            lo = guess;
+            if (guess + 1 < hi) {
+                if (fits(widths, text, guess + 1, maxWidth)) {
+                    lo = guess + 1;
+                } else {
+                    hi = guess + 1;
+                }
+            }
+        } else {
+            hi = guess;
+            if (guess - 1 > lo) {
+                if (fits(widths, text, guess - 1, maxWidth)) {
+                    lo = guess - 1;
+                } else {
+                    hi = guess - 1;
+                }
+            }
+        }
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (fits(widths, text, mid, maxWidth)) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+
+        mLastText = text;
+        mLastWidths = widths;
+        return lo < 0 ? mMinimumSize : mSizes[lo];
+    }
+
+    private Widths getWidths(String text) {
+        Widths widths = mCache.get(text);
+        if (widths == null) {
+            widths = new Widths(mSizes.length);
+            if (mLastText != null && (text.startsWith(mLastText) || mLastText.startsWith(text))) {
+                widths.baseText = mLastText;
+                widths.baseWidths = mLastWidths.widths;
+                widths.baseErrors = mLastWidths.errors;
+            }
+            mCache.put(text, widths);
+        }
+        return widths;
+    }
+
+    /**
+     * Guesses the largest size index that fits by scaling the width at a size that's already
+     * known, measuring the largest size if none is.
+     */
+    private int predict(Widths widths, String text, int count, float maxWidth) {
+        int known = count - 1;
+        for (int i = 0; i < count; i++) {
+            if (!Float.isNaN(widths.widths[i])) {
+                known = i;
+                break;
+            }
+        }
+        float widthPerSize = width(widths, text, known, maxWidth) / mSizes[known];
+        int guess = 0;
+        while (guess + 1 < count && widthPerSize * mSizes[guess + 1] <= maxWidth) {
+            guess++;
+        }
+        return guess;
+    }
+
+    private boolean fits(Widths widths, String text, int index, float maxWidth) {
+        return width(widths, text, index, maxWidth) <= maxWidth;
+    }
+
+    private float width(Widths widths, String text, int index, float maxWidth) {
+        float width = widths.widths[index];
+        float knownError = widths.errors[index];
+        if (!Float.isNaN(width) && (knownError == 0 || Math.abs(width - maxWidth) > knownError)) {
+            return width;
+        }
+
+        mPaint.setTextSize(mSizes[index]);
+        float baseWidth = widths.baseWidths != null ? widths.baseWidths[index] : Float.NaN;
+        if (!Float.isNaN(baseWidth)) {
+            String base = widths.baseText;
+            float estimate = text.length() >= base.length()
+                    ? baseWidth + mPaint.measureText(text, base.length(), text.length())
+                    : baseWidth - mPaint.measureText(base, text.length(), base.length());
+            float error = widths.baseErrors[index] + SEAM_ERROR;
+            if (Math.abs(estimate - maxWidth) > error) {
+                widths.widths[index] = estimate;
+                widths.errors[index] = error;
+                return estimate;
+            }
+        }
+        width = mPaint.measureText(text);
+        widths.widths[index] = width;
+        widths.errors[index] = 0;
+        return width;
+    }
+
+    private static final class Widths {
+        // Indexed like mSizes; NaN until measured.
+        final float[] widths;
+        // How far off each width may be; zero if it was measured in full.
+        final float[] errors;
+        // A text this one extends or truncates, whose widths it can be derived from.
+        String baseText;
+        float[] baseWidths;
+        float[] baseErrors;
+
+        Widths(int count) {
+            widths = new float[count];
+            errors = new float[count];
+            Arrays.fill(widths, Float.NaN);
+        }
+    }
+}
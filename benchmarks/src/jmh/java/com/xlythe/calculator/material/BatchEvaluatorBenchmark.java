@@ -0,0 +1,57 @@
+package com.xlythe.calculator.material;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A large batch of distinct expressions, evaluated one call at a time and through
+ * ConcurrentExpressionEvaluator.evaluateBatch.
+ */
+@State(Scope.Benchmark)
+public class BatchEvaluatorBenchmark {
+    private static final int BATCH_SIZE = 16384;
+
+    @Param({"short", "functions"})
+    public String corpus;
+
+    private String[] mExpressions;
+    private double[] mResults;
+    private byte[] mErrors;
+    private ConcurrentExpressionEvaluator mEvaluator;
+
+    @Setup
+    public void setUp() {
+        mExpressions = ExpressionCorpus.create(corpus, BATCH_SIZE);
+        mResults = new double[BATCH_SIZE];
+        mErrors = new byte[BATCH_SIZE];
+        mEvaluator = new ConcurrentExpressionEvaluator(new ExpressionTokenizer(),
+                Runtime.getRuntime().availableProcessors(), 2 * BATCH_SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void evaluateEach(final Blackhole blackhole) {
+        CalculatorExpressionEvaluator.EvaluateCallback callback = new CalculatorExpressionEvaluator.EvaluateCallback() {
+            @Override
+            public void onEvaluate(String expr, Double result, String errorMessage) {
+                blackhole.consume(result);
+            }
+        };
+        for (String expr : mExpressions) {
+            mEvaluator.evaluate(expr, callback);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void evaluateBatch(Blackhole blackhole) {
+        mEvaluator.evaluateBatch(mExpressions, mResults, mErrors);
+        blackhole.consume(mResults);
+        blackhole.consume(mErrors);
+    }
+}
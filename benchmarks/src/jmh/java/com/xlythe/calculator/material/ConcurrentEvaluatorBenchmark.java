@@ -0,0 +1,61 @@
+package com.xlythe.calculator.material;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Evaluation from every available thread at once. One CalculatorExpressionEvaluator shared by all
+ * threads is the baseline; ConcurrentExpressionEvaluator should scale with the thread count.
+ */
+@State(Scope.Benchmark)
+@Threads(Threads.MAX)
+public class ConcurrentEvaluatorBenchmark {
+    @Param({"short", "functions"})
+    public String corpus;
+
+    private String[] mExpressions;
+    private CalculatorExpressionEvaluator mSharedEvaluator;
+    private ConcurrentExpressionEvaluator mConcurrentEvaluator;
+
+    @Setup
+    public void setUp() {
+        ExpressionTokenizer tokenizer = new ExpressionTokenizer();
+        mExpressions = ExpressionCorpus.create(corpus);
+        mSharedEvaluator = new CalculatorExpressionEvaluator(tokenizer, 2 * ExpressionCorpus.SIZE);
+        mConcurrentEvaluator = new ConcurrentExpressionEvaluator(tokenizer,
+                Runtime.getRuntime().availableProcessors(), 2 * ExpressionCorpus.SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ExpressionCorpus.SIZE)
+    public void sharedEvaluator(Blackhole blackhole) {
+        CalculatorExpressionEvaluator.EvaluateCallback callback = consumer(blackhole);
+        for (String expr : mExpressions) {
+            mSharedEvaluator.evaluate(expr, callback);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ExpressionCorpus.SIZE)
+    public void concurrentEvaluator(Blackhole blackhole) {
+        CalculatorExpressionEvaluator.EvaluateCallback callback = consumer(blackhole);
+        for (String expr : mExpressions) {
+            mConcurrentEvaluator.evaluate(expr, callback);
+        }
+    }
+
+    private static CalculatorExpressionEvaluator.EvaluateCallback consumer(final Blackhole blackhole) {
+        return new CalculatorExpressionEvaluator.EvaluateCallback() {
+            @Override
+            public void onEvaluate(String expr, Double result, String errorMessage) {
+                blackhole.consume(result);
+            }
+        };
+    }
+}
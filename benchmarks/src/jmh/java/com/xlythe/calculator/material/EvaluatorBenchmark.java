@@ -0,0 +1,82 @@
+package com.xlythe.calculator.material;
+
+import org.javia.arity.Symbols;
+import org.javia.arity.SyntaxException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Evaluation through CalculatorExpressionEvaluator (normalization, compiled expression cache and
+ * eval), with plain Symbols.eval on the already normalized text as a baseline, and with each
+ * stage timed into EvaluationMetrics to show what timing costs.
+ */
+@State(Scope.Benchmark)
+public class EvaluatorBenchmark {
+    @Param({"short", "long", "nested", "functions"})
+    public String corpus;
+
+    private String[] mExpressions;
+    private String[] mNormalizedExpressions;
+    private Symbols mSymbols;
+    private CalculatorExpressionEvaluator mEvaluator;
+    private CalculatorExpressionEvaluator mTimedEvaluator;
+
+    @Setup
+    public void setUp() {
+        ExpressionTokenizer tokenizer = new ExpressionTokenizer();
+        mExpressions = ExpressionCorpus.create(corpus);
+        mNormalizedExpressions = new String[mExpressions.length];
+        for (int i = 0; i < mExpressions.length; i++) {
+            mNormalizedExpressions[i] = tokenizer.getNormalizedExpression(mExpressions[i]);
+        }
+        mSymbols = new Symbols();
+        mEvaluator = new CalculatorExpressionEvaluator(tokenizer, 2 * ExpressionCorpus.SIZE);
+        mTimedEvaluator = new CalculatorExpressionEvaluator(tokenizer, 2 * ExpressionCorpus.SIZE);
+        mTimedEvaluator.setMetrics(new EvaluationMetrics());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ExpressionCorpus.SIZE)
+    public void symbolsEval(Blackhole blackhole) {
+        for (String expr : mNormalizedExpressions) {
+            try {
+                blackhole.consume(mSymbols.eval(expr));
+            } catch (SyntaxException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ExpressionCorpus.SIZE)
+    public void evaluator(final Blackhole blackhole) {
+        CalculatorExpressionEvaluator.EvaluateCallback callback = new CalculatorExpressionEvaluator.EvaluateCallback() {
+            @Override
+            public void onEvaluate(String expr, Double result, String errorMessage) {
+                blackhole.consume(result);
+            }
+        };
+        for (String expr : mExpressions) {
+            mEvaluator.evaluate(expr, callback);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ExpressionCorpus.SIZE)
+    public void timedEvaluator(final Blackhole blackhole) {
+        CalculatorExpressionEvaluator.EvaluateCallback callback = new CalculatorExpressionEvaluator.EvaluateCallback() {
+            @Override
+            public void onEvaluate(String expr, Double result, String errorMessage) {
+                blackhole.consume(result);
+            }
+        };
+        for (String expr : mExpressions) {
+            mTimedEvaluator.evaluate(expr, callback);
+        }
+    }
+}
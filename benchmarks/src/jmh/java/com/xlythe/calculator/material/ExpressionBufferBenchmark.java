@@ -0,0 +1,60 @@
+package com.xlythe.calculator.material;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One keystroke and one backspace in the middle of an expression of the given length. The cost
+ * of ExpressionBuffer should stay flat; the substring and concatenate approach
+ * FormattedNumberEditText used before is the baseline.
+ */
+@State(Scope.Benchmark)
+public class ExpressionBufferBenchmark {
+    private static final List<String> KEYWORDS = Arrays.asList("sin(", "cos(", "tan(", "log(", "ln(");
+
+    @Param({"100", "10000", "100000"})
+    public int length;
+
+    private String mText;
+    private int mCursor;
+    private ExpressionBuffer mBuffer;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder();
+        String[] expressions = ExpressionCorpus.create("long");
+        for (int i = 0; builder.length() < length; i++) {
+            builder.append(expressions[i % expressions.length]).append(Constants.PLUS);
+        }
+        builder.setLength(length);
+        mText = builder.toString();
+        mCursor = length / 2;
+        mBuffer = new ExpressionBuffer();
+        mBuffer.set(mText);
+    }
+
+    @Benchmark
+    public void buffer(Blackhole blackhole) {
+        int cursor = mBuffer.insert(mCursor, "7");
+        blackhole.consume(mBuffer.backspace(cursor, KEYWORDS));
+    }
+
+    @Benchmark
+    public void stringConcat(Blackhole blackhole) {
+        String text = mText;
+        String inserted = text.substring(0, mCursor) + "7" + text.substring(mCursor);
+        // setText copied the new string into a fresh Editable.
+        blackhole.consume(new StringBuilder(inserted));
+
+        String before = inserted.substring(0, mCursor + 1);
+        String deleted = before.substring(0, before.length() - 1) + inserted.substring(mCursor + 1);
+        blackhole.consume(new StringBuilder(deleted));
+    }
+}
@@ -0,0 +1,96 @@
+package com.xlythe.calculator.material;
+
+import java.util.Random;
+
+/**
+ * Deterministic sets of expressions, written the way they appear in the display (×, ÷, −), used
+ * as benchmark parameters.
+ */
+final class ExpressionCorpus {
+    static final int SIZE = 64;
+
+    private static final String[] FUNCTIONS = {"sin", "cos", "tan", "asin", "acos", "atan", "ln", "log", "√"};
+    private static final char[] OPERATORS = {Constants.PLUS, Constants.MINUS, Constants.MUL, Constants.DIV, Constants.POWER};
+
+    private ExpressionCorpus() {
+    }
+
+    /**
+     * @param kind One of "short", "long", "nested" or "functions".
+     */
+    static String[] create(String kind) {
+        return create(kind, SIZE);
+    }
+
+    static String[] create(String kind, int size) {
+        Random random = new Random(kind.hashCode());
+        String[] expressions = new String[size];
+        for (int i = 0; i < size; i++) {
+            switch (kind) {
+                case "short":
+                    expressions[i] = number(random) + operator(random) + number(random);
+                    break;
+                case "long":
+                    expressions[i] = chain(random, 40);
+                    break;
+                case "nested":
+                    expressions[i] = nested(random, 20);
+                    break;
+                case "functions":
+                    expressions[i] = functions(random, 6);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown corpus " + kind);
+            }
+        }
+        return expressions;
+    }
+
+    private static String number(Random random) {
+        if (random.nextBoolean()) {
+            return String.valueOf(1 + random.nextInt(999));
+        }
+        return random.nextInt(100) + String.valueOf(Constants.DECIMAL_POINT) + random.nextInt(1000);
+    }
+
+    private static char operator(Random random) {
+        // Leave out the power operator for chains; it overflows quickly.
+        return OPERATORS[random.nextInt(OPERATORS.length - 1)];
+    }
+
+    private static String chain(Random random, int terms) {
+        StringBuilder builder = new StringBuilder(number(random));
+        for (int i = 1; i < terms; i++) {
+            builder.append(operator(random)).append(number(random));
+        }
+        return builder.toString();
+    }
+
+    private static String nested(Random random, int depth) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            builder.append(number(random)).append(operator(random)).append(Constants.LEFT_PAREN);
+        }
+        builder.append(number(random));
+        for (int i = 0; i < depth; i++) {
+            builder.append(Constants.RIGHT_PAREN);
+        }
+        return builder.toString();
+    }
+
+    private static String functions(Random random, int calls) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < calls; i++) {
+            if (i > 0) {
+                builder.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+            }
+            builder.append(FUNCTIONS[random.nextInt(FUNCTIONS.length)])
+                    .append(Constants.LEFT_PAREN)
+                    .append(random.nextInt(10))
+                    .append(Constants.DECIMAL_POINT)
+                    .append(random.nextInt(10))
+                    .append(Constants.RIGHT_PAREN);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.xlythe.calculator.material;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The keypad's cursor rules at the end of a number with the given count of digits: may a decimal
+ * point go there, and what does a backspace delete. ExpressionTokens looks the answers up; the
+ * character scans CalculatorEditable and ExpressionBuffer used before are the baseline.
+ */
+@State(Scope.Benchmark)
+public class ExpressionTokensBenchmark {
+    private static final List<String> KEYWORDS = Arrays.asList(
+            "asin(", "acos(", "atan(", "sin(", "cos(", "tan(", "acsc(", "asec(", "acot(",
+            "csc(", "sec(", "cot(", "log(", "mod(", "ln(");
+
+    @Param({"10", "1000", "100000"})
+    public int digits;
+
+    private String mText;
+    private int mCursor;
+    private ExpressionTokens mTokens;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder("sin(2)+1.");
+        for (int i = 0; i < digits; i++) {
+            builder.append((char) ('0' + i % 10));
+        }
+        mText = builder.toString();
+        mCursor = mText.length();
+        mTokens = new ExpressionTokens();
+        mTokens.replace(mText, 0, 0, mText.length());
+    }
+
+    @Benchmark
+    public int tokens() {
+        return mTokens.getInsertionStart(mText, mCursor, Constants.DECIMAL_POINT)
+                + mTokens.getDeletionStart(mText, mCursor, KEYWORDS);
+    }
+
+    @Benchmark
+    public int scan() {
+        String text = mText;
+        int cursor = mCursor;
+        int insertionStart = cursor;
+        int p = cursor - 1;
+        while (p >= 0 && Solver.isDigit(text.charAt(p))) {
+            --p;
+        }
+        if (p >= 0 && text.charAt(p) == Constants.DECIMAL_POINT) {
+            insertionStart = -1;
+        }
+        int deletionStart = cursor - 1;
+        for (int i = 0; i < KEYWORDS.size(); i++) {
+            if (text.startsWith(KEYWORDS.get(i), cursor - KEYWORDS.get(i).length())) {
+                deletionStart = cursor - KEYWORDS.get(i).length();
+                break;
+            }
+        }
+        return insertionStart + deletionStart;
+    }
+}
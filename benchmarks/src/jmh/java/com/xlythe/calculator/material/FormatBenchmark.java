@@ -0,0 +1,83 @@
+package com.xlythe.calculator.material;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * ResultFormatter, which BasicCalculatorDialogFragment.formatForReading uses, against the
+ * DecimalFormat patterns it replaced.
+ */
+@State(Scope.Benchmark)
+public class FormatBenchmark {
+    private static final int SIZE = 64;
+
+    @Param({"integers", "fractions", "large"})
+    public String values;
+
+    // The patterns and threshold BasicCalculatorDialogFragment used before ResultFormatter.
+    private final DecimalFormat mDecimalFormat = new DecimalFormat("#.########", DecimalFormatSymbols.getInstance(Locale.US));
+    private final DecimalFormat mDecimalFormatSci = new DecimalFormat("0.########E0", DecimalFormatSymbols.getInstance(Locale.US));
+    private final double[] mValues = new double[SIZE];
+    private final StringBuilder mBuilder = new StringBuilder();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(values.hashCode());
+        for (int i = 0; i < SIZE; i++) {
+            switch (values) {
+                case "integers":
+                    mValues[i] = random.nextInt(1000000);
+                    break;
+                case "fractions":
+                    mValues[i] = random.nextDouble() * 1000;
+                    break;
+                case "large":
+                    mValues[i] = Math.pow(10, 12 + random.nextInt(200)) * random.nextDouble();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown values " + values);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void decimalFormat(Blackhole blackhole) {
+        for (double value : mValues) {
+            if (value > 1E12) {
+                blackhole.consume(mDecimalFormatSci.format(value));
+            } else {
+                blackhole.consume(mDecimalFormat.format(value));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void resultFormatter(Blackhole blackhole) {
+        for (double value : mValues) {
+            blackhole.consume(ResultFormatter.format(value));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void resultFormatterTo(Blackhole blackhole) {
+        StringBuilder builder = mBuilder;
+        for (double value : mValues) {
+            builder.setLength(0);
+            ResultFormatter.formatTo(value, builder);
+            blackhole.consume(builder);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.xlythe.calculator.material;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * FunctionSampler graphing a phone-sized view: sampling all of it, and the work a frame does on
+ * the UI thread while the graph is panned or still.
+ */
+@State(Scope.Benchmark)
+public class FunctionSamplerBenchmark {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final double UNITS_PER_PIXEL = 20.0 / WIDTH;
+    // How far a frame of panning moves the graph, in pixels.
+    private static final int PAN_STEP = 16;
+
+    @Param({"sin(x)", "tan(x)", "sin(50x)"})
+    public String expression;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private FunctionSampler mSampler;
+    private boolean mZoomedOut;
+    private double mLeft;
+
+    @Setup
+    public void setUp() {
+        mSampler = new FunctionSampler(new ExpressionTokenizer(), threads);
+        mSampler.setExpression(expression);
+        mLeft = -WIDTH / 2.0 * UNITS_PER_PIXEL;
+        showFrom(mLeft, UNITS_PER_PIXEL);
+        mSampler.awaitSampled();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mSampler.shutdown();
+    }
+
+    private void showFrom(double left, double unitsPerPixel) {
+        mSampler.setViewport(left, HEIGHT / 2.0 * unitsPerPixel, unitsPerPixel, WIDTH, HEIGHT);
+    }
+
+    /**
+     * Zooms by a factor of 2 each time, so the whole view is sampled again.
+     */
+    @Benchmark
+    public int sampleView() {
+        mZoomedOut = !mZoomedOut;
+        double unitsPerPixel = mZoomedOut ? 2 * UNITS_PER_PIXEL : UNITS_PER_PIXEL;
+        showFrom(-WIDTH / 2.0 * unitsPerPixel, unitsPerPixel);
+        mSampler.awaitSampled();
+        return mSampler.project();
+    }
+
+    /**
+     * A frame of panning, without waiting for the tiles it brings in.
+     */
+    @Benchmark
+    public int panFrame() {
+        mLeft += PAN_STEP * UNITS_PER_PIXEL;
+        showFrom(mLeft, UNITS_PER_PIXEL);
+        return mSampler.project();
+    }
+
+    @Benchmark
+    public int project() {
+        return mSampler.project();
+    }
+}
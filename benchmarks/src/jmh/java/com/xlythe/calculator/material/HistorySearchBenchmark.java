@@ -0,0 +1,62 @@
+package com.xlythe.calculator.material;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * HistorySearchIndex queries against a history of price calculations, from rare to common.
+ */
+@State(Scope.Benchmark)
+public class HistorySearchBenchmark {
+    private static final int ENTRIES = 100000;
+    private static final int LIMIT = 20;
+
+    @Param({"=2450", "1234", "×1.19", "+9"})
+    public String query;
+
+    private File mDirectory;
+    private HistoryStore mStore;
+    private HistorySearchIndex mIndex;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException, ExecutionException {
+        mDirectory = Files.createTempDirectory("history").toFile();
+        mStore = new HistoryStore(mDirectory, ENTRIES);
+        Random random = new Random(0);
+        for (int i = 0; i < ENTRIES; i++) {
+            int price = random.nextInt(100000);
+            int shipping = random.nextInt(1000);
+            mStore.append(price + "*1.19+" + shipping, false, price * 1.19 + shipping);
+        }
+        mStore.flush();
+        mIndex = new HistorySearchIndex(mStore, new ExpressionTokenizer());
+        mIndex.awaitUpdate();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mIndex.close();
+        mStore.clear();
+        mStore.close();
+        for (File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public List<HistorySearchIndex.Match> search() throws IOException {
+        return mIndex.search(query, LIMIT);
+    }
+}
@@ -0,0 +1,56 @@
+package com.xlythe.calculator.material;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Reading entries back from a HistoryStore, as a history list does while it scrolls.
+ */
+@State(Scope.Benchmark)
+public class HistoryStoreBenchmark {
+    @Param({"1000", "100000"})
+    public int entries;
+
+    private File mDirectory;
+    private HistoryStore mStore;
+    private final Random mRandom = new Random(0);
+
+    @Setup
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("history").toFile();
+        mStore = new HistoryStore(mDirectory, entries);
+        for (int i = 0; i < entries; i++) {
+            mStore.append(i + "×" + i + "+sin(" + i + ")", false, i * i + Math.sin(i));
+        }
+        mStore.flush();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mStore.clear();
+        mStore.close();
+        for (File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public HistoryStore.Entry get() throws IOException {
+        return mStore.get(mRandom.nextInt(entries));
+    }
+
+    @Benchmark
+    public HistoryStore.Entry getNewest() throws IOException {
+        return mStore.get(mStore.size() - 1);
+    }
+}
@@ -0,0 +1,62 @@
+package com.xlythe.calculator.material;
+
+import org.javia.arity.Symbols;
+import org.javia.arity.SyntaxException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Every intermediate state of typing the corpus expressions, one character at a time. Most of them
+ * don't parse. Compiling each one with arity is the baseline for ExpressionRecognizer.
+ */
+@State(Scope.Benchmark)
+public class RecognizerBenchmark {
+    private static final int PREFIXES = 1024;
+
+    @Param({"short", "nested", "functions"})
+    public String corpus;
+
+    private final String[] mPrefixes = new String[PREFIXES];
+    private final ExpressionRecognizer.Result mResult = new ExpressionRecognizer.Result();
+    private Symbols mSymbols;
+
+    @Setup
+    public void setUp() {
+        ExpressionTokenizer tokenizer = new ExpressionTokenizer();
+        String[] expressions = ExpressionCorpus.create(corpus);
+        int count = 0;
+        for (int i = 0; count < PREFIXES; i = (i + 1) % expressions.length) {
+            String expr = tokenizer.getNormalizedExpression(expressions[i]);
+            for (int end = 1; end <= expr.length() && count < PREFIXES; end++) {
+                mPrefixes[count++] = expr.substring(0, end);
+            }
+        }
+        mSymbols = new Symbols();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PREFIXES)
+    public void arityCompile(Blackhole blackhole) {
+        for (String expr : mPrefixes) {
+            try {
+                blackhole.consume(mSymbols.compile(expr));
+            } catch (SyntaxException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PREFIXES)
+    public void recognize(Blackhole blackhole) {
+        for (String expr : mPrefixes) {
+            ExpressionRecognizer.recognize(expr, mResult);
+            blackhole.consume(mResult.getStatus());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.xlythe.calculator.material;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+public class SolverBenchmark {
+    @Param({"short", "long", "nested", "functions"})
+    public String corpus;
+
+    private String[] mExpressions;
+    private String[] mAsciiExpressions;
+
+    @Setup
+    public void setUp() {
+        mExpressions = ExpressionCorpus.create(corpus);
+        mAsciiExpressions = new String[mExpressions.length];
+        for (int i = 0; i < mExpressions.length; i++) {
+            mAsciiExpressions[i] = mExpressions[i]
+                    .replace(Constants.MINUS, '-')
+                    .replace(Constants.MUL, '*')
+                    .replace(Constants.DIV, '/');
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ExpressionCorpus.SIZE)
+    public void clean(Blackhole blackhole) {
+        for (String expr : mAsciiExpressions) {
+            blackhole.consume(Solver.clean(expr));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ExpressionCorpus.SIZE)
+    public void equal(Blackhole blackhole) {
+        for (int i = 0; i < mExpressions.length; i++) {
+            blackhole.consume(Solver.equal(mExpressions[i], mAsciiExpressions[i]));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.xlythe.calculator.material;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The first evaluation in a fresh JVM: building the tokenizer and an evaluator, evaluating and
+ * formatting the result. That's what opening the calculator costs before its UI. Each fork times
+ * it once, cold, after {@link CalculatorExpressionEvaluator#prewarm} finished, or with prewarm
+ * just started on another thread, as when it's called right before opening.
+ * <p>
+ * Sets its own mode, forks and iterations; run it with {@code ./gradlew :benchmarks:jmh -Pstartup}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(15)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class StartupBenchmark {
+    private static final String EXPRESSION = "12×3−sin(45)";
+
+    @Param({"cold", "prewarmed", "prewarming"})
+    public String engine;
+
+    @Setup
+    public void setUp() {
+        if ("prewarmed".equals(engine)) {
+            CalculatorExpressionEvaluator.prewarm();
+        } else if ("prewarming".equals(engine)) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    CalculatorExpressionEvaluator.prewarm();
+                }
+            }, "CalculatorPrewarm");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @Benchmark
+    public String openAndEvaluate() {
+        CalculatorExpressionEvaluator evaluator = new CalculatorExpressionEvaluator(new ExpressionTokenizer());
+        final String[] formatted = new String[1];
+        evaluator.evaluate(EXPRESSION, new CalculatorExpressionEvaluator.EvaluateCallback() {
+            @Override
+            public void onEvaluate(String expr, Double result, String errorMessage) {
+                formatted[0] = result != null ? ResultFormatter.format(result) : errorMessage;
+            }
+        });
+        return formatted[0];
+    }
+}
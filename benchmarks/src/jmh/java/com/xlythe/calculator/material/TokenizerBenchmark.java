@@ -0,0 +1,60 @@
+package com.xlythe.calculator.material;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Normalization of display text into arity syntax in degree mode (the larger table).
+ */
+@State(Scope.Benchmark)
+public class TokenizerBenchmark {
+    // The replacements ExpressionTokenizer uses with radians disabled, for the baseline.
+    private static final String[][] REPLACEMENTS = {
+            {".", "."}, {"0", "0"}, {"1", "1"}, {"2", "2"}, {"3", "3"}, {"4", "4"}, {"5", "5"},
+            {"6", "6"}, {"7", "7"}, {"8", "8"}, {"9", "9"},
+            {"/", "÷"}, {"*", "×"}, {"-", "−"}, {"cbrt", "³√"},
+            {"asin", "asin"}, {"acos", "acos"}, {"atan", "atan"},
+            {"sin", "sin"}, {"cos", "cos"}, {"tan", "tan"},
+            {"sind", "sin"}, {"cosd", "cos"}, {"tand", "tan"},
+            {"ln", "ln"}, {"log", "log"}, {"det", "det"}, {"Infinity", "∞"},
+    };
+
+    @Param({"short", "long", "nested", "functions"})
+    public String corpus;
+
+    private String[] mExpressions;
+    private ExpressionTokenizer mTokenizer;
+
+    @Setup
+    public void setUp() {
+        mExpressions = ExpressionCorpus.create(corpus);
+        mTokenizer = new ExpressionTokenizer(TokenizerConfig.DEFAULT.withRadians(false));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ExpressionCorpus.SIZE)
+    public void normalize(Blackhole blackhole) {
+        for (String expr : mExpressions) {
+            blackhole.consume(mTokenizer.getNormalizedExpression(expr));
+        }
+    }
+
+    /**
+     * The sequential String.replace chain the tokenizer used before, kept as a baseline.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ExpressionCorpus.SIZE)
+    public void normalizeReplaceChain(Blackhole blackhole) {
+        for (String expr : mExpressions) {
+            for (String[] replacement : REPLACEMENTS) {
+                expr = expr.replace(replacement[1], replacement[0]);
+            }
+            blackhole.consume(expr);
+        }
+    }
+}
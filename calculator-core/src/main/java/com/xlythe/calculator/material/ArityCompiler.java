@@ -0,0 +1,62 @@
+package com.xlythe.calculator.material;
+
+import org.javia.arity.Function;
+import org.javia.arity.Symbols;
+import org.javia.arity.SyntaxException;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Compiles expressions with arity.
+ * <p>
+ * Symbols only locks its own instance, but every instance shares a static lookup key while
+ * resolving names. Two Symbols compiling on different threads can therefore resolve each
+ * other's names, so all compilation goes through one lock. Building a Symbols compiles its
+ * built-in definitions and takes the same lock. Evaluating the compiled functions doesn't touch
+ * that state and doesn't need it.
+ */
+final class ArityCompiler {
+    private static final Object LOCK = new Object();
+    // Uses every part of arity the calculator does: names, functions, operators and constants.
+    private static final String WARM_UP_EXPRESSION = "sin(1)+cos(1)*tan(1)-asin(0.5)/acos(0.5)^atan(1)+ln(2)+log(2)+sqrt(4)+3!+pi";
+
+    // A Symbols built by prewarm, handed to the first newSymbols call.
+    private static final AtomicReference<Symbols> sSpare = new AtomicReference<>();
+
+    private ArityCompiler() {
+    }
+
+    static Function compile(Symbols symbols, String expr) throws SyntaxException {
+        synchronized (LOCK) {
+            return symbols.compile(expr);
+        }
+    }
+
+    static Symbols newSymbols() {
+        Symbols symbols = sSpare.getAndSet(null);
+        if (symbols != null) {
+            return symbols;
+        }
+        synchronized (LOCK) {
+            return new Symbols();
+        }
+    }
+
+    /**
+     * Loads arity's classes and builds a Symbols for the next {@link #newSymbols} call, so that
+     * neither happens on the thread that first evaluates something.
+     */
+    static void prewarm() {
+        if (sSpare.get() != null) {
+            return;
+        }
+        Symbols symbols = newSymbols();
+        try {
+            // Compiling looks names up but defines nothing, so the Symbols stays as good as new.
+            compile(symbols, WARM_UP_EXPRESSION).eval();
+        } catch (SyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+        sSpare.compareAndSet(null, symbols);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.xlythe.calculator.material;
+
+import androidx.annotation.Nullable;
+
+
+import org.javia.arity.Function;
+import org.javia.arity.Symbols;
+import org.javia.arity.SyntaxException;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CalculatorExpressionEvaluator {
+    private final Symbols mSolver;
+    private final ExpressionTokenizer mTokenizer;
+    private final CompiledExpressionCache mCache;
+    private final ThreadLocal<ExpressionRecognizer.Result> mRecognition = new ThreadLocal<ExpressionRecognizer.Result>() {
+        @Override
+        protected ExpressionRecognizer.Result initialValue() {
+            return new ExpressionRecognizer.Result();
+        }
+    };
+
+    // Async evaluation state. Every request bumps the version; only the newest one is delivered.
+    private final Executor mCallbackExecutor;
+    private final AtomicLong mVersion = new AtomicLong();
+    private final AtomicReference<PendingEvaluation> mPendingEvaluation = new AtomicReference<>();
+    private final Runnable mEvaluatePending = new Runnable() {
+        @Override
+        public void run() {
+            final PendingEvaluation pending = mPendingEvaluation.getAndSet(null);
+            if (pending == null || pending.version != mVersion.get()) {
+                // Superseded before we got to it.
+                return;
+            }
+            evaluate(pending.expr, new EvaluateCallback() {
+                @Override
+                public void onEvaluate(final String expr, @Nullable final Double result, final String errorMessage) {
+                    mCallbackExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (pending.version == mVersion.get()) {
+                                pending.callback.onEvaluate(expr, result, errorMessage);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    };
+    private ExecutorService mWorker;
+    @Nullable
+    private volatile EvaluationMetrics mMetrics;
+
+    public CalculatorExpressionEvaluator(ExpressionTokenizer tokenizer) {
+        this(tokenizer, CompiledExpressionCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param cacheSize The maximum number of compiled expressions to keep around. Lower this on
+     *                  memory constrained devices.
+     */
+    public CalculatorExpressionEvaluator(ExpressionTokenizer tokenizer, int cacheSize) {
+        this(tokenizer, cacheSize, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    /**
+     * @param callbackExecutor Where results of {@link #evaluateAsync} are delivered, e.g. the
+     *                         main thread on Android. Async results are delivered on the worker
+     *                         thread if not specified.
+     */
+    public CalculatorExpressionEvaluator(ExpressionTokenizer tokenizer, int cacheSize, Executor callbackExecutor) {
+        mSolver = ArityCompiler.newSymbols();
+        mTokenizer = tokenizer;
+        mCache = new CompiledExpressionCache(cacheSize);
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Loads and initializes the engine (arity, the tokenizer, the recognizer and the result
+     * formatter) so that building the first evaluator and its first evaluation don't pay for it.
+     * This blocks for as long as it takes; call it on a background thread, early on.
+     */
+    public static void prewarm() {
+        ArityCompiler.prewarm();
+        String expr = new ExpressionTokenizer().getNormalizedExpression("sin(2×3)−1÷4");
+        ExpressionRecognizer.autoClose(expr, ExpressionRecognizer.recognize(expr));
+        ResultFormatter.format(-Math.PI);
+        ResultFormatter.format(1E100);
+    }
+
+    public void evaluate(CharSequence expr, EvaluateCallback callback) {
+        evaluate(expr.toString(), callback);
+    }
+
+    public void evaluate(String expr, EvaluateCallback callback) {
+        EvaluationMetrics metrics = mMetrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        expr = mTokenizer.getNormalizedExpression(expr);
+        if (metrics != null) {
+            start = metrics.record(EvaluationMetrics.Stage.NORMALIZE, start);
+        }
+
+        try {
+            Function function = compile(expr);
+            if (metrics != null) {
+                start = metrics.record(EvaluationMetrics.Stage.COMPILE, start);
+            }
+            if (function == null) {
+                // Still being typed, or invalid; don't bother arity with it.
+                callback.onEvaluate(expr, null, "Error");
+                return;
+            }
+            double result = function.eval();
+            if (metrics != null) {
+                metrics.record(EvaluationMetrics.Stage.EVALUATE, start);
+            }
+            callback.onEvaluate(expr, result, null);
+        } catch (Exception e) {
+            callback.onEvaluate(expr, null, "Error");
+        }
+    }
+
+    public void evaluateAsync(CharSequence expr, EvaluateCallback callback) {
+        // Snapshot the text here; mutable text such as an Editable must not be read by the worker.
+        evaluateAsync(expr.toString(), callback);
+    }
+
+    /**
+     * Evaluates the expression on a background thread and hands the result to the callback on the
+     * callback executor.
+     * <p>
+     * Requests are latest-wins: a burst of calls collapses into a single evaluation of the newest
+     * expression, queued work that has been superseded is skipped, and results that finish after
+     * a newer request was made are dropped instead of delivered.
+     */
+    public void evaluateAsync(String expr, EvaluateCallback callback) {
+        PendingEvaluation pending = new PendingEvaluation(mVersion.incrementAndGet(), expr, callback);
+        if (mPendingEvaluation.getAndSet(pending) == null) {
+            // Nothing was queued yet. Otherwise the queued run will pick up this request instead.
+            getWorker().execute(mEvaluatePending);
+        }
+    }
+
+    /**
+     * Drops any queued or in-flight async evaluation so its result is never delivered.
+     */
+    public void cancelPendingEvaluations() {
+        mVersion.incrementAndGet();
+        mPendingEvaluation.set(null);
+    }
+
+    /**
+     * Cancels pending async work and stops the background thread. The evaluator can still be used
+     * afterwards; a new thread is started on the next async request.
+     */
+    public synchronized void shutdown() {
+        cancelPendingEvaluations();
+        if (mWorker != null) {
+            mWorker.shutdown();
+            mWorker = null;
+        }
+    }
+
+    private synchronized Executor getWorker() {
+        if (mWorker == null) {
+            mWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "CalculatorEvaluator");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mWorker;
+    }
+
+    /**
+     * Returns the compiled form of a normalized expression, reusing a previous compilation when
+     * the same expression was already seen under the current angle mode. Returns null, without
+     * compiling, if {@link ExpressionRecognizer} finds the expression incomplete or invalid.
+     * Unclosed parentheses are closed.
+     */
+    @Nullable
+    private Function compile(String expr) throws SyntaxException {
+        boolean radians = mTokenizer.useRadians();
+        Function function = mCache.get(expr, radians);
+        if (function == null) {
+            ExpressionRecognizer.Result recognition = mRecognition.get();
+            ExpressionRecognizer.recognize(expr, recognition);
+            if (!recognition.canAutoClose()) {
+                return null;
+            }
+            function = ArityCompiler.compile(mSolver, ExpressionRecognizer.autoClose(expr, recognition));
+            mCache.put(expr, radians, function);
+        }
+        return function;
+    }
+
+    /**
+     * Times the normalization, compilation and evaluation of every expression into
+     * {@code metrics}, or stops timing them if it's null.
+     */
+    public void setMetrics(@Nullable EvaluationMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    @Nullable
+    public EvaluationMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Exposes the compiled expression cache so its hit rate can be inspected and its size tuned.
+     */
+    public CompiledExpressionCache getCache() {
+        return mCache;
+    }
+
+    public interface EvaluateCallback {
+        void onEvaluate(String expr, @Nullable Double result, String errorMessage);
+    }
+
+    private static class PendingEvaluation {
+        final long version;
+        final String expr;
+        final EvaluateCallback callback;
+
+        PendingEvaluation(long version, String expr, EvaluateCallback callback) {
+            this.version = version;
+            this.expr = expr;
+            this.callback = callback;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,136 @@
+package com.xlythe.calculator.material;
+
+import androidx.annotation.Nullable;
+
+import org.javia.arity.Function;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of compiled arity functions.
+ * <p>
+ * Entries are keyed on the normalized expression and the angle mode it was compiled under, so
+ * re-evaluating an expression that was seen before skips lexing, parsing and code generation.
+ * Hit, miss and eviction counters are kept so the size limit can be tuned per device.
+ */
+public class CompiledExpressionCache {
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private final LinkedHashMap<Key, Function> mMap = new LinkedHashMap<>(16, 0.75f, true);
+    private int mMaxSize;
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    public CompiledExpressionCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public CompiledExpressionCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns the compiled function for the expression, or null if it isn't cached.
+     */
+    @Nullable
+    public synchronized Function get(String expr, boolean radians) {
+        Function function = mMap.get(new Key(expr, radians));
+        if (function != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return function;
+    }
+
+    public synchronized void put(String expr, boolean radians, Function function) {
+        mMap.put(new Key(expr, radians), function);
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Changes the maximum number of compiled functions held, evicting the oldest ones if needed.
+     */
+    public synchronized void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Drops every compiled function. Only functions dropped to stay under the maximum size count
+     * as evictions, so clearing doesn't skew the counters used to tune it.
+     */
+    public synchronized void evictAll() {
+        mMap.clear();
+    }
+
+    private void trimToSize(int maxSize) {
+        Iterator<Map.Entry<Key, Function>> iterator = mMap.entrySet().iterator();
+        while (mMap.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    public synchronized int size() {
+        return mMap.size();
+    }
+
+    public synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized long hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long missCount() {
+        return mMissCount;
+    }
+
+    public synchronized long evictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long accesses = mHitCount + mMissCount;
+        int hitPercent = accesses != 0 ? (int) (100 * mHitCount / accesses) : 0;
+        return String.format("CompiledExpressionCache[maxSize=%d,hits=%d,misses=%d,evictions=%d,hitRate=%d%%]",
+                mMaxSize, mHitCount, mMissCount, mEvictionCount, hitPercent);
+    }
+
+    private static final class Key {
+        final String expr;
+        final boolean radians;
+
+        Key(String expr, boolean radians) {
+            this.expr = expr;
+            this.radians = radians;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return radians == other.radians && expr.equals(other.expr);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * expr.hashCode() + (radians ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.xlythe.calculator.material;
+
+import androidx.annotation.Nullable;
+
+import com.xlythe.calculator.material.CalculatorExpressionEvaluator.EvaluateCallback;
+
+import org.javia.arity.ContextFunction;
+import org.javia.arity.EvalContext;
+import org.javia.arity.Function;
+import org.javia.arity.Symbols;
+import org.javia.arity.SyntaxException;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An evaluator that can be called from any number of threads at once.
+ * <p>
+ * arity's {@link Symbols} serializes all callers of an instance, and {@link Function#eval()}
+ * locks a single static evaluation context. This class instead keeps a bounded pool of
+ * evaluators, each with its own Symbols, compiled expression cache and evaluation context. A
+ * caller borrows one for the duration of a call, so up to {@code poolSize} evaluations run in
+ * parallel and memory stays bounded by the pool size times the cache size. Callers beyond that
+ * wait for an evaluator to be returned.
+ * <p>
+ * Compiling is still serialized across all evaluators (see {@link ArityCompiler}), but compiled
+ * expressions are cached, so repeated expressions only contend for the pool.
+ */
+public class ConcurrentExpressionEvaluator {
+    /** The expression evaluated successfully. */
+    public static final byte ERROR_NONE = 0;
+    /** The expression is incomplete or couldn't be parsed. */
+    public static final byte ERROR_SYNTAX = 1;
+    /** The expression parsed but has free variables (e.g. "x+1"), so it has no single value. */
+    public static final byte ERROR_NOT_CONSTANT = 2;
+    /** arity failed while evaluating the expression. */
+    public static final byte ERROR_EVALUATION = 3;
+
+    /**
+     * Batches are split into no more parts than the pool has evaluators, and no part has fewer
+     * than this many expressions. Each part borrows a single evaluator from the pool.
+     */
+    private static final int BATCH_SPLIT_THRESHOLD = 512;
+
+    private final ExpressionTokenizer mTokenizer;
+    private final int mPoolSize;
+    private final int mCacheSize;
+    private final ArrayBlockingQueue<PooledEvaluator> mIdleEvaluators;
+    private final AtomicInteger mCreatedEvaluators = new AtomicInteger();
+
+    public ConcurrentExpressionEvaluator(ExpressionTokenizer tokenizer) {
+        this(tokenizer, Runtime.getRuntime().availableProcessors(), CompiledExpressionCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param poolSize  The maximum number of evaluations that run at the same time.
+     * @param cacheSize The maximum number of compiled expressions kept by each pooled evaluator.
+     */
+    public ConcurrentExpressionEvaluator(ExpressionTokenizer tokenizer, int poolSize, int cacheSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("poolSize <= 0");
+        }
+        mTokenizer = tokenizer;
+        mPoolSize = poolSize;
+        mCacheSize = cacheSize;
+        mIdleEvaluators = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    public void evaluate(CharSequence expr, EvaluateCallback callback) {
+        evaluate(expr.toString(), callback);
+    }
+
+    /**
+     * Evaluates the expression on the calling thread, with the same results and callback
+     * semantics as {@link CalculatorExpressionEvaluator#evaluate(String, EvaluateCallback)}.
+     */
+    public void evaluate(String expr, EvaluateCallback callback) {
+        expr = mTokenizer.getNormalizedExpression(expr);
+        boolean radians = mTokenizer.useRadians();
+
+        PooledEvaluator evaluator = acquire();
+        Double result = null;
+        try {
+            Function function = evaluator.compile(expr, radians);
+            if (function != null && function.arity() == 0) {
+                result = evaluator.eval(function);
+            }
+        } catch (Exception e) {
+            result = null;
+        } finally {
+            release(evaluator);
+        }
+        // The evaluator goes back to the pool before the callback runs.
+        callback.onEvaluate(expr, result, result == null ? "Error" : null);
+    }
+
+    public void evaluateBatch(List<? extends CharSequence> exprs, double[] results, byte[] errors) {
+        evaluateBatch(exprs.toArray(new CharSequence[exprs.size()]), results, errors);
+    }
+
+    /**
+     * Evaluates many expressions at once, splitting the work across the common fork-join pool.
+     * No callbacks are made and no results are boxed.
+     *
+     * @param results Receives the value of each expression, or NaN if it failed.
+     * @param errors  Receives {@link #ERROR_NONE} or the reason each expression failed.
+     */
+    public void evaluateBatch(CharSequence[] exprs, double[] results, byte[] errors) {
+        if (results.length < exprs.length || errors.length < exprs.length) {
+            throw new IllegalArgumentException("Output arrays are shorter than the batch");
+        }
+        // The calling thread helps while it waits, so it counts towards the parallelism.
+        int parallelism = Math.min(mPoolSize, ForkJoinPool.getCommonPoolParallelism() + 1);
+        // No more parts than evaluators, so a part only waits for one if another caller has it.
+        int leafSize = Math.max(BATCH_SPLIT_THRESHOLD, (exprs.length + parallelism - 1) / parallelism);
+        BatchTask task = new BatchTask(exprs, mTokenizer.useRadians(), results, errors, 0, exprs.length, leafSize);
+        if (exprs.length <= leafSize || parallelism <= 1
+                || Runtime.getRuntime().availableProcessors() <= 1) {
+            task.compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+    }
+
+    public int getPoolSize() {
+        return mPoolSize;
+    }
+
+    PooledEvaluator acquire() {
+        PooledEvaluator evaluator = mIdleEvaluators.poll();
+        if (evaluator != null) {
+            return evaluator;
+        }
+        if (mCreatedEvaluators.incrementAndGet() <= mPoolSize) {
+            return new PooledEvaluator(mCacheSize);
+        }
+        mCreatedEvaluators.decrementAndGet();
+
+        // The pool is exhausted; wait for another caller to finish. Batch parts wait on
+        // ForkJoinPool workers, so tell the pool, which may start a spare worker meanwhile.
+        IdleEvaluatorBlocker blocker = new IdleEvaluatorBlocker();
+        boolean interrupted = false;
+        try {
+            while (blocker.mEvaluator == null) {
+                try {
+                    ForkJoinPool.managedBlock(blocker);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            return blocker.mEvaluator;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    void release(PooledEvaluator evaluator) {
+        mIdleEvaluators.offer(evaluator);
+    }
+
+    ExpressionTokenizer getTokenizer() {
+        return mTokenizer;
+    }
+
+    private class IdleEvaluatorBlocker implements ForkJoinPool.ManagedBlocker {
+        private PooledEvaluator mEvaluator;
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (mEvaluator == null) {
+                mEvaluator = mIdleEvaluators.take();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            if (mEvaluator == null) {
+                mEvaluator = mIdleEvaluators.poll();
+            }
+            return mEvaluator != null;
+        }
+    }
+
+    private class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CharSequence[] mExprs;
+        private final boolean mRadians;
+        private final double[] mResults;
+        private final byte[] mErrors;
+        private final int mFrom;
+        private final int mTo;
+        private final int mLeafSize;
+
+        BatchTask(CharSequence[] exprs, boolean radians, double[] results, byte[] errors,
+                int from, int to, int leafSize) {
+            mExprs = exprs;
+            mRadians = radians;
+            mResults = results;
+            mErrors = errors;
+            mFrom = from;
+            mTo = to;
+            mLeafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom > mLeafSize) {
+                // Split on a multiple of the leaf size, so the parts are never smaller than it.
+                int leaves = (mTo - mFrom + mLeafSize - 1) / mLeafSize;
+                int middle = mFrom + leaves / 2 * mLeafSize;
+                invokeAll(new BatchTask(mExprs, mRadians, mResults, mErrors, mFrom, middle, mLeafSize),
+                        new BatchTask(mExprs, mRadians, mResults, mErrors, middle, mTo, mLeafSize));
+                return;
+            }
+
+            PooledEvaluator evaluator = acquire();
+            try {
+                for (int i = mFrom; i < mTo; i++) {
+                    mErrors[i] = evaluator.evalInto(
+                            mTokenizer.getNormalizedExpression(mExprs[i].toString()), mRadians, mResults, i);
+                }
+            } finally {
+                release(evaluator);
+            }
+        }
+    }
+
+    /**
+     * One pool entry. Only ever used by one thread at a time.
+     */
+    static final class PooledEvaluator {
+        private static final double[] NO_ARGS = new double[0];
+
+        private final Symbols mSymbols = ArityCompiler.newSymbols();
+        private final EvalContext mContext = new EvalContext();
+        private final CompiledExpressionCache mCache;
+        private final ExpressionRecognizer.Result mRecognition = new ExpressionRecognizer.Result();
+
+        PooledEvaluator(int cacheSize) {
+            mCache = new CompiledExpressionCache(cacheSize);
+        }
+
+        /**
+         * Returns the compiled form of a normalized expression, or null if it's incomplete or
+         * invalid.
+         */
+        @Nullable
+        Function compile(String expr, boolean radians) throws SyntaxException {
+            Function function = mCache.get(expr, radians);
+            if (function == null) {
+                ExpressionRecognizer.recognize(expr, mRecognition);
+                if (!mRecognition.canAutoClose()) {
+                    return null;
+                }
+                function = ArityCompiler.compile(mSymbols, ExpressionRecognizer.autoClose(expr, mRecognition));
+                mCache.put(expr, radians, function);
+            }
+            return function;
+        }
+
+        /**
+         * Evaluates a compiled function that takes no arguments.
+         */
+        double eval(Function function) {
+            if (function instanceof ContextFunction) {
+                // Use our own context rather than the global one Function.eval() locks.
+                return ((ContextFunction) function).eval(NO_ARGS, mContext);
+            }
+            return function.eval();
+        }
+
+        /**
+         * Evaluates a normalized expression into {@code results[index]} and returns its error
+         * code. Incomplete expressions never reach arity, and arity reuses one SyntaxException per
+         * Symbols, so failures don't allocate either.
+         */
+        byte evalInto(String expr, boolean radians, double[] results, int index) {
+            results[index] = Double.NaN;
+            Function function;
+            try {
+                function = compile(expr, radians);
+            } catch (SyntaxException e) {
+                return ERROR_SYNTAX;
+            }
+            if (function == null) {
+                return ERROR_SYNTAX;
+            }
+            if (function.arity() != 0) {
+                return ERROR_NOT_CONSTANT;
+            }
+            try {
+                results[index] = eval(function);
+            } catch (RuntimeException e) {
+                return ERROR_EVALUATION;
+            }
+            return ERROR_NONE;
+        }
+    }
+}
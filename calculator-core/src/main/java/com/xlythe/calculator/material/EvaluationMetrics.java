@@ -0,0 +1,93 @@
+package com.xlythe.calculator.material;
+
+/**
+ * How long each stage between a keystroke and its result on screen takes, in a
+ * {@link LatencyHistogram} per {@link Stage}.
+ * <p>
+ * Set on an evaluator with {@link CalculatorExpressionEvaluator#setMetrics}, and on the calculator
+ * UI, to be polled with {@link #getHistogram} or followed with {@link #addListener}. Without
+ * metrics, which is the default, nothing is timed.
+ */
+public final class EvaluationMetrics {
+    public enum Stage {
+        /** Translating the displayed expression to arity's syntax. */
+        NORMALIZE,
+        /** Recognizing and compiling the expression, or finding it in the cache. */
+        COMPILE,
+        /** Evaluating the compiled expression. */
+        EVALUATE,
+        /** Formatting the result for the display. */
+        FORMAT,
+        /** Setting the result on its view. */
+        RENDER
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Listener[] NO_LISTENERS = new Listener[0];
+
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGES.length];
+    // Copied on write, so recording can go through them without a lock or an iterator.
+    private volatile Listener[] mListeners = NO_LISTENERS;
+
+    public EvaluationMetrics() {
+        for (int i = 0; i < mHistograms.length; i++) {
+            mHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return mHistograms[stage.ordinal()];
+    }
+
+    /**
+     * Records that {@code stage} took from {@code startNanos}, a {@link System#nanoTime}, until
+     * now. Returns now, where the next stage starts.
+     */
+    public long record(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        long nanos = now - startNanos;
+        mHistograms[stage.ordinal()].record(nanos);
+        for (Listener listener : mListeners) {
+            listener.onSample(stage, nanos);
+        }
+        return now;
+    }
+
+    /**
+     * Forgets every sample of every stage.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : mHistograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Tells {@code listener} about every sample, on the thread that recorded it.
+     */
+    public synchronized void addListener(Listener listener) {
+        Listener[] listeners = new Listener[mListeners.length + 1];
+        System.arraycopy(mListeners, 0, listeners, 0, mListeners.length);
+        listeners[mListeners.length] = listener;
+        mListeners = listeners;
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        for (int i = 0; i < mListeners.length; i++) {
+            if (mListeners[i] == listener) {
+                Listener[] listeners = new Listener[mListeners.length - 1];
+                System.arraycopy(mListeners, 0, listeners, 0, i);
+                System.arraycopy(mListeners, i + 1, listeners, i, listeners.length - i);
+                mListeners = listeners;
+                return;
+            }
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called for every sample, so it must be quick.
+         */
+        void onSample(Stage stage, long nanos);
+    }
+}
@@ -0,0 +1,203 @@
+package com.xlythe.calculator.material;
+
+import java.util.List;
+
+/**
+ * The text of an expression being typed, in a gap buffer, with the keypad's editing rules.
+ * <p>
+ * Edits move the gap to where they happen and fill or widen it in place, so typing and deleting
+ * at the cursor cost the same whatever the length of the expression. After each edit the range
+ * that changed is available from {@link #getChangeStart()}, {@link #getChangeEnd()} and
+ * {@link #getChangeLength()}, so a view holding a copy of the text only has to replace that range.
+ * <p>
+ * The buffer keeps an {@link ExpressionTokens} index of its text up to date, which the editing
+ * rules use instead of scanning around the cursor.
+ */
+public final class ExpressionBuffer implements CharSequence {
+    private static final char[] ORIGINALS = {'-', '*', '/'};
+    private static final char[] REPLACEMENTS = {Constants.MINUS, Constants.MUL, Constants.DIV};
+
+    private final ExpressionTokens mTokens = new ExpressionTokens();
+    private char[] mChars;
+    private int mGapStart;
+    private int mGapEnd;
+    // Built on demand, and dropped on every edit.
+    private String mString;
+
+    private int mChangeStart;
+    private int mChangeEnd;
+    private int mChangeLength;
+
+    public ExpressionBuffer() {
+        this(16);
+    }
+
+    public ExpressionBuffer(int capacity) {
+        mChars = new char[Math.max(capacity, 1)];
+        mGapEnd = mChars.length;
+    }
+
+    @Override
+    public int length() {
+        return mChars.length - (mGapEnd - mGapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+        }
+        return index < mGapStart ? mChars[index] : mChars[index + mGapEnd - mGapStart];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    public void getChars(int start, int end, char[] dest, int destStart) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        if (end <= mGapStart) {
+            System.arraycopy(mChars, start, dest, destStart, end - start);
+        } else if (start >= mGapStart) {
+            System.arraycopy(mChars, start + mGapEnd - mGapStart, dest, destStart, end - start);
+        } else {
+            System.arraycopy(mChars, start, dest, destStart, mGapStart - start);
+            System.arraycopy(mChars, mGapEnd, dest, destStart + mGapStart - start, end - mGapStart);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (mString == null) {
+            char[] chars = new char[length()];
+            getChars(0, chars.length, chars, 0);
+            mString = new String(chars);
+        }
+        return mString;
+    }
+
+    public void set(CharSequence text) {
+        replace(0, length(), text, 0, text.length());
+    }
+
+    /**
+     * Replaces {@code [start, end)} with {@code text[textStart, textEnd)}, as is.
+     */
+    public void replace(int start, int end, CharSequence text, int textStart, int textEnd) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        int count = textEnd - textStart;
+        moveGap(end);
+        // Everything in [start, end) now sits right before the gap; dropping it widens the gap.
+        mGapStart = start;
+        if (mGapEnd - mGapStart < count) {
+            grow(count);
+        }
+        for (int i = 0; i < count; i++) {
+            mChars[mGapStart++] = text.charAt(textStart + i);
+        }
+        mString = null;
+        mTokens.replace(this, start, end, count);
+        mChangeStart = start;
+        mChangeEnd = end;
+        mChangeLength = count;
+    }
+
+    /**
+     * Inserts keypad input at the cursor with the same rules as typing into the display: no second
+     * decimal point in a number, no two minuses in a row, no leading operator other than minus, and
+     * an operator replaces the operators before it.
+     *
+     * @return The new cursor position, or -1 if the input was rejected and nothing changed.
+     */
+    public int insert(int cursor, String delta) {
+        for (int i = 0; i < ORIGINALS.length; i++) {
+            delta = delta.replace(ORIGINALS[i], REPLACEMENTS[i]);
+        }
+
+        int start = cursor;
+        if (delta.length() == 1) {
+            start = mTokens.getInsertionStart(this, cursor, delta.charAt(0));
+            if (start < 0) {
+                return -1;
+            }
+        }
+
+        replace(start, cursor, delta, 0, delta.length());
+        return start + delta.length();
+    }
+
+    /**
+     * Deletes the character before the cursor, or the whole keyword if the text before the cursor
+     * ends with one of them (a name and an opening parenthesis, e.g. "sin(").
+     *
+     * @return The new cursor position, or -1 if there was nothing to delete.
+     */
+    public int backspace(int cursor, List<String> keywords) {
+        if (cursor == 0) {
+            return -1;
+        }
+        int start = mTokens.getDeletionStart(this, cursor, keywords);
+        replace(start, cursor, "", 0, 0);
+        return start;
+    }
+
+    /**
+     * Returns the tokens of the text, for bracket matching and token-wise edits.
+     */
+    public ExpressionTokens getTokens() {
+        return mTokens;
+    }
+
+    /**
+     * Returns where the last edit started.
+     */
+    public int getChangeStart() {
+        return mChangeStart;
+    }
+
+    /**
+     * Returns where the replaced range of the last edit ended, in the text before the edit.
+     */
+    public int getChangeEnd() {
+        return mChangeEnd;
+    }
+
+    /**
+     * Returns how many characters the last edit put in place of the replaced range.
+     */
+    public int getChangeLength() {
+        return mChangeLength;
+    }
+
+    private void moveGap(int position) {
+        if (position < mGapStart) {
+            int count = mGapStart - position;
+            System.arraycopy(mChars, position, mChars, mGapEnd - count, count);
+            mGapStart -= count;
+            mGapEnd -= count;
+        } else if (position > mGapStart) {
+            int count = position - mGapStart;
+            System.arraycopy(mChars, mGapEnd, mChars, mGapStart, count);
+            mGapStart += count;
+            mGapEnd += count;
+        }
+    }
+
+    private void grow(int needed) {
+        int length = length();
+        int capacity = Math.max(2 * mChars.length, length + needed);
+        char[] chars = new char[capacity];
+        int tail = mChars.length - mGapEnd;
+        System.arraycopy(mChars, 0, chars, 0, mGapStart);
+        System.arraycopy(mChars, mGapEnd, chars, capacity - tail, tail);
+        mGapEnd = capacity - tail;
+        mChars = chars;
+    }
+}
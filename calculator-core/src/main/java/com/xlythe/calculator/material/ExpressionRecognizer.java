@@ -0,0 +1,439 @@
+package com.xlythe.calculator.material;
+
+/**
+ * Tells whether a normalized expression is worth handing to arity, without compiling it and
+ * without throwing.
+ * <p>
+ * While the user types, most intermediate expressions ("3+", "sin(", "2*(4-") don't parse. arity
+ * only finds that out by lexing and parsing under the global compile lock (see
+ * {@link ArityCompiler}) and unwinding a SyntaxException. This class follows the same lexical
+ * and operator rules in a single pass over the text and classifies the expression as
+ * {@link #COMPLETE}, {@link #INCOMPLETE} (more input could make it valid) or {@link #INVALID},
+ * with an error code and the position of the problem.
+ * <p>
+ * Only syntax is checked. Unknown names and wrong argument counts are still left to arity, so an
+ * expression that is {@link #COMPLETE} here may still fail to compile, but anything reported as
+ * incomplete or invalid would have failed.
+ */
+public final class ExpressionRecognizer {
+    /** The expression parses as is. */
+    public static final int COMPLETE = 0;
+    /** The expression doesn't parse yet, but appending to it could fix that. */
+    public static final int INCOMPLETE = 1;
+    /** The expression can't be made valid by appending to it. */
+    public static final int INVALID = 2;
+
+    public static final int ERROR_NONE = 0;
+    /** There's nothing but whitespace. */
+    public static final int ERROR_EMPTY = 1;
+    /** It ends where an operand is expected, e.g. "3+" or "sin(". */
+    public static final int ERROR_MISSING_OPERAND = 2;
+    /** It ends in an exponent without digits, e.g. "1E" or "1E-". */
+    public static final int ERROR_INCOMPLETE_NUMBER = 3;
+    /**
+     * Parentheses are left open, e.g. "2*(4". Appending {@link Result#getMissingParentheses()}
+     * closing parentheses completes it.
+     */
+    public static final int ERROR_UNCLOSED_PARENTHESIS = 4;
+    /** A binary or postfix operator has no left operand, e.g. "*3" or "3+*4". */
+    public static final int ERROR_MISPLACED_OPERATOR = 5;
+    /** A closing parenthesis directly follows an operator or an opening parenthesis, e.g. "3+)". */
+    public static final int ERROR_MISPLACED_PARENTHESIS = 6;
+    /** A comma is outside of a function call or has no argument before it. */
+    public static final int ERROR_MISPLACED_COMMA = 7;
+    /** A number arity can't read, e.g. "1.2.3". */
+    public static final int ERROR_INVALID_NUMBER = 8;
+    /** A character arity doesn't know. */
+    public static final int ERROR_INVALID_CHARACTER = 9;
+
+    private static final char UNICODE_MINUS = '−';
+    private static final char UNICODE_MUL = '×';
+    private static final char UNICODE_DIV = '÷';
+    private static final char UNICODE_SQRT = '√';
+
+    // Token kinds, as far as the parser cares about them.
+    private static final int OPERAND = 0;
+    private static final int PREFIX = 1;
+    private static final int CALL = 2;
+    private static final int MINUS = 3;
+    private static final int PLUS = 4;
+    private static final int BINARY = 5;
+    private static final int POSTFIX = 6;
+    private static final int LEFT_PAREN = 7;
+    private static final int RIGHT_PAREN = 8;
+    private static final int COMMA = 9;
+
+    private ExpressionRecognizer() {
+    }
+
+    public static Result recognize(CharSequence expr) {
+        Result result = new Result();
+        recognize(expr, result);
+        return result;
+    }
+
+    /**
+     * Classifies a normalized expression (see {@link ExpressionTokenizer#getNormalizedExpression})
+     * into a reusable result. Positions refer to indices in {@code expr}.
+     */
+    public static void recognize(CharSequence expr, Result result) {
+        result.reset();
+        final int length = expr.length();
+        boolean expectOperand = true;
+        boolean afterCall = false;
+        boolean empty = true;
+        int i = 0;
+        while (true) {
+            while (i < length && isWhitespace(expr.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            final int start = i;
+            final char c = expr.charAt(i++);
+            final int kind;
+            if (isDigit(c) || c == '.') {
+                i = scanNumber(expr, start, result);
+                if (i < 0) {
+                    return;
+                }
+                kind = OPERAND;
+            } else if (isLetter(c)) {
+                while (i < length && (isLetter(expr.charAt(i)) || isDigit(expr.charAt(i)))) {
+                    i++;
+                }
+                if (i < length && expr.charAt(i) == '\'') {
+                    i++;
+                }
+                int next = i;
+                while (next < length && isWhitespace(expr.charAt(next))) {
+                    next++;
+                }
+                if (next < length && expr.charAt(next) == '(') {
+                    i = next + 1;
+                    kind = CALL;
+                } else {
+                    kind = OPERAND;
+                }
+            } else {
+                kind = kindOf(c);
+                if (kind < 0) {
+                    result.set(INVALID, ERROR_INVALID_CHARACTER, start);
+                    return;
+                }
+            }
+            empty = false;
+
+            switch (kind) {
+                case OPERAND:
+                    expectOperand = false;
+                    break;
+                case PREFIX:
+                case MINUS:
+                    // Either a binary minus, a negation or a prefix; all of them need an operand.
+                    expectOperand = true;
+                    break;
+                case CALL:
+                case LEFT_PAREN:
+                    result.push(start, kind == CALL);
+                    expectOperand = true;
+                    break;
+                case PLUS:
+                    // A leading plus is ignored, and doesn't count as the previous token either.
+                    if (expectOperand) {
+                        continue;
+                    }
+                    expectOperand = true;
+                    break;
+                case BINARY:
+                case POSTFIX:
+                    if (expectOperand) {
+                        result.set(INVALID, ERROR_MISPLACED_OPERATOR, start);
+                        return;
+                    }
+                    expectOperand = kind == BINARY;
+                    break;
+                case RIGHT_PAREN:
+                    if (expectOperand && !afterCall) {
+                        result.set(INVALID, ERROR_MISPLACED_PARENTHESIS, start);
+                        return;
+                    }
+                    // A stray closing parenthesis after an operand is ignored.
+                    result.pop();
+                    expectOperand = false;
+                    break;
+                case COMMA:
+                    if (expectOperand || !result.isInCall()) {
+                        result.set(INVALID, ERROR_MISPLACED_COMMA, start);
+                        return;
+                    }
+                    expectOperand = true;
+                    break;
+                default:
+                    throw new AssertionError();
+            }
+            afterCall = kind == CALL;
+        }
+
+        if (empty) {
+            result.set(INCOMPLETE, ERROR_EMPTY, length);
+        } else if (expectOperand) {
+            result.set(INCOMPLETE, ERROR_MISSING_OPERAND, length);
+        } else if (result.mDepth > 0) {
+            result.set(INCOMPLETE, ERROR_UNCLOSED_PARENTHESIS, result.mOpenParentheses[0] >> 1);
+        }
+    }
+
+    /**
+     * Returns the expression with its missing closing parentheses appended.
+     */
+    public static String autoClose(String expr, Result result) {
+        int missing = result.getMissingParentheses();
+        if (missing == 0) {
+            return expr;
+        }
+        StringBuilder builder = new StringBuilder(expr.length() + missing).append(expr);
+        for (int i = 0; i < missing; i++) {
+            builder.append(Constants.RIGHT_PAREN);
+        }
+        return builder.toString();
+    }
+
+    private static int kindOf(char c) {
+        switch (c) {
+            case '(':
+                return LEFT_PAREN;
+            case ')':
+                return RIGHT_PAREN;
+            case ',':
+                return COMMA;
+            case '+':
+                return PLUS;
+            case '-':
+            case UNICODE_MINUS:
+                return MINUS;
+            case '*':
+            case '/':
+            case '#':
+            case '^':
+            case UNICODE_MUL:
+            case UNICODE_DIV:
+                return BINARY;
+            case '!':
+            case '%':
+                return POSTFIX;
+            case UNICODE_SQRT:
+                return PREFIX;
+            case '∞':
+                // Infinity
+                return OPERAND;
+            default:
+                // Greek letters are single character constants.
+                return (c >= '\u0391' && c <= '\u03a9') || (c >= '\u03b1' && c <= '\u03c9') ? OPERAND : -1;
+        }
+    }
+
+    /**
+     * Checks the number starting at {@code start} the way arity reads it, and returns the index
+     * after it. Returns -1 if the number ends the expression early; the result says why.
+     */
+    private static int scanNumber(CharSequence expr, int start, Result result) {
+        final int length = expr.length();
+        if (expr.charAt(start) == '0' && start + 1 < length) {
+            int radix = radixOf(expr.charAt(start + 1));
+            if (radix != 0) {
+                return scanRadixNumber(expr, start, radix, result);
+            }
+        }
+
+        int i = start;
+        int mantissaDigits = 0;
+        boolean point = false;
+        boolean exponent = false;
+        int exponentDigits = 0;
+        boolean valid = true;
+        while (i < length) {
+            char c = expr.charAt(i);
+            if (isDigit(c)) {
+                if (exponent) {
+                    exponentDigits++;
+                } else {
+                    mantissaDigits++;
+                }
+            } else if (c == '.') {
+                valid &= !point && !exponent;
+                point = true;
+            } else if (c == 'E' || c == 'e') {
+                valid &= !exponent;
+                exponent = true;
+                if (i + 1 < length && (expr.charAt(i + 1) == '-' || expr.charAt(i + 1) == UNICODE_MINUS)) {
+                    i++;
+                }
+            } else {
+                break;
+            }
+            i++;
+        }
+
+        if (i - start == 1 && point) {
+            // arity reads a lone "." as zero.
+            return i;
+        }
+        valid &= mantissaDigits > 0;
+        if (valid && exponent && exponentDigits == 0) {
+            if (i == length) {
+                result.set(INCOMPLETE, ERROR_INCOMPLETE_NUMBER, start);
+                return -1;
+            }
+            valid = false;
+        }
+        if (!valid) {
+            result.set(INVALID, ERROR_INVALID_NUMBER, start);
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * Checks a "0x", "0b" or "0o" prefixed integer, which arity reads with Integer.parseInt.
+     */
+    private static int scanRadixNumber(CharSequence expr, int start, int radix, Result result) {
+        final int length = expr.length();
+        int i = start + 2;
+        long value = 0;
+        boolean valid = true;
+        while (i < length && (isLetter(expr.charAt(i)) || isDigit(expr.charAt(i)))) {
+            int digit = Character.digit(expr.charAt(i), radix);
+            if (digit < 0) {
+                valid = false;
+            } else if (valid) {
+                value = value * radix + digit;
+                valid = value <= Integer.MAX_VALUE;
+            }
+            i++;
+        }
+        if (i == start + 2) {
+            if (i == length) {
+                result.set(INCOMPLETE, ERROR_INCOMPLETE_NUMBER, start);
+            } else {
+                result.set(INVALID, ERROR_INVALID_NUMBER, start);
+            }
+            return -1;
+        }
+        if (!valid) {
+            result.set(INVALID, ERROR_INVALID_NUMBER, start);
+            return -1;
+        }
+        return i;
+    }
+
+    private static int radixOf(char c) {
+        switch (c) {
+            case 'x':
+            case 'X':
+                return 16;
+            case 'b':
+            case 'B':
+                return 2;
+            case 'o':
+            case 'O':
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * The outcome of {@link #recognize(CharSequence, Result)}. Reusable, but not thread-safe.
+     */
+    public static final class Result {
+        private int mStatus;
+        private int mError;
+        private int mPosition;
+        // Positions of the open parentheses, shifted left by one, with the low bit set for calls.
+        private int[] mOpenParentheses = new int[16];
+        private int mDepth;
+
+        public int getStatus() {
+            return mStatus;
+        }
+
+        /**
+         * Returns one of the ERROR_ constants.
+         */
+        public int getError() {
+            return mError;
+        }
+
+        /**
+         * Returns where the problem starts, or -1 if the expression is complete.
+         */
+        public int getPosition() {
+            return mPosition;
+        }
+
+        /**
+         * Returns the number of parentheses left open at the end of the expression.
+         */
+        public int getMissingParentheses() {
+            return mStatus == INVALID ? 0 : mDepth;
+        }
+
+        public boolean isComplete() {
+            return mStatus == COMPLETE;
+        }
+
+        /**
+         * Returns true if the expression is complete once its open parentheses are closed (see
+         * {@link #autoClose}). arity closes them itself, so these expressions can be evaluated.
+         */
+        public boolean canAutoClose() {
+            return mStatus == COMPLETE || mError == ERROR_UNCLOSED_PARENTHESIS;
+        }
+
+        void reset() {
+            mStatus = COMPLETE;
+            mError = ERROR_NONE;
+            mPosition = -1;
+            mDepth = 0;
+        }
+
+        void set(int status, int error, int position) {
+            mStatus = status;
+            mError = error;
+            mPosition = position;
+        }
+
+        void push(int position, boolean call) {
+            if (mDepth == mOpenParentheses.length) {
+                int[] grown = new int[2 * mDepth];
+                System.arraycopy(mOpenParentheses, 0, grown, 0, mDepth);
+                mOpenParentheses = grown;
+            }
+            mOpenParentheses[mDepth++] = (position << 1) | (call ? 1 : 0);
+        }
+
+        void pop() {
+            if (mDepth > 0) {
+                mDepth--;
+            }
+        }
+
+        boolean isInCall() {
+            return mDepth > 0 && (mOpenParentheses[mDepth - 1] & 1) != 0;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+* Copyright (C) 2014 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the 'License');
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an 'AS IS' BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.xlythe.calculator.material;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Translates between the expression shown in the display and the syntax arity understands.
+ * <p>
+ * Translation tables are built once per {@link TokenizerConfig}; translating is a single pass
+ * and safe to call from any thread.
+ */
+public class ExpressionTokenizer {
+    private volatile Translators mTranslators;
+    // The same config in the other angle mode, built the first time it's asked for.
+    private volatile Translators mOtherTranslators;
+
+    public ExpressionTokenizer() {
+        this(TokenizerConfig.DEFAULT);
+    }
+
+    public ExpressionTokenizer(TokenizerConfig config) {
+        setConfig(config);
+    }
+
+    /**
+     * Switches to new symbols or angle mode. The tables are only rebuilt if the config changed.
+     */
+    public void setConfig(TokenizerConfig config) {
+        Translators translators = mTranslators;
+        if (translators != null && translators.config.equals(config)) {
+            return;
+        }
+        mTranslators = createTranslators(config);
+    }
+
+    private Translators createTranslators(TokenizerConfig config) {
+        TokenTranslator.Builder normalizer = new TokenTranslator.Builder();
+        TokenTranslator.Builder localizer = new TokenTranslator.Builder();
+        for (Localizer replacement : generateReplacements(config)) {
+            normalizer.add(replacement.local, replacement.english);
+            localizer.add(replacement.english, replacement.local);
+        }
+        return new Translators(config, normalizer.build(), localizer.build());
+    }
+
+    public TokenizerConfig getConfig() {
+        refreshConfig();
+        return mTranslators.config;
+    }
+
+    /**
+     * Called before every translation. Subclasses whose symbols or angle mode come from outside
+     * (resources, settings) can check them here and call {@link #setConfig}.
+     */
+    protected void refreshConfig() {
+    }
+
+    private List<Localizer> generateReplacements(TokenizerConfig config) {
+        List<Localizer> replacements = new LinkedList<Localizer>();
+        //replacements.add(new Localizer(",", String.valueOf(Constants.MATRIX_SEPARATOR)));
+        replacements.add(new Localizer(".", String.valueOf(Constants.DECIMAL_POINT)));
+        replacements.add(new Localizer("0", "0"));
+        replacements.add(new Localizer("1", "1"));
+        replacements.add(new Localizer("2", "2"));
+        replacements.add(new Localizer("3", "3"));
+        replacements.add(new Localizer("4", "4"));
+        replacements.add(new Localizer("5", "5"));
+        replacements.add(new Localizer("6", "6"));
+        replacements.add(new Localizer("7", "7"));
+        replacements.add(new Localizer("8", "8"));
+        replacements.add(new Localizer("9", "9"));
+        replacements.add(new Localizer("/", config.div));
+        replacements.add(new Localizer("*", config.mul));
+        replacements.add(new Localizer("-", config.sub));
+        replacements.add(new Localizer("cbrt", config.cbrt));
+        replacements.add(new Localizer("asin", Constants.ASIN));
+        replacements.add(new Localizer("acos", Constants.ACOS));
+        replacements.add(new Localizer("atan", Constants.ATAN));
+        replacements.add(new Localizer("sin", Constants.SIN));
+        replacements.add(new Localizer("cos", Constants.COS));
+        replacements.add(new Localizer("tan", Constants.TAN));
+        if (!config.useRadians) {
+            replacements.add(new Localizer("sind", "sin"));
+            replacements.add(new Localizer("cosd", "cos"));
+            replacements.add(new Localizer("tand", "tan"));
+        }
+        replacements.add(new Localizer("ln", "ln"));
+        replacements.add(new Localizer("log","log"));
+        replacements.add(new Localizer("det", "det"));
+        replacements.add(new Localizer("Infinity", "∞"));
+        return replacements;
+    }
+
+    public boolean useRadians() {
+        refreshConfig();
+        return mTranslators.config.useRadians;
+    }
+
+    public String getNormalizedExpression(String expr) {
+        refreshConfig();
+        return mTranslators.normalizer.translate(expr);
+    }
+
+    public String getLocalizedExpression(String expr) {
+        refreshConfig();
+        return mTranslators.localizer.translate(expr);
+    }
+
+    /**
+     * Localizes an expression that was normalized in the given angle mode, like one kept in the
+     * history, with the symbols in use now.
+     */
+    public String getLocalizedExpression(String expr, boolean radians) {
+        refreshConfig();
+        return getTranslators(radians).localizer.translate(expr);
+    }
+
+    private Translators getTranslators(boolean radians) {
+        Translators translators = mTranslators;
+        if (translators.config.useRadians == radians) {
+            return translators;
+        }
+        TokenizerConfig config = translators.config.withRadians(radians);
+        Translators other = mOtherTranslators;
+        if (other == null || !other.config.equals(config)) {
+            other = createTranslators(config);
+            mOtherTranslators = other;
+        }
+        return other;
+    }
+
+    private static class Translators {
+        final TokenizerConfig config;
+        final TokenTranslator normalizer;
+        final TokenTranslator localizer;
+
+        Translators(TokenizerConfig config, TokenTranslator normalizer, TokenTranslator localizer) {
+            this.config = config;
+            this.normalizer = normalizer;
+            this.localizer = localizer;
+        }
+    }
+
+    private static class Localizer {
+        String english;
+        String local;
+
+        Localizer(String english, String local) {
+            this.english = english;
+            this.local = local;
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.xlythe.calculator.material;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An index of the tokens in an expression that's being edited: numbers, operators, names,
+ * parentheses (with how deeply they're nested), spaces and single other characters. Every
+ * character of the text belongs to exactly one token.
+ * <p>
+ * After each edit, {@link #replace} re-reads only the tokens around the edited range. The tokens
+ * are kept in a gap buffer whose gap follows the edits; tokens after the gap store their position,
+ * depth and the spaces before them from the totals at the end of the text, so an edit doesn't
+ * have to update the tokens after it. Finding the token at a position is a binary search.
+ * <p>
+ * The depth after each token is also kept in a tree of minimums over the buffer's slots, so
+ * {@link #findMatchingParenthesis} finds the first or last token that gets back to a depth
+ * without going through the ones in between.
+ * <p>
+ * On top of the index, {@link #getInsertionStart} and {@link #getDeletionStart} implement the
+ * keypad's editing rules without scanning the text around the cursor.
+ */
+public final class ExpressionTokens {
+    /** A run of digits and decimal points. */
+    public static final int NUMBER = 0;
+    /** One of + − × ÷ ^. */
+    public static final int OPERATOR = 1;
+    /** A run of letters, e.g. a function name. */
+    public static final int NAME = 2;
+    public static final int LEFT_PARENTHESIS = 3;
+    public static final int RIGHT_PARENTHESIS = 4;
+    /** Any other single character. */
+    public static final int OTHER = 5;
+    /** A space, which only formats the expression, like the separators between groups of digits. */
+    public static final int SPACE = 6;
+
+    private int[] mStarts;
+    private int[] mTypes;
+    private int[] mDepths;
+    // How many spaces are before the token.
+    private int[] mSpaces;
+    // The offset of the first decimal point in a number, or -1.
+    private int[] mDecimalPoints;
+    // A tree of the smallest depth after a token, stored like mDepths, with the slots as its
+    // leaves: node 1 is the root, node n has children 2n and 2n + 1, and the slot i is node
+    // capacity + i. The gap's slots hold Integer.MAX_VALUE.
+    private int[] mMinDepths;
+    private int mGapStart;
+    private int mGapEnd;
+    // The length of the text, the depth at its end and its spaces, which tokens after the gap are
+    // stored against.
+    private int mLength;
+    private int mDepth;
+    private int mSpaceCount;
+
+    public ExpressionTokens() {
+        this(16);
+    }
+
+    public ExpressionTokens(int capacity) {
+        // The tree needs as many slots as a full binary tree has leaves.
+        capacity = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1);
+        mStarts = new int[capacity];
+        mTypes = new int[capacity];
+        mDepths = new int[capacity];
+        mSpaces = new int[capacity];
+        mDecimalPoints = new int[capacity];
+        mMinDepths = new int[2 * capacity];
+        Arrays.fill(mMinDepths, Integer.MAX_VALUE);
+        mGapEnd = capacity;
+    }
+
+    /**
+     * Updates the index after {@code [start, end)} of the text was replaced by {@code count}
+     * characters. {@code text} is the text after the edit.
+     */
+    public void replace(CharSequence text, int start, int end, int count) {
+        if (start < 0 || end > mLength || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + mLength);
+        }
+        int size = getCount();
+
+        // Characters next to the edit may join the new ones in a token, so the tokens touching
+        // start - 1 and end are read again. Everything outside of them keeps its boundaries.
+        int first = start > 0 ? indexAt(start - 1) : 0;
+        int last = end < mLength ? indexAt(end) : size - 1;
+        int from = first < size ? startOf(first) : 0;
+        int to = last + 1 < size ? startOf(last + 1) : mLength;
+        int depth = first < size ? depthOf(first) : mDepth;
+        int spaces = first < size ? spacesOf(first) : mSpaceCount;
+
+        moveGap(first);
+        int removedBalance = 0;
+        int removedSpaces = 0;
+        for (int i = first; i <= last; i++) {
+            removedBalance += balance(mTypes[mGapEnd]);
+            removedSpaces += mTypes[mGapEnd] == SPACE ? 1 : 0;
+            setMinDepth(mGapEnd, Integer.MAX_VALUE);
+            mGapEnd++;
+        }
+        int delta = count - (end - start);
+        mLength += delta;
+        mDepth += lex(text, from, to + delta, depth, spaces) - removedBalance;
+        int addedSpaces = 0;
+        for (int i = first; i < mGapStart; i++) {
+            addedSpaces += mTypes[i] == SPACE ? 1 : 0;
+        }
+        mSpaceCount += addedSpaces - removedSpaces;
+    }
+
+    public int getCount() {
+        return mStarts.length - (mGapEnd - mGapStart);
+    }
+
+    /**
+     * Returns the index of the token that contains the character at {@code position}, or -1 if
+     * there's no such character.
+     */
+    public int indexAt(int position) {
+        if (position < 0 || position >= mLength) {
+            return -1;
+        }
+        // Edits, and so most lookups, happen around the gap.
+        int lo = 0;
+        int hi = getCount() - 1;
+        if (mGapStart > 0 && mStarts[mGapStart - 1] <= position) {
+            if (mGapStart > hi || position < mLength - mStarts[mGapEnd]) {
+                return mGapStart - 1;
+            }
+            lo = mGapStart;
+        } else if (mGapStart > 0) {
+            hi = mGapStart - 1;
+        }
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (startOf(mid) <= position) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    public int getStart(int index) {
+        physical(index);
+        return startOf(index);
+    }
+
+    public int getEnd(int index) {
+        return index + 1 < getCount() ? getStart(index + 1) : mLength;
+    }
+
+    public int getType(int index) {
+        return mTypes[physical(index)];
+    }
+
+    /**
+     * Returns how many parentheses are open right before the token. This is negative if more
+     * parentheses were closed than opened.
+     */
+    public int getDepth(int index) {
+        physical(index);
+        return depthOf(index);
+    }
+
+    /**
+     * Returns how many parentheses are left open at the end of the text.
+     */
+    public int getDepth() {
+        return mDepth;
+    }
+
+    /**
+     * Returns how many spaces are in the text before {@code position}, e.g. to map a position to
+     * the same place in the text without them.
+     */
+    public int getSpacesBefore(int position) {
+        if (position >= mLength) {
+            return mSpaceCount;
+        }
+        // A space is a token of its own, so the ones before a position are the ones before its token.
+        return position <= 0 ? 0 : spacesOf(indexAt(position));
+    }
+
+    /**
+     * Returns the index of the parenthesis that closes or opens the one at {@code index}, or -1
+     * if it isn't a parenthesis or has no match.
+     */
+    public int findMatchingParenthesis(int index) {
+        int type = getType(index);
+        int depth = getDepth(index);
+        if (type == LEFT_PARENTHESIS) {
+            // The depth only changes by one a token, so the first token after this one to get
+            // back to its depth is the parenthesis that closes it.
+            return findFirstDepthAtMost(index + 1, getCount(), depth);
+        } else if (type == RIGHT_PARENTHESIS) {
+            // Likewise, the last token before this one to leave the depth below it is followed by
+            // the parenthesis that opens it. Without one, the text starts at that depth or above.
+            int before = findLastDepthAtMost(0, index - 1, depth - 1);
+            if (before >= 0 || depth > 0) {
+                return before + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Applies the keypad's rules to typing {@code c} at {@code cursor}: no second decimal point
+     * in a number, no two minuses in a row, no leading operator other than minus, and an operator
+     * replaces the operators before it. {@code text} is the indexed text.
+     *
+     * @return Where the character goes, replacing the text from there to the cursor, or -1 if
+     * it's rejected.
+     */
+    public int getInsertionStart(CharSequence text, int cursor, char c) {
+        if (c == Constants.DECIMAL_POINT) {
+            int index = indexAt(cursor - 1);
+            if (index >= 0 && getType(index) == NUMBER) {
+                int decimalPoint = mDecimalPoints[physical(index)];
+                if (decimalPoint >= 0 && getStart(index) + decimalPoint < cursor) {
+                    return -1;
+                }
+            }
+            return cursor;
+        }
+        if (c == Constants.MINUS) {
+            return cursor > 0 && text.charAt(cursor - 1) == Constants.MINUS ? -1 : cursor;
+        }
+        if (!Solver.isOperator(c)) {
+            return cursor;
+        }
+        int start = cursor;
+        for (int i = indexAt(cursor - 1); i >= 0 && getType(i) == OPERATOR; i--) {
+            start = getStart(i);
+        }
+        return start == 0 ? -1 : start;
+    }
+
+    /**
+     * Returns where a backspace at {@code cursor} starts deleting: at the first of
+     * {@code keywords} (a name and an opening parenthesis, e.g. "sin(") the text before the
+     * cursor ends with, or else one character back. {@code text} is the indexed text.
+     */
+    public int getDeletionStart(CharSequence text, int cursor, List<String> keywords) {
+        int index = indexAt(cursor - 1);
+        if (index > 0 && getType(index) == LEFT_PARENTHESIS && getType(index - 1) == NAME) {
+            int nameStart = getStart(index - 1);
+            for (int i = 0; i < keywords.size(); i++) {
+                String keyword = keywords.get(i);
+                int start = cursor - keyword.length();
+                if (start >= nameStart && regionMatches(text, start, keyword)) {
+                    return start;
+                }
+            }
+        }
+        return cursor - 1;
+    }
+
+    private static boolean regionMatches(CharSequence text, int start, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (text.charAt(start + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the tokens of {@code text[from, to)} before the gap.
+     *
+     * @return How many more parentheses they open than close.
+     */
+    private int lex(CharSequence text, int from, int to, int depth, int spaces) {
+        int balance = 0;
+        int i = from;
+        while (i < to) {
+            int start = i;
+            char c = text.charAt(i++);
+            int type = typeOf(c);
+            int decimalPoint = c == Constants.DECIMAL_POINT ? 0 : -1;
+            if (type == NUMBER || type == NAME) {
+                while (i < to && typeOf(text.charAt(i)) == type) {
+                    if (decimalPoint < 0 && text.charAt(i) == Constants.DECIMAL_POINT) {
+                        decimalPoint = i - start;
+                    }
+                    i++;
+                }
+            }
+            if (mGapStart == mGapEnd) {
+                grow();
+            }
+            mStarts[mGapStart] = start;
+            mTypes[mGapStart] = type;
+            mDepths[mGapStart] = depth + balance;
+            mSpaces[mGapStart] = spaces;
+            mDecimalPoints[mGapStart] = decimalPoint;
+            setMinDepth(mGapStart, depth + balance + balance(type));
+            mGapStart++;
+            balance += balance(type);
+            spaces += type == SPACE ? 1 : 0;
+        }
+        return balance;
+    }
+
+    private static int typeOf(char c) {
+        if (Solver.isDigit(c) || c == Constants.DECIMAL_POINT) {
+            return NUMBER;
+        } else if (Solver.isOperator(c)) {
+            return OPERATOR;
+        } else if (c == Constants.LEFT_PAREN) {
+            return LEFT_PARENTHESIS;
+        } else if (c == Constants.RIGHT_PAREN) {
+            return RIGHT_PARENTHESIS;
+        } else if (Character.isLetter(c)) {
+            return NAME;
+        } else if (c == ' ') {
+            return SPACE;
+        } else {
+            return OTHER;
+        }
+    }
+
+    private static int balance(int type) {
+        return type == LEFT_PARENTHESIS ? 1 : type == RIGHT_PARENTHESIS ? -1 : 0;
+    }
+
+    // Like getStart and getDepth, for indices known to be valid.
+    private int startOf(int index) {
+        return index < mGapStart ? mStarts[index] : mLength - mStarts[index + mGapEnd - mGapStart];
+    }
+
+    private int depthOf(int index) {
+        return index < mGapStart ? mDepths[index] : mDepths[index + mGapEnd - mGapStart] + mDepth;
+    }
+
+    private int spacesOf(int index) {
+        return index < mGapStart ? mSpaces[index] : mSpaces[index + mGapEnd - mGapStart] + mSpaceCount;
+    }
+
+    private int physical(int index) {
+        if (index < 0 || index >= getCount()) {
+            throw new IndexOutOfBoundsException("index " + index + ", count " + getCount());
+        }
+        return index < mGapStart ? index : index + mGapEnd - mGapStart;
+    }
+
+    /**
+     * Returns the first token in {@code [from, to)} with a depth after it of at most
+     * {@code depth}, or -1.
+     */
+    private int findFirstDepthAtMost(int from, int to, int depth) {
+        int capacity = mStarts.length;
+        int gap = mGapEnd - mGapStart;
+        if (from < mGapStart) {
+            int slot = findFirst(1, 0, capacity, from, Math.min(to, mGapStart), depth);
+            if (slot >= 0) {
+                return slot;
+            }
+        }
+        if (to > mGapStart) {
+            int slot = findFirst(1, 0, capacity, Math.max(from, mGapStart) + gap, to + gap, depth - mDepth);
+            if (slot >= 0) {
+                return slot - gap;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the last token in {@code [from, to)} with a depth after it of at most
+     * {@code depth}, or -1.
+     */
+    private int findLastDepthAtMost(int from, int to, int depth) {
+        int capacity = mStarts.length;
+        int gap = mGapEnd - mGapStart;
+        if (to > mGapStart) {
+            int slot = findLast(1, 0, capacity, Math.max(from, mGapStart) + gap, to + gap, depth - mDepth);
+            if (slot >= 0) {
+                return slot - gap;
+            }
+        }
+        if (from < mGapStart) {
+            return findLast(1, 0, capacity, from, Math.min(to, mGapStart), depth);
+        }
+        return -1;
+    }
+
+    // The first and last slot in [from, to) under node, which covers [nodeFrom, nodeTo), that
+    // holds at most value.
+    private int findFirst(int node, int nodeFrom, int nodeTo, int from, int to, int value) {
+        if (nodeTo <= from || to <= nodeFrom || mMinDepths[node] > value) {
+            return -1;
+        }
+        if (nodeTo - nodeFrom == 1) {
+            return nodeFrom;
+        }
+        int mid = (nodeFrom + nodeTo) >>> 1;
+        int slot = findFirst(2 * node, nodeFrom, mid, from, to, value);
+        return slot >= 0 ? slot : findFirst(2 * node + 1, mid, nodeTo, from, to, value);
+    }
+
+    private int findLast(int node, int nodeFrom, int nodeTo, int from, int to, int value) {
+        if (nodeTo <= from || to <= nodeFrom || mMinDepths[node] > value) {
+            return -1;
+        }
+        if (nodeTo - nodeFrom == 1) {
+            return nodeFrom;
+        }
+        int mid = (nodeFrom + nodeTo) >>> 1;
+        int slot = findLast(2 * node + 1, mid, nodeTo, from, to, value);
+        return slot >= 0 ? slot : findLast(2 * node, nodeFrom, mid, from, to, value);
+    }
+
+    private void setMinDepth(int slot, int value) {
+        int node = mStarts.length + slot;
+        mMinDepths[node] = value;
+        for (node >>>= 1; node > 0; node >>>= 1) {
+            mMinDepths[node] = Math.min(mMinDepths[2 * node], mMinDepths[2 * node + 1]);
+        }
+    }
+
+    private void moveGap(int index) {
+        while (mGapStart > index) {
+            mGapStart--;
+            mGapEnd--;
+            mStarts[mGapEnd] = mLength - mStarts[mGapStart];
+            mTypes[mGapEnd] = mTypes[mGapStart];
+            mDepths[mGapEnd] = mDepths[mGapStart] - mDepth;
+            mSpaces[mGapEnd] = mSpaces[mGapStart] - mSpaceCount;
+            mDecimalPoints[mGapEnd] = mDecimalPoints[mGapStart];
+            setMinDepth(mGapEnd, mDepths[mGapEnd] + balance(mTypes[mGapEnd]));
+            setMinDepth(mGapStart, Integer.MAX_VALUE);
+        }
+        while (mGapStart < index) {
+            mStarts[mGapStart] = mLength - mStarts[mGapEnd];
+            mTypes[mGapStart] = mTypes[mGapEnd];
+            mDepths[mGapStart] = mDepths[mGapEnd] + mDepth;
+            mSpaces[mGapStart] = mSpaces[mGapEnd] + mSpaceCount;
+            mDecimalPoints[mGapStart] = mDecimalPoints[mGapEnd];
+            setMinDepth(mGapStart, mDepths[mGapStart] + balance(mTypes[mGapStart]));
+            setMinDepth(mGapEnd, Integer.MAX_VALUE);
+            mGapStart++;
+            mGapEnd++;
+        }
+    }
+
+    private void grow() {
+        int capacity = 2 * mStarts.length;
+        int tail = mStarts.length - mGapEnd;
+        mStarts = grow(mStarts, capacity, tail);
+        mTypes = grow(mTypes, capacity, tail);
+        mDepths = grow(mDepths, capacity, tail);
+        mSpaces = grow(mSpaces, capacity, tail);
+        mDecimalPoints = grow(mDecimalPoints, capacity, tail);
+        mGapEnd = capacity - tail;
+
+        mMinDepths = new int[2 * capacity];
+        Arrays.fill(mMinDepths, capacity, 2 * capacity, Integer.MAX_VALUE);
+        for (int i = 0; i < capacity; i++) {
+            if (i < mGapStart || i >= mGapEnd) {
+                mMinDepths[capacity + i] = mDepths[i] + balance(mTypes[i]);
+            }
+        }
+        for (int node = capacity - 1; node > 0; node--) {
+            mMinDepths[node] = Math.min(mMinDepths[2 * node], mMinDepths[2 * node + 1]);
+        }
+    }
+
+    private int[] grow(int[] array, int capacity, int tail) {
+        int[] grown = new int[capacity];
+        System.arraycopy(array, 0, grown, 0, mGapStart);
+        System.arraycopy(array, array.length - tail, grown, capacity - tail, tail);
+        return grown;
+    }
+}
@@ -0,0 +1,498 @@
+package com.xlythe.calculator.material;
+
+import androidx.annotation.Nullable;
+
+import org.javia.arity.ContextFunction;
+import org.javia.arity.EvalContext;
+import org.javia.arity.Function;
+import org.javia.arity.Symbols;
+import org.javia.arity.SyntaxException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Samples an expression as y = f(x) for a graph, on as many threads as there are cores.
+ * <p>
+ * The expression is compiled once. The x axis is cut into tiles, each sampled by one task into
+ * its own {@code float[]} of points. Tiles are sampled every {@link #BASE_SPACING} pixels, and
+ * each interval is halved, up to {@link #MAX_DEPTH} times, where the curve bends away from a
+ * straight line or leaves its domain. A jump that halving can't close is a discontinuity and is
+ * left as a gap instead of being drawn.
+ * <p>
+ * Tiles are laid out on a grid that only depends on the scale rounded down to a power of two, so
+ * panning, or zooming within a power of two, reuses every tile still in view and only samples
+ * the ones it brings in. Crossing a power of two samples the view again, at the new scale, while
+ * the old tiles are drawn in the meantime. Tiles out of view go back to a pool, so their buffers
+ * are reused.
+ * <p>
+ * Apart from {@link #shutdown}, call it from one thread, like the UI thread; sampling happens on
+ * its own threads, which say when they're done with {@link OnSampledListener}.
+ */
+public final class FunctionSampler {
+    // Base samples are this many pixels apart, at the scale of the grid.
+    private static final int BASE_SPACING = 8;
+    // How many times an interval between base samples may be halved.
+    private static final int MAX_DEPTH = 5;
+    // How far, in pixels, the curve may stray from a straight line between two samples.
+    private static final double TOLERANCE = 0.25;
+    // A jump of at least this many pixels between two of the finest samples is a discontinuity,
+    // unless the sample between them is on the way.
+    private static final double MIN_JUMP = 32;
+    private static final int TILE_INTERVALS = 16;
+    // A tile's points, at most: every finest sample, and a gap between each of them.
+    private static final int MAX_POINTS = 2 * TILE_INTERVALS * (1 << MAX_DEPTH) + 1;
+    // Tiles sampled beyond each side of the view, so a pan finds them ready.
+    private static final int MARGIN_TILES = 2;
+    // Points further than this many view heights off screen are pulled in, as drawing huge
+    // coordinates is slow or wrong.
+    private static final float MAX_OVERDRAW = 1f;
+    private static final double[] NO_ARGS = new double[0];
+
+    private final ExpressionTokenizer mTokenizer;
+    private final Symbols mSymbols = ArityCompiler.newSymbols();
+    private final ExpressionRecognizer.Result mRecognition = new ExpressionRecognizer.Result();
+    private final int mThreads;
+    private final ThreadLocal<EvalContext> mContexts = new ThreadLocal<EvalContext>() {
+        @Override
+        protected EvalContext initialValue() {
+            return new EvalContext();
+        }
+    };
+    @Nullable
+    private ExecutorService mWorkers;
+    @Nullable
+    private volatile OnSampledListener mListener;
+
+    @Nullable
+    private String mExpression;
+    private boolean mRadians;
+    @Nullable
+    private Function mFunction;
+
+    // Tiles of the current generation are on the current grid, for the current function.
+    private long mGeneration;
+    private int mExponent = Integer.MIN_VALUE;
+    private double mLeft;
+    private double mTop;
+    private double mUnitsPerPixel = 1;
+    private int mWidth;
+    private int mHeight;
+    private final ArrayList<Tile> mTiles = new ArrayList<>();
+    private final ArrayDeque<Tile> mPool = new ArrayDeque<>();
+    private float[] mLines = new float[0];
+
+    public FunctionSampler(ExpressionTokenizer tokenizer) {
+        this(tokenizer, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads How many tiles are sampled at the same time.
+     */
+    public FunctionSampler(ExpressionTokenizer tokenizer, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads <= 0");
+        }
+        mTokenizer = tokenizer;
+        mThreads = threads;
+    }
+
+    /**
+     * Graphs {@code expr}, in x. Returns false, and graphs nothing, if it's incomplete, invalid or
+     * in more than one variable.
+     */
+    public boolean setExpression(String expr) {
+        expr = mTokenizer.getNormalizedExpression(expr);
+        boolean radians = mTokenizer.useRadians();
+        if (expr.equals(mExpression) && radians == mRadians) {
+            return mFunction != null;
+        }
+        mExpression = expr;
+        mRadians = radians;
+        mFunction = compile(expr);
+        mGeneration++;
+        // Nothing sampled so far is of this function.
+        for (Tile tile : mTiles) {
+            tile.cancelled = true;
+        }
+        update();
+        return mFunction != null;
+    }
+
+    @Nullable
+    private Function compile(String expr) {
+        ExpressionRecognizer.recognize(expr, mRecognition);
+        if (!mRecognition.canAutoClose()) {
+            return null;
+        }
+        try {
+            Function function = ArityCompiler.compile(mSymbols, ExpressionRecognizer.autoClose(expr, mRecognition));
+            return function.arity() <= 1 ? function : null;
+        } catch (SyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Shows the part of the graph whose top left corner is at {@code (left, top)}, in the graph's
+     * units, and that's {@code width} by {@code height} pixels. Samples whatever it needs to.
+     */
+    public void setViewport(double left, double top, double unitsPerPixel, int width, int height) {
+        if (!(unitsPerPixel > 0) || Double.isInfinite(unitsPerPixel)) {
+            throw new IllegalArgumentException("unitsPerPixel must be positive");
+        }
+        int exponent = Math.getExponent(unitsPerPixel);
+        if (exponent != mExponent) {
+            mExponent = exponent;
+            mGeneration++;
+        }
+        mLeft = left;
+        mTop = top;
+        mUnitsPerPixel = unitsPerPixel;
+        mWidth = Math.max(width, 0);
+        mHeight = Math.max(height, 0);
+        update();
+    }
+
+    private void update() {
+        trim();
+        if (mFunction == null || mWidth == 0 || mExponent == Integer.MIN_VALUE) {
+            return;
+        }
+        double tileWidth = tileWidth(Math.scalb(1.0, mExponent));
+        long first = (long) Math.floor(mLeft / tileWidth);
+        long last = (long) Math.floor(getRight() / tileWidth);
+        // The tiles in view come first, then the ones around them.
+        for (long index = first; index <= last; index++) {
+            obtainTile(index);
+        }
+        for (int i = 1; i <= MARGIN_TILES; i++) {
+            obtainTile(first - i);
+            obtainTile(last + i);
+        }
+    }
+
+    private void obtainTile(long index) {
+        for (int i = 0; i < mTiles.size(); i++) {
+            Tile tile = mTiles.get(i);
+            if (tile.index == index && tile.generation == mGeneration && !tile.cancelled) {
+                return;
+            }
+        }
+        Tile tile = mPool.poll();
+        if (tile == null) {
+            tile = new Tile();
+        }
+        double scale = Math.scalb(1.0, mExponent);
+        tile.index = index;
+        tile.generation = mGeneration;
+        tile.scale = scale;
+        tile.start = index * tileWidth(scale);
+        tile.function = mFunction;
+        tile.size = 0;
+        tile.sampled = false;
+        tile.cancelled = false;
+        mTiles.add(tile);
+        getWorkers().execute(tile);
+    }
+
+    /**
+     * Lets go of the tiles that aren't needed anymore: those of another function, those too far
+     * from the view, and those of another scale once the view is sampled at this one. Tiles still
+     * being sampled are only cancelled, and let go of once they're done.
+     */
+    private void trim() {
+        boolean complete = isComplete();
+        double scale = Math.scalb(1.0, mExponent);
+        double keep = (2 * MARGIN_TILES) * tileWidth(scale);
+        double left = mLeft - keep;
+        double right = getRight() + keep;
+        for (int i = mTiles.size() - 1; i >= 0; i--) {
+            Tile tile = mTiles.get(i);
+            boolean current = tile.generation == mGeneration;
+            if (!tile.cancelled
+                    && (current || !complete)
+                    && tile.start < right && tile.start + tileWidth(tile.scale) > left) {
+                continue;
+            }
+            tile.cancelled = true;
+            if (tile.sampled) {
+                // Order doesn't matter, so the last tile takes its place.
+                mTiles.set(i, mTiles.get(mTiles.size() - 1));
+                mTiles.remove(mTiles.size() - 1);
+                tile.function = null;
+                mPool.push(tile);
+            }
+        }
+    }
+
+    /**
+     * Returns whether every tile in view is sampled at the current scale.
+     */
+    private boolean isComplete() {
+        if (mFunction == null || mExponent == Integer.MIN_VALUE) {
+            return true;
+        }
+        double tileWidth = tileWidth(Math.scalb(1.0, mExponent));
+        long first = (long) Math.floor(mLeft / tileWidth);
+        long last = (long) Math.floor(getRight() / tileWidth);
+        int sampled = 0;
+        for (int i = 0; i < mTiles.size(); i++) {
+            Tile tile = mTiles.get(i);
+            if (tile.generation == mGeneration && !tile.cancelled && tile.sampled
+                    && tile.index >= first && tile.index <= last) {
+                sampled++;
+            }
+        }
+        return sampled == last - first + 1;
+    }
+
+    /**
+     * Turns the sampled points in view into line segments on screen, in pixels from the top left
+     * corner of the view, for {@code Canvas.drawLines}: 4 floats per segment, in
+     * {@link #getLines}. Returns how many floats there are.
+     * <p>
+     * The segments' buffer is reused, so nothing is allocated unless there are more than ever.
+     */
+    public int project() {
+        trim();
+        boolean complete = isComplete();
+        double right = getRight();
+        int count = 0;
+        for (int i = 0; i < mTiles.size(); i++) {
+            Tile tile = mTiles.get(i);
+            if (!tile.sampled || tile.cancelled || (complete && tile.generation != mGeneration)) {
+                continue;
+            }
+            if (tile.start > right || tile.start + tileWidth(tile.scale) < mLeft) {
+                continue;
+            }
+            count = project(tile, count);
+        }
+        return count;
+    }
+
+    private int project(Tile tile, int count) {
+        int size = tile.size;
+        if (mLines.length < count + 4 * size) {
+            float[] lines = new float[Math.max(2 * mLines.length, count + 4 * size)];
+            System.arraycopy(mLines, 0, lines, 0, count);
+            mLines = lines;
+        }
+        float[] points = tile.points;
+        float[] lines = mLines;
+        double pixelsPerUnit = 1 / mUnitsPerPixel;
+        double originX = (tile.start - mLeft) * pixelsPerUnit;
+        double originY = (mTop - tile.originY) * pixelsPerUnit;
+        float minY = -MAX_OVERDRAW * mHeight;
+        float maxY = (1 + MAX_OVERDRAW) * mHeight;
+
+        float lastX = 0;
+        float lastY = Float.NaN;
+        for (int i = 0; i < size; i++) {
+            float y = points[2 * i + 1];
+            if (Float.isNaN(y)) {
+                lastY = Float.NaN;
+                continue;
+            }
+            float x = (float) (originX + points[2 * i] * pixelsPerUnit);
+            y = (float) (originY - y * pixelsPerUnit);
+            y = Math.max(minY, Math.min(maxY, y));
+            // Segments entirely above or below the view are left out.
+            if (!Float.isNaN(lastY) && !(y == lastY && (y == minY || y == maxY))) {
+                lines[count++] = lastX;
+                lines[count++] = lastY;
+                lines[count++] = x;
+                lines[count++] = y;
+            }
+            lastX = x;
+            lastY = y;
+        }
+        return count;
+    }
+
+    /**
+     * The segments made by the last {@link #project}.
+     */
+    public float[] getLines() {
+        return mLines;
+    }
+
+    /**
+     * Tells {@code listener} when a tile is sampled and the graph can be drawn again. It's called
+     * on a sampling thread.
+     */
+    public void setOnSampledListener(@Nullable OnSampledListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Stops the sampling threads. The sampler can still be used afterwards; they're started again
+     * when there's something to sample. Tiles that weren't sampled yet are sampled again the next
+     * time the viewport is set.
+     */
+    public synchronized void shutdown() {
+        if (mWorkers != null) {
+            for (Runnable runnable : mWorkers.shutdownNow()) {
+                // Never started. Cancelled and done, it's let go of like any other tile, and
+                // taken from the pool again when it's needed.
+                Tile tile = (Tile) runnable;
+                tile.cancelled = true;
+                tile.sampled = true;
+            }
+            mWorkers = null;
+        }
+    }
+
+    private synchronized ExecutorService getWorkers() {
+        if (mWorkers == null) {
+            mWorkers = Executors.newFixedThreadPool(mThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "CalculatorGraphSampler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mWorkers;
+    }
+
+    private double getRight() {
+        return mLeft + mWidth * mUnitsPerPixel;
+    }
+
+    private static double tileWidth(double scale) {
+        return scale * BASE_SPACING * TILE_INTERVALS;
+    }
+
+    /**
+     * Waits until every tile asked for so far is sampled. For tests and benchmarks.
+     */
+    void awaitSampled() {
+        for (int i = 0; i < mTiles.size(); i++) {
+            Tile tile = mTiles.get(i);
+            while (!tile.sampled) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * The x axis from {@code start} for {@link #TILE_INTERVALS} base intervals, and its points,
+     * relative to {@code start} in x and to {@code originY} in y. A gap is a point whose y is NaN.
+     * <p>
+     * Being relative keeps the floats precise when zoomed in far from the origin, where whole
+     * coordinates would round to the same float across many pixels.
+     */
+    private final class Tile implements Runnable {
+        final float[] points = new float[2 * MAX_POINTS];
+
+        // Set before sampling starts.
+        long index;
+        long generation;
+        double scale;
+        double start;
+        @Nullable
+        Function function;
+
+        // Written by the sampling thread before sampled is set.
+        int size;
+        // The first finite y, or NaN if there's none.
+        double originY;
+        volatile boolean sampled;
+        volatile boolean cancelled;
+
+        @Override
+        public void run() {
+            try {
+                if (!cancelled) {
+                    sample(mContexts.get());
+                }
+            } catch (RuntimeException e) {
+                // arity failing is like the function being undefined here.
+                size = 0;
+                originY = Double.NaN;
+            } finally {
+                sampled = true;
+            }
+            OnSampledListener listener = mListener;
+            if (!cancelled && listener != null) {
+                listener.onSampled();
+            }
+        }
+
+        private void sample(EvalContext context) {
+            double step = scale * BASE_SPACING;
+            originY = Double.NaN;
+            double x0 = start;
+            double y0 = eval(context, x0);
+            add(x0, y0);
+            for (int i = 1; i <= TILE_INTERVALS; i++) {
+                if (cancelled) {
+                    return;
+                }
+                double x1 = start + i * step;
+                double y1 = eval(context, x1);
+                refine(context, x0, y0, x1, y1, 0);
+                add(x1, y1);
+                x0 = x1;
+                y0 = y1;
+            }
+        }
+
+        /**
+         * Adds the points needed between {@code x0} and {@code x1}, not including them.
+         */
+        private void refine(EvalContext context, double x0, double y0, double x1, double y1, int depth) {
+            double x = (x0 + x1) / 2;
+            double y = eval(context, x);
+            boolean finite = Double.isFinite(y);
+            boolean finite0 = Double.isFinite(y0);
+            boolean finite1 = Double.isFinite(y1);
+            if (depth < MAX_DEPTH) {
+                boolean bends = finite0 != finite || finite != finite1
+                        || (finite && finite0 && finite1 && Math.abs(y - (y0 + y1) / 2) > TOLERANCE * scale);
+                if (bends) {
+                    refine(context, x0, y0, x, y, depth + 1);
+                    add(x, y);
+                    refine(context, x, y, x1, y1, depth + 1);
+                }
+                return;
+            }
+            // As fine as it gets. A steep curve passes through the middle; a jump doesn't.
+            if (finite && finite0 && finite1 && Math.abs(y1 - y0) > MIN_JUMP * scale
+                    && !(Math.min(y0, y1) < y && y < Math.max(y0, y1))) {
+                add(x, Double.NaN);
+            }
+        }
+
+        private double eval(EvalContext context, double x) {
+            Function function = this.function;
+            if (function instanceof ContextFunction) {
+                // Our own context rather than the global one Function.eval() locks.
+                ContextFunction contextFunction = (ContextFunction) function;
+                return function.arity() == 0 ? contextFunction.eval(NO_ARGS, context) : contextFunction.eval(x, context);
+            }
+            return function.arity() == 0 ? function.eval() : function.eval(x);
+        }
+
+        private void add(double x, double y) {
+            points[2 * size] = (float) (x - start);
+            if (Double.isNaN(originY) && Double.isFinite(y)) {
+                originY = y;
+            }
+            // Beyond a float's range, a point is still far off screen.
+            double dy = y - originY;
+            points[2 * size + 1] = Double.isFinite(y) ? (float) Math.max(-Float.MAX_VALUE, Math.min(Float.MAX_VALUE, dy)) : Float.NaN;
+            size++;
+        }
+    }
+
+    public interface OnSampledListener {
+        void onSampled();
+    }
+}
@@ -0,0 +1,432 @@
+package com.xlythe.calculator.material;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Finds calculations in a {@link HistoryStore} by part of their expression or result, e.g.
+ * "×1.19" or "=2450".
+ * <p>
+ * Each entry is searched as it's displayed: its expression localized in the angle mode it was
+ * saved in, "=", and its result as the display formats it. Queries are normalized and localized
+ * again, so "*" finds "×". Switching the angle mode doesn't change the searched text, but new
+ * symbols (after a change of locale) rebuild the index. The index maps every three characters (trigram) of that text to the
+ * entries containing them, in a list of ascending entry numbers delta-encoded as varints. A
+ * query's candidates are the entries in the lists of all of its trigrams; each is then read from
+ * the store and checked, so matches are always exact. Queries shorter than a trigram, and entries
+ * the index hasn't caught up with, are checked directly, newest first.
+ * <p>
+ * The index follows the store on its own background thread: new entries are added as they're
+ * appended, and it's rebuilt from scratch when a compaction renumbers the entries. Until the
+ * rebuild is done, only the newest entries are checked, so queries may miss older ones.
+ */
+public final class HistorySearchIndex implements Closeable {
+    // How many of the newest candidates, or entries for short queries, are checked.
+    private static final int MAX_CHECKED = 1000;
+    // Separates the expression from the result in the searched text.
+    private static final char RESULT_SEPARATOR = '=';
+
+    private final HistoryStore mStore;
+    private final ExpressionTokenizer mTokenizer;
+    private final ExecutorService mWorker;
+    private final AtomicBoolean mUpdatePending = new AtomicBoolean();
+    // Only used on the worker thread.
+    private final StringBuilder mResultBuilder = new StringBuilder();
+
+    private volatile Trigrams mTrigrams = new Trigrams(-1, TokenizerConfig.DEFAULT);
+
+    private final HistoryStore.OnChangeListener mChangeListener = new HistoryStore.OnChangeListener() {
+        @Override
+        public void onHistoryChanged(HistoryStore store) {
+            scheduleUpdate();
+        }
+    };
+
+    private final Runnable mUpdate = new Runnable() {
+        @Override
+        public void run() {
+            mUpdatePending.set(false);
+            try {
+                update();
+            } catch (IOException | IndexOutOfBoundsException e) {
+                // The next change tries again; until then, newer entries are checked directly.
+            }
+        }
+    };
+
+    /**
+     * Starts building the index in the background.
+     *
+     * @param tokenizer Localizes the entries and queries, like the display.
+     */
+    public HistorySearchIndex(HistoryStore store, ExpressionTokenizer tokenizer) {
+        mStore = store;
+        mTokenizer = tokenizer;
+        mWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "CalculatorHistorySearch");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        store.addOnChangeListener(mChangeListener);
+        scheduleUpdate();
+    }
+
+    /**
+     * Returns up to {@code limit} entries containing {@code query}, best first: those where it
+     * starts the expression or the result, then the rest, newest first within each. Blocks to
+     * read the candidates, which takes milliseconds.
+     */
+    public List<Match> search(String query, int limit) throws IOException {
+        String localized = mTokenizer.getLocalizedExpression(mTokenizer.getNormalizedExpression(query.trim()));
+        if (localized.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        Trigrams trigrams = mTrigrams;
+        if (!trigrams.config.equals(mTokenizer.getConfig())) {
+            // Built with other symbols; until it's rebuilt, entries are checked directly.
+            scheduleUpdate();
+        }
+        int size = mStore.size();
+        ArrayList<Match> matches = new ArrayList<>();
+        int checked = 0;
+        // Once there are enough of the best matches, older entries can't make the cut.
+        int best = 0;
+
+        // Entries the index doesn't have yet, newest first. An index of entries that were
+        // renumbered since, or of other symbols, has none of them.
+        int indexed = trigrams.generation == mStore.getGeneration() && trigrams.config.equals(mTokenizer.getConfig())
+                ? Math.min(trigrams.count, size) : 0;
+        int next = size - 1;
+        for (; next >= indexed && checked < MAX_CHECKED && best < limit; next--, checked++) {
+            best += check(next, localized, matches);
+        }
+        // Then the ones it has: all of them for a short query, or its candidates.
+        if (localized.length() < 3) {
+            for (; next >= 0 && checked < MAX_CHECKED && best < limit; next--, checked++) {
+                best += check(next, localized, matches);
+            }
+        } else if (checked < MAX_CHECKED && best < limit) {
+            int[] candidates = trigrams.candidates(localized, next, MAX_CHECKED - checked);
+            for (int i = 0; i < candidates.length && best < limit; i++) {
+                best += check(candidates[i], localized, matches);
+            }
+        }
+
+        // Stable, so each rank stays newest first.
+        Collections.sort(matches, new Comparator<Match>() {
+            @Override
+            public int compare(Match a, Match b) {
+                return Integer.compare(a.rank, b.rank);
+            }
+        });
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * Waits for the index to catch up with the changes made to the store so far.
+     */
+    void awaitUpdate() throws InterruptedException, ExecutionException {
+        mWorker.submit(new Runnable() {
+            @Override
+            public void run() {
+                // Runs after the updates queued before it.
+            }
+        }).get();
+    }
+
+    /**
+     * Stops following the store. The index can't be used after.
+     */
+    @Override
+    public void close() {
+        mStore.removeOnChangeListener(mChangeListener);
+        mWorker.shutdownNow();
+    }
+
+    /**
+     * Adds the entry at {@code index} to {@code matches} if it contains {@code query}. Returns 1
+     * if it's one of the best matches, 0 otherwise.
+     */
+    private int check(int index, String query, List<Match> matches) throws IOException {
+        HistoryStore.Entry entry;
+        try {
+            entry = mStore.get(index);
+        } catch (IndexOutOfBoundsException e) {
+            // Dropped by a compaction since.
+            return 0;
+        }
+        // Most matches are in the expression, which doesn't need the result formatted.
+        String expression = mTokenizer.getLocalizedExpression(entry.expression, entry.radians);
+        int position = expression.indexOf(query);
+        if (position < 0) {
+            position = getText(expression, entry.result, new StringBuilder()).indexOf(query);
+            if (position < 0) {
+                return 0;
+            }
+        }
+        int separator = expression.length();
+        int rank = position == 0 || position == separator || position == separator + 1 ? 0 : 1;
+        matches.add(new Match(index, entry, rank));
+        return 1 - rank;
+    }
+
+    /**
+     * Returns the searched text of an entry, from its localized expression.
+     */
+    private String getText(String expression, double result, StringBuilder builder) {
+        ResultFormatter.formatTo(result, builder);
+        return expression + RESULT_SEPARATOR + mTokenizer.getLocalizedExpression(builder.toString());
+    }
+
+    private void scheduleUpdate() {
+        if (mUpdatePending.compareAndSet(false, true)) {
+            try {
+                mWorker.execute(mUpdate);
+            } catch (RejectedExecutionException e) {
+                // Closed.
+            }
+        }
+    }
+
+    private void update() throws IOException {
+        Trigrams trigrams = mTrigrams;
+        long generation = mStore.getGeneration();
+        TokenizerConfig config = mTokenizer.getConfig();
+        if (generation != trigrams.generation || !config.equals(trigrams.config)) {
+            // The entries were renumbered, or are shown with other symbols. The new index is
+            // only used once it has all of them.
+            trigrams = new Trigrams(generation, config);
+        }
+        int size = mStore.size();
+        for (int i = trigrams.count; i < size; i++) {
+            if (Thread.interrupted()) {
+                return;
+            }
+            HistoryStore.Entry entry = mStore.get(i);
+            mResultBuilder.setLength(0);
+            trigrams.add(i, getText(mTokenizer.getLocalizedExpression(entry.expression, entry.radians),
+                    entry.result, mResultBuilder));
+        }
+        if (mStore.getGeneration() != generation || !mTokenizer.getConfig().equals(config)) {
+            // Renumbered or reconfigured again while it was read; the next change starts over.
+            return;
+        }
+        mTrigrams = trigrams;
+    }
+
+    /**
+     * An entry containing the query, with its number in the store.
+     */
+    public static final class Match {
+        public final int index;
+        public final HistoryStore.Entry entry;
+        // 0 if the query starts the expression or the result, 1 otherwise.
+        final int rank;
+
+        Match(int index, HistoryStore.Entry entry, int rank) {
+            this.index = index;
+            this.entry = entry;
+            this.rank = rank;
+        }
+    }
+
+    /**
+     * The entries containing each trigram. Added to on the worker thread while queries read it.
+     */
+    private static final class Trigrams {
+        final long generation;
+        // The symbols the entries were localized with.
+        final TokenizerConfig config;
+        // How many entries, from the oldest, have been added.
+        volatile int count;
+        private final HashMap<Long, Postings> mPostings = new HashMap<>();
+
+        Trigrams(long generation, TokenizerConfig config) {
+            this.generation = generation;
+            this.config = config;
+        }
+
+        synchronized void add(int index, String text) {
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                long key = key(text, i);
+                Postings postings = mPostings.get(key);
+                if (postings == null) {
+                    postings = new Postings();
+                    mPostings.put(key, postings);
+                }
+                postings.add(index);
+            }
+            count = index + 1;
+        }
+
+        /**
+         * Returns up to {@code max} of the entries up to {@code last} that contain every trigram
+         * of {@code query}, newest first.
+         */
+        synchronized int[] candidates(String query, int last, int max) {
+            Postings[] lists = new Postings[query.length() - 2];
+            Postings shortest = null;
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = mPostings.get(key(query, i));
+                if (lists[i] == null) {
+                    return new int[0];
+                }
+                if (shortest == null || lists[i].size < shortest.size) {
+                    shortest = lists[i];
+                }
+            }
+            // Walks the shortest list back from the newest entry, and looks each one up in the
+            // others, so only the blocks of the lists near the newest candidates are decoded.
+            Postings.Reader[] readers = new Postings.Reader[lists.length];
+            for (int i = 0; i < lists.length; i++) {
+                readers[i] = lists[i].new Reader();
+            }
+            Postings.Reader walker = shortest.new Reader();
+            int[] candidates = new int[Math.min(max, shortest.size)];
+            int length = 0;
+            for (int block = shortest.blockOf(last); block >= 0 && length < candidates.length; block--) {
+                walker.load(block);
+                for (int i = walker.mCount - 1; i >= 0 && length < candidates.length; i--) {
+                    int value = walker.mValues[i];
+                    if (value <= last && containsAll(lists, readers, shortest, value)) {
+                        candidates[length++] = value;
+                    }
+                }
+            }
+            int[] result = new int[length];
+            System.arraycopy(candidates, 0, result, 0, length);
+            return result;
+        }
+
+        private static boolean containsAll(Postings[] lists, Postings.Reader[] readers, Postings skip, int value) {
+            for (int i = 0; i < lists.length; i++) {
+                if (lists[i] != skip && !readers[i].contains(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long key(String text, int start) {
+            return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+        }
+    }
+
+    /**
+     * Ascending entry numbers, each stored as the difference from the one before in a varint.
+     * Most differences fit in a byte or two, so a list takes a fraction of an int[]. Every
+     * {@link #BLOCK_SIZE} numbers, the number before and where the block starts are kept, so a
+     * number can be found by decoding only its block.
+     */
+    private static final class Postings {
+        static final int BLOCK_SIZE = 64;
+
+        private byte[] mData = new byte[4];
+        private int mLength;
+        private int mLast = -1;
+        // The number before each block, ascending, and where its first number is in mData.
+        private int[] mBlockBases = new int[1];
+        private int[] mBlockPositions = new int[1];
+        int size;
+
+        void add(int index) {
+            if (index == mLast) {
+                // The trigram appears more than once in the entry.
+                return;
+            }
+            if (size % BLOCK_SIZE == 0) {
+                int block = size / BLOCK_SIZE;
+                if (block == mBlockBases.length) {
+                    mBlockBases = Arrays.copyOf(mBlockBases, block * 2);
+                    mBlockPositions = Arrays.copyOf(mBlockPositions, block * 2);
+                }
+                mBlockBases[block] = mLast;
+                mBlockPositions[block] = mLength;
+            }
+            if (mLength + 5 > mData.length) {
+                mData = Arrays.copyOf(mData, mData.length * 2);
+            }
+            int delta = index - mLast;
+            while (delta >= 0x80) {
+                mData[mLength++] = (byte) (delta | 0x80);
+                delta >>>= 7;
+            }
+            mData[mLength++] = (byte) delta;
+            mLast = index;
+            size++;
+        }
+
+        /**
+         * Returns the block {@code value} would be in, or -1 if it's smaller than every number.
+         */
+        int blockOf(int value) {
+            int low = 0;
+            int high = (size + BLOCK_SIZE - 1) / BLOCK_SIZE - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (mBlockBases[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low - 1;
+        }
+
+        /**
+         * Decodes one block at a time, and remembers the last one.
+         */
+        final class Reader {
+            final int[] mValues = new int[BLOCK_SIZE];
+            int mCount;
+            private int mBlock = -1;
+
+            void load(int block) {
+                if (block == mBlock) {
+                    return;
+                }
+                mBlock = block;
+                mCount = Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE);
+                int value = mBlockBases[block];
+                int position = mBlockPositions[block];
+                for (int i = 0; i < mCount; i++) {
+                    int delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = mData[position++];
+                        delta |= (b & 0x7f) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    value += delta;
+                    mValues[i] = value;
+                }
+            }
+
+            boolean contains(int value) {
+                int block = blockOf(value);
+                if (block < 0) {
+                    return false;
+                }
+                load(block);
+                return Arrays.binarySearch(mValues, 0, mCount, value) >= 0;
+            }
+        }
+    }
+}
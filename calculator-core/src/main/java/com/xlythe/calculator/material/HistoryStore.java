@@ -0,0 +1,721 @@
+package com.xlythe.calculator.material;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * The history of calculations, kept on disk in an append-only log of binary records with a
+ * memory-mapped index of where each record starts. Looking up any entry reads one index slot and
+ * one record, so the history can grow to hundreds of thousands of entries without being loaded.
+ * <p>
+ * Entries are numbered from 0, the oldest. Writes ({@link #append}, {@link #incrementGroupId},
+ * {@link #clear}) are queued and done in order on a background thread, so they can be called from
+ * the main thread; reads see them once they're done. Written records survive the process dying
+ * right away. They're synced to the disk in batches, at most {@link #SYNC_DELAY_MS} after being
+ * written, or by {@link #flush}. Once there are half again as many entries as the store keeps,
+ * the oldest are dropped by copying the rest to a new log, also in the background.
+ * <p>
+ * A log record is its payload length (int), timestamp (long), group id (long), result (double),
+ * flags (byte; 1 if the expression was normalized in radians mode), the expression in UTF-8, and
+ * a CRC32 of everything after the length. On open, records after
+ * the last indexed one are indexed, and a torn record at the end, from a crash in the middle of a
+ * write, is cut off. If the index doesn't match the log it's rebuilt from it.
+ */
+public final class HistoryStore implements Closeable {
+    public static final int DEFAULT_MAX_ENTRIES = 200_000;
+    public static final long SYNC_DELAY_MS = 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String LOG_NAME = "history.log";
+    private static final String INDEX_NAME = "history.idx";
+    private static final String COMPACT_SUFFIX = ".compact";
+
+    private static final int LOG_MAGIC = 0x42534c47;
+    private static final int INDEX_MAGIC = 0x42534958;
+    // Version 1 had no flags. Its logs are started over.
+    private static final int VERSION = 2;
+    // magic, version, generation
+    private static final int LOG_HEADER = 16;
+    // magic, version, generation, count, group id
+    private static final int INDEX_HEADER = 32;
+    private static final int INDEX_COUNT = 16;
+    private static final int INDEX_GROUP_ID = 24;
+    // timestamp, group id, result, flags
+    private static final int RECORD_FIELDS = 25;
+    private static final int RECORD_FLAGS = 4 + 24;
+    // The expression was normalized in radians mode.
+    private static final int FLAG_RADIANS = 1;
+    /** The longest expression a record holds, in UTF-8 bytes. */
+    public static final int MAX_EXPRESSION_BYTES = 64 * 1024;
+
+    private final File mDirectory;
+    private final int mMaxEntries;
+    private final ScheduledExecutorService mWorker;
+
+    // Guarded by this. Entries are only added and removed on the worker thread.
+    private FileChannel mLog;
+    private FileChannel mIndexChannel;
+    private MappedByteBuffer mIndex;
+    private long mGeneration;
+    private int mCount;
+    private long mGroupId;
+    private long mLogEnd;
+    private ByteBuffer mReadBuffer = ByteBuffer.allocate(256);
+    private ByteBuffer mWriteBuffer = ByteBuffer.allocate(256);
+    private final CRC32 mCrc = new CRC32();
+    // The last entry added, so it isn't added twice.
+    @Nullable
+    private String mLastExpression;
+    private double mLastResult;
+    private boolean mLastRadians;
+    private long mLastGroupId = -1;
+    private boolean mClosed;
+    @Nullable
+    private IOException mError;
+
+    // Only used on the worker thread.
+    private boolean mSyncScheduled;
+
+    private final CopyOnWriteArrayList<OnChangeListener> mListeners = new CopyOnWriteArrayList<>();
+
+    private final Runnable mSync = new Runnable() {
+        @Override
+        public void run() {
+            mSyncScheduled = false;
+            try {
+                sync();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    };
+
+    public HistoryStore(File directory) {
+        this(directory, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Nothing is read until the store is first used.
+     *
+     * @param maxEntries How many of the newest entries to keep.
+     */
+    public HistoryStore(File directory, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        mDirectory = directory;
+        mMaxEntries = maxEntries;
+        ScheduledThreadPoolExecutor worker = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "CalculatorHistory");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        worker.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        mWorker = worker;
+    }
+
+    /**
+     * Returns whether {@code expression} is short enough for {@link #append}: at most
+     * {@link #MAX_EXPRESSION_BYTES} in UTF-8.
+     */
+    public static boolean canAppend(String expression) {
+        return utf8Length(expression) <= MAX_EXPRESSION_BYTES;
+    }
+
+    /**
+     * Adds a calculation to the current group. It's ignored if it's the same as the last one
+     * added to the group.
+     *
+     * @param expression The normalized expression.
+     * @param radians    The angle mode it was normalized in, which it's localized in again.
+     * @throws IllegalArgumentException If the expression is too long; see {@link #canAppend}.
+     */
+    public void append(final String expression, final boolean radians, final double result) {
+        if (!canAppend(expression)) {
+            throw new IllegalArgumentException("Expression too long: " + expression.length() + " chars");
+        }
+        final long timestamp = System.currentTimeMillis();
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    appendRecord(expression, radians, result, timestamp);
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts a new group; the calculations appended from now on belong together.
+     */
+    public void incrementGroupId() {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (HistoryStore.this) {
+                    try {
+                        ensureOpen();
+                        mGroupId++;
+                        mIndex.putLong(INDEX_GROUP_ID, mGroupId);
+                    } catch (IOException e) {
+                        fail(e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes every entry. Group ids keep counting up.
+     */
+    public void clear() {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact(0);
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns how many entries have been written. Blocks to open the store if it isn't yet.
+     */
+    public synchronized int size() throws IOException {
+        ensureOpen();
+        return mCount;
+    }
+
+    /**
+     * Returns the entry at {@code index}, where 0 is the oldest.
+     */
+    public synchronized Entry get(int index) throws IOException {
+        ensureOpen();
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mCount);
+        }
+        long offset = mIndex.getLong(INDEX_HEADER + 8 * index);
+        int length = readRecord(offset, mLogEnd);
+        if (length < 0) {
+            throw new IOException("Bad record " + index + " at " + offset);
+        }
+        ByteBuffer buffer = mReadBuffer;
+        String expression = new String(buffer.array(), 4 + RECORD_FIELDS, length - RECORD_FIELDS, UTF_8);
+        boolean radians = (buffer.get(RECORD_FLAGS) & FLAG_RADIANS) != 0;
+        return new Entry(expression, radians, buffer.getDouble(20), buffer.getLong(12), buffer.getLong(4));
+    }
+
+    /**
+     * Returns the group new entries are added to.
+     */
+    public synchronized long getGroupId() throws IOException {
+        ensureOpen();
+        return mGroupId;
+    }
+
+    /**
+     * Returns a number that changes whenever entries were dropped, which renumbers the ones left.
+     * Entries appended in between don't change it.
+     */
+    public synchronized long getGeneration() throws IOException {
+        ensureOpen();
+        return mGeneration;
+    }
+
+    /**
+     * Tells {@code listener}, on the background thread, whenever entries were added or removed.
+     */
+    public void addOnChangeListener(OnChangeListener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeOnChangeListener(OnChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Waits for the queued writes and syncs them to the disk.
+     *
+     * @throws IOException If a write failed, now or earlier.
+     */
+    public void flush() throws IOException {
+        Future<?> future;
+        try {
+            future = mWorker.submit(mSync);
+        } catch (RejectedExecutionException e) {
+            throw new IOException("closed");
+        }
+        await(future);
+        synchronized (this) {
+            if (mError != null) {
+                throw mError;
+            }
+        }
+    }
+
+    /**
+     * Finishes the queued writes, syncs them and closes the files. The store can't be used after.
+     */
+    @Override
+    public void close() throws IOException {
+        Future<?> future;
+        try {
+            future = mWorker.submit(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (HistoryStore.this) {
+                        try {
+                            sync();
+                        } catch (IOException e) {
+                            fail(e);
+                        }
+                        closeFiles();
+                        mClosed = true;
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return;
+        }
+        mWorker.shutdown();
+        await(future);
+        synchronized (this) {
+            if (mError != null) {
+                throw mError;
+            }
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            mWorker.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Closed; writes after close are dropped.
+        }
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private synchronized void fail(IOException e) {
+        if (mError == null) {
+            mError = e;
+        }
+    }
+
+    private void appendRecord(String expression, boolean radians, double result, long timestamp)
+            throws IOException {
+        int count;
+        synchronized (this) {
+            ensureOpen();
+            if (mGroupId == mLastGroupId && expression.equals(mLastExpression)
+                    && radians == mLastRadians && Double.compare(result, mLastResult) == 0) {
+                return;
+            }
+            byte[] bytes = expression.getBytes(UTF_8);
+            int length = RECORD_FIELDS + bytes.length;
+            mWriteBuffer = ensureCapacity(mWriteBuffer, length + 8);
+            ByteBuffer buffer = mWriteBuffer;
+            buffer.clear();
+            buffer.putInt(length);
+            buffer.putLong(timestamp);
+            buffer.putLong(mGroupId);
+            buffer.putDouble(result);
+            buffer.put((byte) (radians ? FLAG_RADIANS : 0));
+            buffer.put(bytes);
+            mCrc.reset();
+            mCrc.update(buffer.array(), 4, length);
+            buffer.putInt((int) mCrc.getValue());
+            buffer.flip();
+
+            long offset = mLogEnd;
+            writeFully(mLog, buffer, offset);
+            mLogEnd += length + 8;
+            // The record is in the log before the index points at it.
+            putOffset(mCount, offset);
+            mCount++;
+            mIndex.putLong(INDEX_COUNT, mCount);
+
+            mLastExpression = expression;
+            mLastResult = result;
+            mLastRadians = radians;
+            mLastGroupId = mGroupId;
+            count = mCount;
+        }
+        scheduleSync();
+        if (count >= mMaxEntries + mMaxEntries / 2) {
+            compact(mMaxEntries);
+        }
+        notifyChanged();
+    }
+
+    private void scheduleSync() {
+        if (!mSyncScheduled) {
+            mSyncScheduled = true;
+            mWorker.schedule(mSync, SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void sync() throws IOException {
+        if (mLog == null) {
+            return;
+        }
+        // The log first, so a synced index never points past the synced log.
+        mLog.force(false);
+        mIndex.force();
+    }
+
+    /**
+     * Keeps the newest {@code keep} entries: copies their records to a new log, writes a new
+     * index for it, and swaps both in.
+     */
+    private void compact(int keep) throws IOException {
+        int first;
+        int count;
+        long from;
+        long end;
+        long generation;
+        ByteBuffer index;
+        synchronized (this) {
+            ensureOpen();
+            first = Math.max(mCount - keep, 0);
+            count = mCount - first;
+            from = first < mCount ? mIndex.getLong(INDEX_HEADER + 8 * first) : mLogEnd;
+            end = mLogEnd;
+            generation = mGeneration + 1;
+            index = ByteBuffer.allocate(INDEX_HEADER + 8 * count);
+            index.putInt(INDEX_MAGIC).putInt(VERSION).putLong(generation).putLong(count).putLong(mGroupId);
+            for (int i = first; i < mCount; i++) {
+                index.putLong(mIndex.getLong(INDEX_HEADER + 8 * i) - from + LOG_HEADER);
+            }
+            index.flip();
+        }
+
+        // Appends only happen on this thread, so the old log doesn't change while it's copied,
+        // and readers keep using it until the new files are swapped in.
+        File logFile = new File(mDirectory, LOG_NAME + COMPACT_SUFFIX);
+        File indexFile = new File(mDirectory, INDEX_NAME + COMPACT_SUFFIX);
+        try (FileChannel log = new RandomAccessFile(logFile, "rw").getChannel();
+             FileChannel indexChannel = new RandomAccessFile(indexFile, "rw").getChannel()) {
+            log.truncate(0);
+            writeFully(log, logHeader(generation), 0);
+            log.position(LOG_HEADER);
+            for (long copied = 0; copied < end - from; ) {
+                copied += mLog.transferTo(from + copied, end - from - copied, log);
+            }
+            log.force(false);
+            indexChannel.truncate(0);
+            writeFully(indexChannel, index, 0);
+            indexChannel.force(false);
+        }
+
+        synchronized (this) {
+            closeFiles();
+            // If the process dies between the renames, the generations don't match and the
+            // index is rebuilt from the new log.
+            rename(logFile, new File(mDirectory, LOG_NAME));
+            rename(indexFile, new File(mDirectory, INDEX_NAME));
+            ensureOpen();
+        }
+        notifyChanged();
+    }
+
+    private void notifyChanged() {
+        for (OnChangeListener listener : mListeners) {
+            listener.onHistoryChanged(this);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (mClosed) {
+            throw new IOException("closed");
+        }
+        if (mLog != null) {
+            return;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Can't create " + mDirectory);
+        }
+        try {
+            openFiles();
+        } catch (IOException e) {
+            closeFiles();
+            throw e;
+        }
+    }
+
+    private void openFiles() throws IOException {
+        mLog = new RandomAccessFile(new File(mDirectory, LOG_NAME), "rw").getChannel();
+        if (mLog.size() < LOG_HEADER) {
+            // New, or the header never made it to the disk.
+            mLog.truncate(0);
+            writeFully(mLog, logHeader(System.currentTimeMillis()), 0);
+        }
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+        readFully(mLog, header, 0);
+        header.flip();
+        if (header.getInt() != LOG_MAGIC) {
+            throw new IOException("Not a history log: " + new File(mDirectory, LOG_NAME));
+        }
+        if (header.getInt() != VERSION) {
+            // An older format. The index doesn't match the new log either, so it's rebuilt.
+            mLog.truncate(0);
+            header = logHeader(System.currentTimeMillis());
+            writeFully(mLog, header, 0);
+            header.position(8);
+        }
+        mGeneration = header.getLong();
+
+        mIndexChannel = new RandomAccessFile(new File(mDirectory, INDEX_NAME), "rw").getChannel();
+        boolean valid = mIndexChannel.size() >= INDEX_HEADER;
+        if (valid) {
+            mapIndex(Math.max((int) ((mIndexChannel.size() - INDEX_HEADER) / 8), 16));
+            valid = mIndex.getInt(0) == INDEX_MAGIC && mIndex.getInt(4) == VERSION
+                    && mIndex.getLong(8) == mGeneration;
+        } else {
+            mapIndex(16);
+        }
+        long count = valid ? mIndex.getLong(INDEX_COUNT) : 0;
+        mGroupId = valid ? mIndex.getLong(INDEX_GROUP_ID) : 0;
+        if (count < 0 || INDEX_HEADER + 8 * count > mIndex.capacity()) {
+            count = 0;
+        }
+
+        // Trust the index up to its last record that can be read back; scan the log after it.
+        mCount = (int) count;
+        long end = LOG_HEADER;
+        while (mCount > 0) {
+            long offset = mIndex.getLong(INDEX_HEADER + 8 * (mCount - 1));
+            long recordEnd = checkRecord(offset);
+            if (recordEnd > 0) {
+                end = recordEnd;
+                break;
+            }
+            mCount--;
+        }
+        long lastGroupId = -1;
+        while (true) {
+            long recordEnd = checkRecord(end);
+            if (recordEnd < 0) {
+                break;
+            }
+            putOffset(mCount, end);
+            mCount++;
+            // checkRecord left the record in the read buffer.
+            lastGroupId = Math.max(lastGroupId, mReadBuffer.getLong(12));
+            end = recordEnd;
+        }
+        if (mLog.size() > end) {
+            mLog.truncate(end);
+        }
+        mLogEnd = end;
+        mGroupId = Math.max(mGroupId, lastGroupId + 1);
+
+        mIndex.putInt(0, INDEX_MAGIC);
+        mIndex.putInt(4, VERSION);
+        mIndex.putLong(8, mGeneration);
+        mIndex.putLong(INDEX_COUNT, mCount);
+        mIndex.putLong(INDEX_GROUP_ID, mGroupId);
+        mLastExpression = null;
+        mLastGroupId = -1;
+    }
+
+    private void closeFiles() {
+        closeQuietly(mLog);
+        closeQuietly(mIndexChannel);
+        mLog = null;
+        mIndexChannel = null;
+        mIndex = null;
+    }
+
+    private void mapIndex(int capacity) throws IOException {
+        mIndex = mIndexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + 8L * capacity);
+    }
+
+    private void putOffset(int index, long offset) throws IOException {
+        int position = INDEX_HEADER + 8 * index;
+        if (position + 8 > mIndex.capacity()) {
+            mIndex.force();
+            mapIndex(2 * (mIndex.capacity() - INDEX_HEADER) / 8);
+        }
+        mIndex.putLong(position, offset);
+    }
+
+    /**
+     * Returns where the record at {@code offset} ends if it's complete and intact, or -1.
+     */
+    private long checkRecord(long offset) throws IOException {
+        int length = readRecord(offset, mLog.size());
+        if (length < 0) {
+            return -1;
+        }
+        mCrc.reset();
+        mCrc.update(mReadBuffer.array(), 4, length);
+        if ((int) mCrc.getValue() != mReadBuffer.getInt(4 + length)) {
+            return -1;
+        }
+        return offset + 8 + length;
+    }
+
+    /**
+     * Reads the record at {@code offset}, length and CRC included, to the start of the read
+     * buffer. Short records take one read. Returns the payload length, or -1 if the length is
+     * invalid or the record runs past {@code end}.
+     */
+    private int readRecord(long offset, long end) throws IOException {
+        if (offset < LOG_HEADER || offset + 4 > end) {
+            return -1;
+        }
+        ByteBuffer buffer = mReadBuffer;
+        buffer.clear().limit((int) Math.min(buffer.capacity(), end - offset));
+        readFully(mLog, buffer, offset);
+        int length = buffer.getInt(0);
+        if (length < RECORD_FIELDS || length > RECORD_FIELDS + MAX_EXPRESSION_BYTES
+                || offset + 8 + length > end) {
+            return -1;
+        }
+        if (length + 8 > buffer.capacity()) {
+            mReadBuffer = buffer = ensureCapacity(buffer, length + 8);
+            buffer.clear().limit(length + 8);
+            readFully(mLog, buffer, offset);
+        }
+        return length;
+    }
+
+    /**
+     * Returns how many bytes {@code text} takes in UTF-8, counting a lone surrogate as the one
+     * byte of the '?' it's encoded as.
+     */
+    private static long utf8Length(String text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static ByteBuffer logHeader(long generation) {
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+        header.putInt(LOG_MAGIC).putInt(VERSION).putLong(generation).flip();
+        return header;
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int capacity) {
+        if (buffer.capacity() >= capacity) {
+            return buffer;
+        }
+        return ByteBuffer.allocate(Math.max(capacity, 2 * buffer.capacity()));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + LOG_NAME + " at " + position);
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            throw new IOException("Can't rename " + from + " to " + to);
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public interface OnChangeListener {
+        void onHistoryChanged(HistoryStore store);
+    }
+
+    /**
+     * One calculation.
+     */
+    public static final class Entry {
+        /** Normalized. */
+        public final String expression;
+        /** The angle mode the expression was normalized in. */
+        public final boolean radians;
+        public final double result;
+        public final long groupId;
+        /** When it was added, in milliseconds since the epoch. */
+        public final long timestamp;
+
+        public Entry(String expression, boolean radians, double result, long groupId, long timestamp) {
+            this.expression = expression;
+            this.radians = radians;
+            this.result = result;
+            this.groupId = groupId;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.xlythe.calculator.material;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations, in nanoseconds, in buckets whose width grows with their value, as HDR
+ * histograms do: values below {@link #SUB_BUCKETS} get a bucket each, and every power of two above
+ * that is split into {@link #SUB_BUCKETS} / 2 buckets, so a value is known to within 1/8 of
+ * itself. All of a long's range fits in 488 buckets.
+ * <p>
+ * Recording is a few bit operations and atomic adds, without locks or allocation, so any number
+ * of threads can record at once. Reads see the counts as they are, and may miss samples being
+ * recorded at the same time.
+ */
+public final class LatencyHistogram {
+    // Values are bucketed by their top SUB_BUCKET_BITS bits.
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Counts a duration. Negative ones count as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        mCounts.incrementAndGet(bucketOf(nanos));
+        mTotal.addAndGet(nanos);
+        long max = mMax.get();
+        while (nanos > max && !mMax.compareAndSet(max, nanos)) {
+            max = mMax.get();
+        }
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += mCounts.get(i);
+        }
+        return count;
+    }
+
+    public long getMaxNanos() {
+        return mMax.get();
+    }
+
+    public long getMeanNanos() {
+        long count = getCount();
+        return count == 0 ? 0 : mTotal.get() / count;
+    }
+
+    /**
+     * Returns the duration {@code percentile} percent of the samples are at or below, e.g. 99 for
+     * the 99th percentile, to within the width of its bucket. Returns 0 if nothing was recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        // The rank of the sample asked for, from 1.
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    /**
+     * Forgets every sample. Samples recorded at the same time may be half forgotten.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotal.set(0);
+        mMax.set(0);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS + 1;
+        // The top SUB_BUCKET_BITS bits, from HALF_SUB_BUCKETS to SUB_BUCKETS - 1.
+        int mantissa = (int) (value >>> shift);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS + mantissa - HALF_SUB_BUCKETS;
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = SUB_BUCKET_BITS + (bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS + 1;
+        long mantissa = HALF_SUB_BUCKETS + (bucket - SUB_BUCKETS) % HALF_SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
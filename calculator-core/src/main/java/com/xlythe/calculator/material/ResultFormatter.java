@@ -0,0 +1,247 @@
+package com.xlythe.calculator.material;
+
+/**
+ * Formats results for the display, like {@code new DecimalFormat("#.########")} with US symbols,
+ * switching to {@code new DecimalFormat("0.########E0")} above {@link #SCIENTIFIC_THRESHOLD}.
+ * <p>
+ * A result is taken to be the shortest decimal that reads back as the same double, which is
+ * what {@link Double#toString} prints, and that decimal is rounded half-even to the pattern. So
+ * 0.125 shows as 0.12 at two digits, even though the double is a little above it. That's how
+ * Android's ICU-backed DecimalFormat rounds. The JVM's DecimalFormat instead breaks such ties
+ * by the double's exact binary value.
+ * <p>
+ * All of the work happens in per thread scratch buffers, so it's safe to share. Besides the
+ * returned String, only the platform's digit generation may allocate, and only for very large
+ * or very small values.
+ */
+public final class ResultFormatter {
+    /** Positive values above this are shown in scientific notation. */
+    public static final double SCIENTIFIC_THRESHOLD = 1E12;
+
+    private static final int FRACTION_DIGITS = 8;
+    private static final int SCIENTIFIC_DIGITS = 9;
+    private static final char INFINITY = '∞';
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private ResultFormatter() {
+    }
+
+    public static String format(double value) {
+        Scratch scratch = SCRATCH.get();
+        int length = format(value, scratch);
+        return new String(scratch.out, 0, length);
+    }
+
+    /**
+     * Appends the formatted value without allocating a String for it.
+     */
+    public static void formatTo(double value, StringBuilder builder) {
+        Scratch scratch = SCRATCH.get();
+        int length = format(value, scratch);
+        builder.append(scratch.out, 0, length);
+    }
+
+    private static int format(double value, Scratch scratch) {
+        char[] out = scratch.out;
+        if (Double.isNaN(value)) {
+            out[0] = 'N';
+            out[1] = 'a';
+            out[2] = 'N';
+            return 3;
+        }
+
+        int pos = 0;
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            out[pos++] = '-';
+        }
+        double abs = Math.abs(value);
+        if (abs == Double.POSITIVE_INFINITY) {
+            out[pos++] = INFINITY;
+            return pos;
+        }
+        if (abs == 0) {
+            out[pos++] = '0';
+            return pos;
+        }
+
+        readDigits(abs, scratch);
+        if (value > SCIENTIFIC_THRESHOLD) {
+            round(scratch, SCIENTIFIC_DIGITS);
+            return writeScientific(scratch, pos);
+        }
+        // The digits left of the point, and as many as are shown right of it.
+        int maximumDigits = scratch.decimalAt + FRACTION_DIGITS;
+        if (maximumDigits < 0) {
+            // Too small to show, even rounded up.
+            scratch.count = 0;
+        } else {
+            round(scratch, maximumDigits);
+        }
+        return writeFixed(scratch, pos);
+    }
+
+    /**
+     * Reads the digits of a positive, finite value from its shortest representation, without
+     * leading or trailing zeros. The value is 0.{@code digits} times 10^{@code decimalAt}.
+     */
+    private static void readDigits(double value, Scratch scratch) {
+        // Appending a double writes the same characters as Double.toString, but into a buffer.
+        StringBuilder text = scratch.text;
+        text.setLength(0);
+        text.append(value);
+
+        char[] digits = scratch.digits;
+        int count = 0;
+        int decimalAt = 0;
+        boolean point = false;
+        int length = text.length();
+        int i = 0;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.') {
+                point = true;
+            } else if (c == 'E') {
+                break;
+            } else if (c == '0' && count == 0) {
+                // A leading zero only moves the point, and only when it's right of it.
+                if (point) {
+                    decimalAt--;
+                }
+            } else {
+                digits[count++] = c;
+                if (!point) {
+                    decimalAt++;
+                }
+            }
+        }
+        if (i < length) {
+            boolean negative = text.charAt(++i) == '-';
+            if (negative) {
+                i++;
+            }
+            int exponent = 0;
+            for (; i < length; i++) {
+                exponent = 10 * exponent + text.charAt(i) - '0';
+            }
+            decimalAt += negative ? -exponent : exponent;
+        }
+        scratch.count = count;
+        scratch.decimalAt = decimalAt;
+        stripTrailingZeros(scratch);
+    }
+
+    /**
+     * Rounds half-even to at most {@code maximumDigits} digits, dropping any that end up zero.
+     */
+    private static void round(Scratch scratch, int maximumDigits) {
+        char[] digits = scratch.digits;
+        if (maximumDigits >= scratch.count) {
+            return;
+        }
+        if (shouldRoundUp(scratch, maximumDigits)) {
+            // Carry through the nines.
+            int last = maximumDigits - 1;
+            while (last >= 0 && digits[last] == '9') {
+                last--;
+            }
+            if (last < 0) {
+                // All nines; carry into a new leading one.
+                digits[0] = '1';
+                scratch.decimalAt++;
+                scratch.count = 1;
+                return;
+            }
+            digits[last]++;
+            scratch.count = last + 1;
+            return;
+        }
+        scratch.count = maximumDigits;
+        stripTrailingZeros(scratch);
+    }
+
+    private static boolean shouldRoundUp(Scratch scratch, int maximumDigits) {
+        char[] digits = scratch.digits;
+        char next = digits[maximumDigits];
+        if (next != '5') {
+            return next > '5';
+        }
+        if (maximumDigits + 1 < scratch.count) {
+            // Trailing zeros are gone, so anything after the 5 is above the tie.
+            return true;
+        }
+        // A tie goes to the even neighbour. Nothing shown at all counts as an even zero.
+        return maximumDigits > 0 && (digits[maximumDigits - 1] - '0') % 2 != 0;
+    }
+
+    private static void stripTrailingZeros(Scratch scratch) {
+        while (scratch.count > 0 && scratch.digits[scratch.count - 1] == '0') {
+            scratch.count--;
+        }
+    }
+
+    private static int writeFixed(Scratch scratch, int pos) {
+        char[] out = scratch.out;
+        char[] digits = scratch.digits;
+        int count = scratch.count;
+        int decimalAt = scratch.decimalAt;
+
+        int digitIndex = 0;
+        if (count > 0 && decimalAt > 0) {
+            for (int i = 0; i < decimalAt; i++) {
+                out[pos++] = digitIndex < count ? digits[digitIndex++] : '0';
+            }
+        } else {
+            out[pos++] = '0';
+        }
+        if (digitIndex < count) {
+            out[pos++] = '.';
+            for (int i = 0; i < FRACTION_DIGITS && digitIndex < count; i++) {
+                out[pos++] = i < -decimalAt ? '0' : digits[digitIndex++];
+            }
+        }
+        return pos;
+    }
+
+    private static int writeScientific(Scratch scratch, int pos) {
+        char[] out = scratch.out;
+        char[] digits = scratch.digits;
+        out[pos++] = digits[0];
+        if (scratch.count > 1) {
+            out[pos++] = '.';
+            for (int i = 1; i < scratch.count; i++) {
+                out[pos++] = digits[i];
+            }
+        }
+        out[pos++] = 'E';
+        int exponent = scratch.decimalAt - 1;
+        if (exponent < 0) {
+            out[pos++] = '-';
+            exponent = -exponent;
+        }
+        int length = 1;
+        for (int power = 10; exponent >= power; power *= 10) {
+            length++;
+        }
+        for (int i = pos + length - 1; i >= pos; i--) {
+            out[i] = (char) ('0' + exponent % 10);
+            exponent /= 10;
+        }
+        return pos + length;
+    }
+
+    private static final class Scratch {
+        // A double has at most 309 integer digits.
+        final char[] out = new char[320];
+        // The shortest representation has at most 17 significant digits.
+        final char[] digits = new char[32];
+        final StringBuilder text = new StringBuilder(32);
+        int count;
+        int decimalAt;
+    }
+}
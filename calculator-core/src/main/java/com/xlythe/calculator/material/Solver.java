@@ -14,12 +14,16 @@ public class Solver {
     }
 
     public static boolean isOperator(char c) {
-        return ("" +
-                Constants.PLUS +
-                Constants.MINUS +
-                Constants.DIV +
-                Constants.MUL +
-                Constants.POWER).indexOf(c) != -1;
+        switch (c) {
+            case Constants.PLUS:
+            case Constants.MINUS:
+            case Constants.DIV:
+            case Constants.MUL:
+            case Constants.POWER:
+                return true;
+            default:
+                return false;
+        }
     }
 
     public static boolean isNegative(String number) {
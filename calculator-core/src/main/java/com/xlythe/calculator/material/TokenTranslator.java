@@ -0,0 +1,169 @@
+package com.xlythe.calculator.material;
+
+import java.util.Arrays;
+
+/**
+ * Rewrites every occurrence of a fixed set of tokens in a single left-to-right pass.
+ * <p>
+ * The tokens are stored in a trie that is built once. At each position the longest token that
+ * matches is replaced, so translating is linear in the input length (tokens are only a few
+ * characters long) and writes into a single output buffer. If nothing matches, the input string
+ * is returned as is, without copying it.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+final class TokenTranslator {
+    private static final int START_TABLE_SIZE = 256;
+
+    private final Node mRoot;
+    // The trie's first level, indexed by the low byte of the character. Most characters of an
+    // expression don't start a token and are rejected by a single array lookup.
+    private final char[] mStartChars = new char[START_TABLE_SIZE];
+    private final Node[] mStartNodes = new Node[START_TABLE_SIZE];
+    private final boolean[] mStartCollisions = new boolean[START_TABLE_SIZE];
+
+    private TokenTranslator(Node root) {
+        mRoot = root;
+        for (int i = 0; i < root.mKeys.length; i++) {
+            char c = root.mKeys[i];
+            int slot = c % START_TABLE_SIZE;
+            if (mStartNodes[slot] != null) {
+                mStartCollisions[slot] = true;
+            } else {
+                mStartChars[slot] = c;
+                mStartNodes[slot] = root.mChildren[i];
+            }
+        }
+    }
+
+    private Node start(char c) {
+        int slot = c % START_TABLE_SIZE;
+        if (mStartChars[slot] == c && mStartNodes[slot] != null) {
+            return mStartNodes[slot];
+        }
+        return mStartCollisions[slot] ? mRoot.child(c) : null;
+    }
+
+    String translate(String input) {
+        final int length = input.length();
+
+        // Find the first token without copying anything; most inputs have none.
+        int i = 0;
+        while (i < length && start(input.charAt(i)) == null) {
+            i++;
+        }
+        if (i == length) {
+            return input;
+        }
+
+        final char[] in = input.toCharArray();
+        char[] out = new char[length + 16];
+        int outLength = 0;
+        int copiedUpTo = 0;
+        while (i < length) {
+            Node node = start(in[i]);
+            if (node == null) {
+                i++;
+                continue;
+            }
+
+            // Walk the trie as far as the input allows, remembering the longest complete token.
+            String replacement = node.replacement;
+            int matchEnd = i + 1;
+            for (int j = i + 1; j < length && node.hasChildren(); j++) {
+                node = node.child(in[j]);
+                if (node == null) {
+                    break;
+                }
+                if (node.replacement != null) {
+                    replacement = node.replacement;
+                    matchEnd = j + 1;
+                }
+            }
+
+            if (replacement == null) {
+                i++;
+                continue;
+            }
+
+            int needed = outLength + (i - copiedUpTo) + replacement.length() + (length - matchEnd);
+            if (needed > out.length) {
+                char[] grown = new char[Math.max(needed, 2 * out.length)];
+                System.arraycopy(out, 0, grown, 0, outLength);
+                out = grown;
+            }
+            System.arraycopy(in, copiedUpTo, out, outLength, i - copiedUpTo);
+            outLength += i - copiedUpTo;
+            for (int k = 0; k < replacement.length(); k++) {
+                out[outLength++] = replacement.charAt(k);
+            }
+            i = matchEnd;
+            copiedUpTo = i;
+        }
+
+        // The growth check above always leaves room for the unmatched tail.
+        System.arraycopy(in, copiedUpTo, out, outLength, length - copiedUpTo);
+        return new String(out, 0, outLength + length - copiedUpTo);
+    }
+
+    static class Builder {
+        private final Node mRoot = new Node();
+
+        /**
+         * Adds a replacement. Identity replacements are ignored, and if the same token is added
+         * twice the first replacement wins.
+         */
+        Builder add(String token, String replacement) {
+            if (token.isEmpty() || token.equals(replacement)) {
+                return this;
+            }
+            Node node = mRoot;
+            for (int i = 0; i < token.length(); i++) {
+                node = node.getOrAddChild(token.charAt(i));
+            }
+            if (node.replacement == null) {
+                node.replacement = replacement;
+            }
+            return this;
+        }
+
+        TokenTranslator build() {
+            return new TokenTranslator(mRoot);
+        }
+    }
+
+    private static final class Node {
+        // Children are kept sorted by character so lookups can binary search.
+        private char[] mKeys = new char[0];
+        private Node[] mChildren = new Node[0];
+        String replacement;
+
+        boolean hasChildren() {
+            return mKeys.length != 0;
+        }
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(mKeys, c);
+            return index >= 0 ? mChildren[index] : null;
+        }
+
+        Node getOrAddChild(char c) {
+            int index = Arrays.binarySearch(mKeys, c);
+            if (index >= 0) {
+                return mChildren[index];
+            }
+            index = -index - 1;
+            char[] keys = new char[mKeys.length + 1];
+            Node[] children = new Node[mChildren.length + 1];
+            System.arraycopy(mKeys, 0, keys, 0, index);
+            System.arraycopy(mChildren, 0, children, 0, index);
+            keys[index] = c;
+            children[index] = new Node();
+            System.arraycopy(mKeys, index, keys, index + 1, mKeys.length - index);
+            System.arraycopy(mChildren, index, children, index + 1, mChildren.length - index);
+            mKeys = keys;
+            mChildren = children;
+            return children[index];
+        }
+    }
+}
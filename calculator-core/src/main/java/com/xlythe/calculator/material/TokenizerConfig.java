@@ -0,0 +1,62 @@
+package com.xlythe.calculator.material;
+
+/**
+ * The display symbols and angle mode an {@link ExpressionTokenizer} translates with.
+ * <p>
+ * On Android these come from string resources and the user's settings; anywhere else the
+ * {@link #DEFAULT} symbols can be used as is.
+ */
+public final class TokenizerConfig {
+    public static final TokenizerConfig DEFAULT = new TokenizerConfig(
+            String.valueOf(Constants.DIV),
+            String.valueOf(Constants.MUL),
+            String.valueOf(Constants.MINUS),
+            "³√",
+            true);
+
+    public final String div;
+    public final String mul;
+    public final String sub;
+    public final String cbrt;
+    public final boolean useRadians;
+
+    public TokenizerConfig(String div, String mul, String sub, String cbrt, boolean useRadians) {
+        this.div = div;
+        this.mul = mul;
+        this.sub = sub;
+        this.cbrt = cbrt;
+        this.useRadians = useRadians;
+    }
+
+    public TokenizerConfig withRadians(boolean useRadians) {
+        if (this.useRadians == useRadians) {
+            return this;
+        }
+        return new TokenizerConfig(div, mul, sub, cbrt, useRadians);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TokenizerConfig)) {
+            return false;
+        }
+        TokenizerConfig other = (TokenizerConfig) o;
+        return useRadians == other.useRadians
+                && div.equals(other.div)
+                && mul.equals(other.mul)
+                && sub.equals(other.sub)
+                && cbrt.equals(other.cbrt);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = div.hashCode();
+        result = 31 * result + mul.hashCode();
+        result = 31 * result + sub.hashCode();
+        result = 31 * result + cbrt.hashCode();
+        return 31 * result + (useRadians ? 1 : 0);
+    }
+}
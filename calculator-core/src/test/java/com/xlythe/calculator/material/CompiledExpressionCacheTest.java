@@ -0,0 +1,26 @@
+package com.xlythe.calculator.material;
+
+import org.javia.arity.Function;
+import org.javia.arity.Symbols;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompiledExpressionCacheTest {
+    @Test
+    public void onlyTrimmingCountsAsEviction() throws Exception {
+        Function function = new Symbols().compile("1+1");
+        CompiledExpressionCache cache = new CompiledExpressionCache(2);
+        cache.put("1", true, function);
+        cache.put("2", true, function);
+        cache.put("3", true, function);
+        assertEquals(1, cache.evictionCount());
+
+        cache.resize(1);
+        assertEquals(2, cache.evictionCount());
+
+        cache.evictAll();
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.evictionCount());
+    }
+}
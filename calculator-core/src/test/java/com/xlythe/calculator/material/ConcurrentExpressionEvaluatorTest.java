@@ -0,0 +1,116 @@
+package com.xlythe.calculator.material;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertNull;
+
+/**
+ * Many threads sharing a small pool of evaluators must get exactly what one evaluator gets alone.
+ * Without {@link ArityCompiler}'s lock, Symbols on different threads resolve each other's names
+ * and this finds mismatches within a few thousand evaluations.
+ */
+public class ConcurrentExpressionEvaluatorTest {
+    private static final int THREADS = 16;
+    private static final int POOL_SIZE = 3;
+    private static final int CACHE_SIZE = 8;
+    private static final int EVALUATIONS_PER_THREAD = 5000;
+
+    private static final String[] FUNCTIONS = {"sin", "cos", "tan", "asin", "acos", "atan", "ln", "log", "√"};
+    private static final char[] OPERATORS = {Constants.PLUS, Constants.MINUS, Constants.MUL, Constants.DIV};
+
+    @Test
+    public void concurrentResultsMatchSingleThreaded() throws Exception {
+        // Degrees, so that names are translated too.
+        ExpressionTokenizer tokenizer = new ExpressionTokenizer(TokenizerConfig.DEFAULT.withRadians(false));
+        final List<String> corpus = createCorpus(new Random(0), 200);
+        final Map<String, String> expected = new HashMap<>();
+        CalculatorExpressionEvaluator reference = new CalculatorExpressionEvaluator(tokenizer);
+        for (final String expr : corpus) {
+            reference.evaluate(expr, new CalculatorExpressionEvaluator.EvaluateCallback() {
+                @Override
+                public void onEvaluate(String normalized, Double result, String errorMessage) {
+                    expected.put(expr, result + "|" + errorMessage);
+                }
+            });
+        }
+
+        // A cache smaller than the corpus, so that evaluators keep compiling.
+        final ConcurrentExpressionEvaluator evaluator =
+                new ConcurrentExpressionEvaluator(tokenizer, POOL_SIZE, CACHE_SIZE);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        List<Future<String>> mismatches = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final Random random = new Random(i);
+            mismatches.add(threads.submit(new Callable<String>() {
+                @Override
+                public String call() throws InterruptedException {
+                    final String[] actual = new String[1];
+                    CalculatorExpressionEvaluator.EvaluateCallback callback =
+                            new CalculatorExpressionEvaluator.EvaluateCallback() {
+                                @Override
+                                public void onEvaluate(String normalized, Double result, String errorMessage) {
+                                    actual[0] = result + "|" + errorMessage;
+                                }
+                            };
+                    start.await();
+                    for (int j = 0; j < EVALUATIONS_PER_THREAD; j++) {
+                        String expr = corpus.get(random.nextInt(corpus.size()));
+                        evaluator.evaluate(expr, callback);
+                        if (!expected.get(expr).equals(actual[0])) {
+                            return expr + " gave " + actual[0] + " instead of " + expected.get(expr);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<String> mismatch : mismatches) {
+                assertNull(mismatch.get());
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    /**
+     * Expressions as they're typed: numbers, operators and functions, plus some that are
+     * incomplete or not constant.
+     */
+    private static List<String> createCorpus(Random random, int size) {
+        List<String> corpus = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            StringBuilder builder = new StringBuilder();
+            int terms = 1 + random.nextInt(6);
+            for (int j = 0; j < terms; j++) {
+                if (j > 0) {
+                    builder.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+                }
+                if (random.nextBoolean()) {
+                    builder.append(FUNCTIONS[random.nextInt(FUNCTIONS.length)]).append(Constants.LEFT_PAREN)
+                            .append(random.nextInt(90)).append(Constants.RIGHT_PAREN);
+                } else {
+                    builder.append(1 + random.nextInt(999));
+                }
+            }
+            corpus.add(builder.toString());
+        }
+        corpus.add("3" + Constants.PLUS);
+        corpus.add("x" + Constants.PLUS + "1");
+        corpus.add("sin(30");
+        return corpus;
+    }
+}
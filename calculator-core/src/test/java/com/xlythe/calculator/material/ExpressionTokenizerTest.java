@@ -0,0 +1,31 @@
+package com.xlythe.calculator.material;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExpressionTokenizerTest {
+    private final ExpressionTokenizer mDegrees =
+            new ExpressionTokenizer(TokenizerConfig.DEFAULT.withRadians(false));
+
+    @Test
+    public void normalizesTrigonometryToDegrees() {
+        assertEquals("sind(", mDegrees.getNormalizedExpression("sin("));
+        assertEquals("sind(30)*2-1", mDegrees.getNormalizedExpression(
+                "sin(30)" + Constants.MUL + "2" + Constants.MINUS + "1"));
+    }
+
+    @Test
+    public void localizingUndoesNormalizing() {
+        String display = "sin(30)" + Constants.MUL + "2";
+        assertEquals(display, mDegrees.getLocalizedExpression(mDegrees.getNormalizedExpression(display)));
+    }
+
+    @Test
+    public void localizesInTheModeItWasNormalizedIn() {
+        ExpressionTokenizer radians = new ExpressionTokenizer(TokenizerConfig.DEFAULT.withRadians(true));
+        String degreesEntry = mDegrees.getNormalizedExpression("sin(30)");
+        assertEquals("sin(30)", radians.getLocalizedExpression(degreesEntry, false));
+        assertEquals("sin(30)", mDegrees.getLocalizedExpression("sin(30)", true));
+    }
+}
@@ -0,0 +1,102 @@
+package com.xlythe.calculator.material;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The index after random edits, against what scanning the whole text finds.
+ */
+public class ExpressionTokensTest {
+    private static final String ALPHABET = "0123456789. ()" + Constants.PLUS + Constants.MINUS + Constants.MUL + "sin";
+    private static final int EDITS = 20000;
+
+    @Test
+    public void spacesBeforeMatchScan() {
+        Random random = new Random(0);
+        StringBuilder text = new StringBuilder();
+        ExpressionTokens tokens = new ExpressionTokens();
+        for (int edit = 0; edit < EDITS; edit++) {
+            randomEdit(random, text, tokens);
+            int spaces = 0;
+            for (int position = 0; position <= text.length(); position++) {
+                assertEquals(text + " at " + position, spaces, tokens.getSpacesBefore(position));
+                if (position < text.length() && text.charAt(position) == ' ') {
+                    spaces++;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchingParenthesesMatchStack() {
+        Random random = new Random(0);
+        StringBuilder text = new StringBuilder();
+        ExpressionTokens tokens = new ExpressionTokens();
+        int[] matches = new int[64];
+        int[] open = new int[64];
+        for (int edit = 0; edit < EDITS; edit++) {
+            randomEdit(random, text, tokens);
+            int count = tokens.getCount();
+            int depth = 0;
+            for (int i = 0; i < count; i++) {
+                matches[i] = -1;
+                if (tokens.getType(i) == ExpressionTokens.LEFT_PARENTHESIS) {
+                    open[depth++] = i;
+                } else if (tokens.getType(i) == ExpressionTokens.RIGHT_PARENTHESIS && depth > 0) {
+                    matches[i] = open[--depth];
+                    matches[matches[i]] = i;
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                assertEquals(text + " at " + i, matches[i], tokens.findMatchingParenthesis(i));
+            }
+        }
+    }
+
+    @Test
+    public void unmatchedParenthesesDontMatch() {
+        ExpressionTokens tokens = new ExpressionTokens();
+        String text = ")()(";
+        tokens.replace(text, 0, 0, text.length());
+        assertEquals(-1, tokens.findMatchingParenthesis(0));
+        assertEquals(2, tokens.findMatchingParenthesis(1));
+        assertEquals(1, tokens.findMatchingParenthesis(2));
+        assertEquals(-1, tokens.findMatchingParenthesis(3));
+    }
+
+    @Test
+    public void spacesAreTokensOfTheirOwn() {
+        ExpressionTokens tokens = new ExpressionTokens();
+        String text = "12 345" + Constants.PLUS + "6";
+        tokens.replace(text, 0, 0, text.length());
+        assertEquals(ExpressionTokens.SPACE, tokens.getType(tokens.indexAt(2)));
+        assertEquals(0, tokens.getSpacesBefore(2));
+        assertEquals(1, tokens.getSpacesBefore(3));
+        assertEquals(1, tokens.getSpacesBefore(text.length()));
+    }
+
+    private static void randomEdit(Random random, StringBuilder text, ExpressionTokens tokens) {
+        // Mostly typing and deleting at a cursor, sometimes replacing a range.
+        int start = random.nextInt(text.length() + 1);
+        int end = Math.min(text.length(), start + (random.nextInt(4) == 0 ? random.nextInt(6) : 0));
+        int count = end == start && text.length() > 0 && random.nextBoolean() ? 0 : 1 + random.nextInt(3);
+        if (end == start && count == 0) {
+            start = Math.max(0, start - 1);
+        }
+        char[] inserted = new char[count];
+        for (int i = 0; i < count; i++) {
+            inserted[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        text.replace(start, end, new String(inserted));
+        tokens.replace(text, start, end, count);
+        // Keep it short enough to check every position.
+        if (text.length() > 60) {
+            int length = text.length();
+            text.setLength(0);
+            tokens.replace(text, 0, length, 0);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.xlythe.calculator.material;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FunctionSamplerTest {
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 1000;
+
+    private FunctionSampler mSampler;
+
+    @Before
+    public void setUp() {
+        mSampler = new FunctionSampler(new ExpressionTokenizer(), 2);
+    }
+
+    @After
+    public void tearDown() {
+        mSampler.shutdown();
+    }
+
+    /**
+     * Far from the origin and zoomed in, a straight line must stay straight to the pixel, rather
+     * than a staircase of the values a float can hold there.
+     */
+    @Test
+    public void zoomedInFarFromOriginIsPixelAccurate() {
+        double unitsPerPixel = 1e-9;
+        double left = 1000;
+        double top = left + HEIGHT / 2.0 * unitsPerPixel;
+        assertTrue(mSampler.setExpression("x"));
+        mSampler.setViewport(left, top, unitsPerPixel, WIDTH, HEIGHT);
+        mSampler.awaitSampled();
+
+        int count = mSampler.project();
+        assertTrue(count > 0);
+        float[] lines = mSampler.getLines();
+        for (int i = 0; i < count; i += 2) {
+            double x = left + lines[i] * unitsPerPixel;
+            double y = (top - x) / unitsPerPixel;
+            assertEquals(y, lines[i + 1], 0.5);
+        }
+    }
+
+    /**
+     * Tiles still queued when the threads are stopped, as when the graph is detached, must be
+     * sampled again once it's back, rather than waited for forever.
+     */
+    @Test(timeout = 10000)
+    public void samplesAgainAfterShutdown() {
+        double unitsPerPixel = 20.0 / WIDTH;
+        assertTrue(mSampler.setExpression("sin(x)"));
+        mSampler.setViewport(-10, 10, unitsPerPixel, WIDTH, HEIGHT);
+        mSampler.shutdown();
+
+        mSampler.setViewport(-10, 10, unitsPerPixel, WIDTH, HEIGHT);
+        mSampler.awaitSampled();
+        int count = mSampler.project();
+        // Every pixel column of the view is drawn.
+        float[] lines = mSampler.getLines();
+        boolean[] covered = new boolean[WIDTH];
+        for (int i = 0; i < count; i += 4) {
+            int from = Math.max(0, (int) Math.floor(lines[i]));
+            int to = Math.min(WIDTH, (int) Math.ceil(lines[i + 2]));
+            for (int x = from; x < to; x++) {
+                covered[x] = true;
+            }
+        }
+        for (int x = 0; x < WIDTH; x++) {
+            assertTrue("column " + x, covered[x]);
+        }
+    }
+
+    @Test
+    public void leavesGapsAtDiscontinuities() {
+        double unitsPerPixel = 4.0 / WIDTH;
+        assertTrue(mSampler.setExpression("1/x"));
+        mSampler.setViewport(-2, 2, unitsPerPixel, WIDTH, HEIGHT);
+        mSampler.awaitSampled();
+
+        int count = mSampler.project();
+        float[] lines = mSampler.getLines();
+        float middle = WIDTH / 2f;
+        for (int i = 0; i < count; i += 4) {
+            // No segment joins the two branches across x = 0.
+            assertTrue(!(lines[i] < middle && lines[i + 2] > middle));
+        }
+    }
+}
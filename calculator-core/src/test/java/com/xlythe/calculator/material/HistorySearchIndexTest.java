@@ -0,0 +1,167 @@
+package com.xlythe.calculator.material;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Searches through the trigram index, and around it, against checking every entry.
+ */
+public class HistorySearchIndexTest {
+    private static final char MUL = Constants.MUL;
+
+    private final ExpressionTokenizer mTokenizer = new ExpressionTokenizer();
+    private File mDirectory;
+    private HistoryStore mStore;
+    private HistorySearchIndex mIndex;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("history").toFile();
+        open(HistoryStore.DEFAULT_MAX_ENTRIES);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mIndex.close();
+        mStore.close();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void startsOfExpressionsAndResultsComeFirst() throws Exception {
+        mStore.append("12+5", false, 17);
+        mStore.append("3+12", false, 15);
+        mStore.append("12*2", false, 24);
+        mStore.append("4+8", false, 12);
+        mStore.append("7+1", false, 8);
+        mStore.append("1+123", false, 124);
+        mStore.flush();
+
+        // Newest first within each rank, whether or not the index has caught up.
+        assertIndices(new int[]{3, 2, 0, 5, 1}, mIndex.search("12", 10));
+        mIndex.awaitUpdate();
+        assertIndices(new int[]{3, 2, 0, 5, 1}, mIndex.search("12", 10));
+        assertIndices(new int[]{3, 2}, mIndex.search("12", 2));
+        // A query in the result, after the "=".
+        assertIndices(new int[]{5}, mIndex.search("=124", 10));
+    }
+
+    @Test
+    public void indexFindsWhatCheckingEveryEntryFinds() throws Exception {
+        Random random = new Random(0);
+        for (int i = 0; i < 3000; i++) {
+            int a = random.nextInt(200);
+            int b = random.nextInt(50);
+            // Every entry starts the same, so some trigrams are in all of them.
+            mStore.append("2+3*" + a + "*" + b + "+" + i, false, 2 + 3 * a * b + i);
+        }
+        mStore.flush();
+        mIndex.awaitUpdate();
+
+        String[] queries = {MUL + "17", "17" + MUL, "=1000", "+2999", "99" + MUL + "4", "123",
+                "2+3" + MUL, "2+3" + MUL + "1", "3" + MUL + "19" + MUL};
+        for (String query : queries) {
+            List<Integer> expected = scan(query, 200);
+            List<HistorySearchIndex.Match> matches = mIndex.search(query, 200);
+            assertIndices(query, expected, matches);
+            for (HistorySearchIndex.Match match : matches) {
+                assertEquals(mStore.get(match.index).expression, match.entry.expression);
+            }
+        }
+    }
+
+    @Test
+    public void indexIsRebuiltWhenEntriesAreRenumbered() throws Exception {
+        mIndex.close();
+        mStore.close();
+        open(20);
+        // Compacted to the newest 20 at 30, and again at 40.
+        for (int i = 0; i < 40; i++) {
+            mStore.append(i + "*7", false, i * 7);
+        }
+        mStore.flush();
+        mIndex.awaitUpdate();
+
+        List<HistorySearchIndex.Match> matches = mIndex.search(MUL + "7=", 100);
+        assertEquals(20, matches.size());
+        for (HistorySearchIndex.Match match : matches) {
+            assertEquals(mStore.get(match.index).expression, match.entry.expression);
+        }
+        assertEquals("39*7", matches.get(0).entry.expression);
+    }
+
+    @Test
+    public void findsEntriesSavedInTheOtherAngleMode() throws Exception {
+        // Saved in degrees, searched in radians, both as they're displayed.
+        mStore.append(new ExpressionTokenizer(TokenizerConfig.DEFAULT.withRadians(false))
+                .getNormalizedExpression("sin(30)"), false, 0.5);
+        mStore.flush();
+        mIndex.awaitUpdate();
+
+        List<HistorySearchIndex.Match> matches = mIndex.search("sin(3", 10);
+        assertEquals(1, matches.size());
+        assertEquals("sind(30)", matches.get(0).entry.expression);
+    }
+
+    private void open(int maxEntries) {
+        mStore = new HistoryStore(mDirectory, maxEntries);
+        mIndex = new HistorySearchIndex(mStore, mTokenizer);
+    }
+
+    /**
+     * Every entry that contains {@code query} as it's displayed, best and newest first.
+     */
+    private List<Integer> scan(String query, int limit) throws IOException {
+        List<Integer> best = new ArrayList<>();
+        List<Integer> rest = new ArrayList<>();
+        for (int i = mStore.size() - 1; i >= 0; i--) {
+            HistoryStore.Entry entry = mStore.get(i);
+            String expression = mTokenizer.getLocalizedExpression(entry.expression, entry.radians);
+            String text = expression + "=" + mTokenizer.getLocalizedExpression(ResultFormatter.format(entry.result));
+            // Like the index, a match in the expression is taken before one in the whole text.
+            int position = expression.indexOf(query);
+            if (position < 0) {
+                position = text.indexOf(query);
+            }
+            if (position == 0 || position == expression.length() || position == expression.length() + 1) {
+                best.add(i);
+            } else if (position > 0) {
+                rest.add(i);
+            }
+        }
+        best.addAll(rest);
+        return best.size() > limit ? best.subList(0, limit) : best;
+    }
+
+    private static void assertIndices(int[] expected, List<HistorySearchIndex.Match> matches) {
+        List<Integer> list = new ArrayList<>();
+        for (int index : expected) {
+            list.add(index);
+        }
+        assertIndices("", list, matches);
+    }
+
+    private static void assertIndices(String message, List<Integer> expected, List<HistorySearchIndex.Match> matches) {
+        List<Integer> actual = new ArrayList<>();
+        for (HistorySearchIndex.Match match : matches) {
+            actual.add(match.index);
+        }
+        assertEquals(message, expected, actual);
+    }
+}
@@ -0,0 +1,303 @@
+package com.xlythe.calculator.material;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The history log and its index, written, torn and reopened the way a crash or an update would
+ * leave them on disk.
+ */
+public class HistoryStoreTest {
+    private File mDirectory;
+    private HistoryStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("history").toFile();
+        mStore = new HistoryStore(mDirectory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mStore.close();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void entriesSurviveReopening() throws IOException {
+        mStore.append("1+2", false, 3);
+        mStore.incrementGroupId();
+        mStore.append("sind(30)", false, 0.5);
+        mStore.append("sin(0)", true, 0);
+        // Writes are queued.
+        mStore.flush();
+        long groupId = mStore.getGroupId();
+
+        HistoryStore store = reopen();
+        assertEquals(3, store.size());
+        assertEntry(store.get(0), "1+2", false, 3, groupId - 1);
+        assertEntry(store.get(1), "sind(30)", false, 0.5, groupId);
+        assertEntry(store.get(2), "sin(0)", true, 0, groupId);
+        assertTrue(store.get(0).timestamp <= store.get(2).timestamp);
+        assertEquals(groupId, store.getGroupId());
+    }
+
+    @Test
+    public void repeatsInAGroupAreAddedOnce() throws IOException {
+        mStore.append("1+2", false, 3);
+        mStore.append("1+2", false, 3);
+        mStore.flush();
+        assertEquals(1, mStore.size());
+
+        // Not the same: another result, another angle mode, another group.
+        mStore.append("1+2", false, 4);
+        mStore.append("1+2", true, 4);
+        mStore.incrementGroupId();
+        mStore.append("1+2", true, 4);
+        mStore.flush();
+        assertEquals(4, mStore.size());
+    }
+
+    @Test
+    public void tornRecordAtTheEndIsCutOff() throws IOException {
+        appendNumbers(3);
+        mStore.close();
+        File log = new File(mDirectory, "history.log");
+        long length = log.length();
+        truncate(log, length - 3);
+
+        HistoryStore store = reopen();
+        assertEquals(2, store.size());
+        assertEquals("1", store.get(1).expression);
+        // The torn bytes are gone, so the next record follows the last whole one.
+        store.append("next", false, 0);
+        store = reopen();
+        assertEquals(3, store.size());
+        assertEquals("next", store.get(2).expression);
+    }
+
+    @Test
+    public void corruptRecordAtTheEndIsCutOff() throws IOException {
+        appendNumbers(3);
+        mStore.close();
+        File log = new File(mDirectory, "history.log");
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            // The last byte of the last expression, right before the CRC.
+            file.seek(file.length() - 5);
+            file.write('9');
+        }
+
+        HistoryStore store = reopen();
+        assertEquals(2, store.size());
+        assertEquals("1", store.get(1).expression);
+    }
+
+    @Test
+    public void missingIndexIsRebuilt() throws IOException {
+        appendNumbers(100);
+        mStore.incrementGroupId();
+        mStore.flush();
+        long groupId = mStore.getGroupId();
+        mStore.close();
+        assertTrue(new File(mDirectory, "history.idx").delete());
+
+        HistoryStore store = reopen();
+        assertNumbers(store, 0, 100);
+        // Recovered from the records, so new entries don't join an old group.
+        assertEquals(groupId, store.getGroupId());
+    }
+
+    @Test
+    public void indexBehindTheLogCatchesUp() throws IOException {
+        appendNumbers(10);
+        mStore.close();
+        File index = new File(mDirectory, "history.idx");
+        File stale = new File(mDirectory, "stale");
+        Files.copy(index.toPath(), stale.toPath());
+
+        HistoryStore store = reopen();
+        for (int i = 10; i < 50; i++) {
+            store.append(String.valueOf(i), false, i);
+        }
+        store.close();
+        Files.move(stale.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        assertNumbers(reopen(), 0, 50);
+    }
+
+    @Test
+    public void indexOfAnotherGenerationIsRebuilt() throws IOException {
+        appendNumbers(10);
+        mStore.close();
+        File index = new File(mDirectory, "history.idx");
+        File old = new File(mDirectory, "old");
+        Files.copy(index.toPath(), old.toPath());
+
+        // A compaction rewrites the log under a new generation.
+        HistoryStore store = reopen();
+        store.clear();
+        for (int i = 0; i < 5; i++) {
+            store.append(String.valueOf(100 + i), false, 100 + i);
+        }
+        store.close();
+        // As if the process died between renaming the new log and the new index into place.
+        Files.move(old.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        assertNumbers(reopen(), 100, 5);
+    }
+
+    @Test
+    public void compactionKeepsTheNewestEntries() throws IOException {
+        mStore.close();
+        mStore = new HistoryStore(mDirectory, 20);
+        long generation = mStore.getGeneration();
+        // Compacts once there are 30, down to 20.
+        appendNumbers(30);
+        mStore.flush();
+        assertNotEquals(generation, mStore.getGeneration());
+        assertNumbers(mStore, 10, 20);
+        assertNumbers(reopen(), 10, 20);
+    }
+
+    @Test
+    public void readsDuringCompactionSeeWholeEntries() throws Exception {
+        mStore.close();
+        mStore = new HistoryStore(mDirectory, 20);
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        Future<Integer> reads = reader.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                int reads = 0;
+                while (!done.get()) {
+                    long generation = mStore.getGeneration();
+                    int size = mStore.size();
+                    double last = -1;
+                    for (int i = 0; i < size; i++) {
+                        HistoryStore.Entry entry;
+                        try {
+                            entry = mStore.get(i);
+                        } catch (IndexOutOfBoundsException e) {
+                            // Dropped by a compaction since size() was read.
+                            break;
+                        }
+                        // Each entry's expression is its result.
+                        assertEquals(Double.parseDouble(entry.expression), entry.result, 0);
+                        if (mStore.getGeneration() == generation) {
+                            // Not renumbered, so still oldest first.
+                            assertTrue(entry.result > last);
+                        }
+                        last = entry.result;
+                        reads++;
+                    }
+                }
+                return reads;
+            }
+        });
+        try {
+            appendNumbers(1000);
+            mStore.flush();
+        } finally {
+            done.set(true);
+            reader.shutdown();
+        }
+        // Rethrows what the reader found.
+        reads.get();
+        assertEquals(20, mStore.size());
+        assertEquals(999, mStore.get(19).result, 0);
+    }
+
+    @Test
+    public void clearKeepsCountingGroups() throws IOException {
+        appendNumbers(5);
+        mStore.incrementGroupId();
+        mStore.flush();
+        long groupId = mStore.getGroupId();
+        mStore.clear();
+        mStore.flush();
+        assertEquals(0, mStore.size());
+        assertEquals(groupId, mStore.getGroupId());
+        assertEquals(0, reopen().size());
+    }
+
+    @Test
+    public void expressionLengthIsCheckedInUtf8() {
+        char[] ascii = new char[HistoryStore.MAX_EXPRESSION_BYTES];
+        Arrays.fill(ascii, '1');
+        assertTrue(HistoryStore.canAppend(new String(ascii)));
+        assertFalse(HistoryStore.canAppend(new String(ascii) + "1"));
+
+        // Three bytes each.
+        char[] symbols = new char[HistoryStore.MAX_EXPRESSION_BYTES / 3 + 1];
+        Arrays.fill(symbols, Constants.MINUS);
+        assertFalse(HistoryStore.canAppend(new String(symbols)));
+        assertTrue(HistoryStore.canAppend(new String(symbols, 1, symbols.length - 1)));
+    }
+
+    @Test
+    public void longestExpressionSurvivesReopening() throws IOException {
+        char[] ascii = new char[HistoryStore.MAX_EXPRESSION_BYTES];
+        Arrays.fill(ascii, '1');
+        String expression = new String(ascii);
+        mStore.append(expression, false, 1);
+        assertEquals(expression, reopen().get(0).expression);
+    }
+
+    private HistoryStore reopen() throws IOException {
+        mStore.close();
+        mStore = new HistoryStore(mDirectory);
+        return mStore;
+    }
+
+    private void appendNumbers(int count) {
+        for (int i = 0; i < count; i++) {
+            mStore.append(String.valueOf(i), false, i);
+        }
+    }
+
+    private static void assertNumbers(HistoryStore store, int first, int count) throws IOException {
+        assertEquals(count, store.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(String.valueOf(first + i), store.get(i).expression);
+            assertEquals(first + i, store.get(i).result, 0);
+        }
+    }
+
+    private static void assertEntry(HistoryStore.Entry entry, String expression, boolean radians,
+                                    double result, long groupId) {
+        assertEquals(expression, entry.expression);
+        assertEquals(radians, entry.radians);
+        assertEquals(result, entry.result, 0);
+        assertEquals(groupId, entry.groupId);
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+}
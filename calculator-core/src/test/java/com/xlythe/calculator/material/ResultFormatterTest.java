@@ -0,0 +1,142 @@
+package com.xlythe.calculator.material;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ResultFormatter against DecimalFormat, with the same patterns and US symbols.
+ * <p>
+ * The target is the shortest decimal that reads back as the double (what Double.toString
+ * prints), rounded half-even by the patterns. That's how Android's ICU-backed DecimalFormat
+ * rounds. The JVM's DecimalFormat breaks ties by the double's exact binary value instead, so it
+ * formats the shortest decimal as a BigDecimal, which it rounds exactly as written.
+ */
+public class ResultFormatterTest {
+    private static final int RANDOM_VALUES = 200000;
+
+    private final DecimalFormat mFixed = new DecimalFormat("#.########", DecimalFormatSymbols.getInstance(Locale.US));
+    private final DecimalFormat mScientific = new DecimalFormat("0.########E0", DecimalFormatSymbols.getInstance(Locale.US));
+
+    private String expected(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "∞" : "-∞";
+        }
+        if (value == 0) {
+            return 1 / value < 0 ? "-0" : "0";
+        }
+        BigDecimal shortest = new BigDecimal(Double.toString(value));
+        return value > ResultFormatter.SCIENTIFIC_THRESHOLD ? mScientific.format(shortest) : mFixed.format(shortest);
+    }
+
+    private void check(double value) {
+        assertEquals(Double.toString(value), expected(value), ResultFormatter.format(value));
+        assertEquals(Double.toString(-value), expected(-value), ResultFormatter.format(-value));
+    }
+
+    @Test
+    public void specialValues() {
+        assertEquals("NaN", ResultFormatter.format(Double.NaN));
+        assertEquals("∞", ResultFormatter.format(Double.POSITIVE_INFINITY));
+        assertEquals("-∞", ResultFormatter.format(Double.NEGATIVE_INFINITY));
+        assertEquals("0", ResultFormatter.format(0.0));
+        assertEquals("-0", ResultFormatter.format(-0.0));
+    }
+
+    @Test
+    public void typicalResults() {
+        assertEquals("0.3", ResultFormatter.format(0.1 + 0.2));
+        assertEquals("3.14159265", ResultFormatter.format(Math.PI));
+        assertEquals("-0.5", ResultFormatter.format(-0.5));
+        assertEquals("1000000000000", ResultFormatter.format(1E12));
+        assertEquals("1.0000001E12", ResultFormatter.format(1000000100000.0));
+        assertEquals("1E100", ResultFormatter.format(1E100));
+        // Only positive values switch to scientific notation.
+        assertEquals("-10000000000000", ResultFormatter.format(-1E13));
+    }
+
+    /**
+     * Ties in the shortest decimal round to even, whichever side of it the double really is.
+     */
+    @Test
+    public void tiesRoundHalfEven() {
+        assertEquals("1", ResultFormatter.format(1.000000005));
+        assertEquals("1.00000002", ResultFormatter.format(1.000000015));
+        assertEquals("0", ResultFormatter.format(0.000000005));
+        assertEquals("0.00000002", ResultFormatter.format(0.000000015));
+        assertEquals("1E13", ResultFormatter.format(10000000050000.0));
+        assertEquals("1.00000002E13", ResultFormatter.format(10000000150000.0));
+    }
+
+    @Test
+    public void roundingCarriesIntoNewDigits() {
+        assertEquals("10", ResultFormatter.format(9.999999999));
+        assertEquals("1", ResultFormatter.format(0.999999999));
+        assertEquals("0.00000001", ResultFormatter.format(0.000000009));
+        assertEquals("1E13", ResultFormatter.format(9999999999999.0));
+    }
+
+    @Test
+    public void edgeCases() {
+        double[] values = {
+                Double.MIN_VALUE, Double.MIN_NORMAL, Double.MAX_VALUE, Math.nextDown(Double.MIN_NORMAL),
+                Long.MAX_VALUE, Long.MIN_VALUE, 0x1p53, 0x1p53 + 2, 0x1p63, 0x1p64,
+                ResultFormatter.SCIENTIFIC_THRESHOLD, Math.nextUp(ResultFormatter.SCIENTIFIC_THRESHOLD),
+                Math.nextDown(ResultFormatter.SCIENTIFIC_THRESHOLD),
+                0.5E-8, 0.49999999999E-8, 0.50000000001E-8, 1E-8, 0.99999999E-8, 1.5E-8, 2.5E-8,
+                0.1, 0.2, 0.3, 1.0 / 3, 2.0 / 3, 123456789.123456789, 0.000123456789,
+        };
+        for (double value : values) {
+            check(value);
+        }
+        for (int exponent = -330; exponent <= 310; exponent++) {
+            double power = Double.parseDouble("1E" + exponent);
+            check(power);
+            check(Math.nextUp(power));
+            check(Math.nextDown(power));
+            check(5 * power);
+            check(9.999999995 * power);
+        }
+    }
+
+    @Test
+    public void randomBitPatterns() {
+        Random random = new Random(0);
+        for (int i = 0; i < RANDOM_VALUES; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            if (!Double.isNaN(value)) {
+                check(value);
+            }
+        }
+    }
+
+    /**
+     * Short decimals at every scale, which is what results mostly are, and where ties are.
+     */
+    @Test
+    public void randomShortDecimals() {
+        Random random = new Random(1);
+        for (int i = 0; i < RANDOM_VALUES; i++) {
+            long unscaled = random.nextInt(2000000000) * (random.nextBoolean() ? 5L : 1L);
+            int scale = random.nextInt(40) - 20;
+            check(new BigDecimal(unscaled).scaleByPowerOfTen(-scale).doubleValue());
+        }
+    }
+
+    @Test
+    public void randomValuesInRange() {
+        Random random = new Random(2);
+        for (int i = 0; i < RANDOM_VALUES; i++) {
+            check(random.nextDouble() * Math.pow(10, random.nextInt(30) - 12));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.codetail.widget;
+
+import android.graphics.Canvas;
+import android.graphics.Outline;
+import android.graphics.Path;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewOutlineProvider;
+
+import java.util.ArrayList;
+
+/**
+ * Clips the children of a reveal layout to the reveal circle.
+ * <p>
+ * Clipped children get a circular outline and clip to it, which the render thread does without
+ * a path; moving or resizing the circle only invalidates their outlines. Software canvases can't
+ * clip to outlines, so for them {@link #clip} falls back to a path, which is rebuilt only when
+ * the circle changed.
+ */
+final class RevealClip {
+    private final ViewGroup mParent;
+
+    // The children clipped to their outlines, with the outline settings they had before.
+    private final ArrayList<View> mViews = new ArrayList<>();
+    private final ArrayList<ViewOutlineProvider> mProviders = new ArrayList<>();
+    private final ArrayList<Boolean> mClipToOutlines = new ArrayList<>();
+
+    private final Path mPath = new Path();
+    private boolean mPathValid;
+    private float mCenterX;
+    private float mCenterY;
+    private float mRadius;
+
+    private final ViewOutlineProvider mOutlineProvider = new ViewOutlineProvider() {
+        @Override
+        public void getOutline(View view, Outline outline) {
+            // The circle is in the parent's coordinates.
+            float centerX = mCenterX - view.getLeft();
+            float centerY = mCenterY - view.getTop();
+            outline.setOval(Math.round(centerX - mRadius), Math.round(centerY - mRadius),
+                    Math.round(centerX + mRadius), Math.round(centerY + mRadius));
+        }
+    };
+
+    RevealClip(ViewGroup parent) {
+        mParent = parent;
+    }
+
+    void setCircle(float centerX, float centerY, float radius) {
+        if (centerX == mCenterX && centerY == mCenterY && radius == mRadius) {
+            return;
+        }
+        mCenterX = centerX;
+        mCenterY = centerY;
+        mRadius = radius;
+        mPathValid = false;
+        for (int i = 0; i < mViews.size(); i++) {
+            mViews.get(i).invalidateOutline();
+        }
+    }
+
+    /**
+     * Clips {@code target}, or every child if {@code clipAll} is set, to the circle, and gives
+     * every other child its own outline back.
+     */
+    void update(View target, boolean clipAll) {
+        release();
+        if (clipAll) {
+            for (int i = 0; i < mParent.getChildCount(); i++) {
+                attach(mParent.getChildAt(i));
+            }
+        } else if (target != null && target.getParent() == mParent) {
+            attach(target);
+        }
+    }
+
+    /**
+     * Clips a software canvas to the circle, before a clipped child is drawn on it. Hardware
+     * canvases are left alone, since the children clip themselves.
+     */
+    void clip(Canvas canvas) {
+        if (canvas.isHardwareAccelerated()) {
+            return;
+        }
+        if (!mPathValid) {
+            mPath.reset();
+            mPath.addCircle(mCenterX, mCenterY, mRadius, Path.Direction.CW);
+            mPathValid = true;
+        }
+        canvas.clipPath(mPath);
+    }
+
+    private void attach(View child) {
+        mViews.add(child);
+        mProviders.add(child.getOutlineProvider());
+        mClipToOutlines.add(child.getClipToOutline());
+        child.setOutlineProvider(mOutlineProvider);
+        child.setClipToOutline(true);
+    }
+
+    private void release() {
+        for (int i = 0; i < mViews.size(); i++) {
+            View view = mViews.get(i);
+            view.setOutlineProvider(mProviders.get(i));
+            view.setClipToOutline(mClipToOutlines.get(i));
+        }
+        mViews.clear();
+        mProviders.clear();
+        mClipToOutlines.clear();
+    }
+}
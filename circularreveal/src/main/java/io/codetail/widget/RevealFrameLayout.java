@@ -2,7 +2,6 @@ package io.codetail.widget;
 
 import android.content.Context;
 import android.graphics.Canvas;
-import android.graphics.Path;
 import android.util.AttributeSet;
 import android.view.View;
 import android.widget.FrameLayout;
@@ -11,7 +10,7 @@ import io.codetail.animation.RevealAnimator;
 
 public class RevealFrameLayout extends FrameLayout implements RevealAnimator {
 
-    Path mRevealPath;
+    RevealClip mRevealClip;
 
     boolean mClipOutlines;
 
@@ -31,12 +30,12 @@ public class RevealFrameLayout extends FrameLayout implements RevealAnimator {
 
     public RevealFrameLayout(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        mRevealPath = new Path();
+        mRevealClip = new RevealClip(this);
     }
 
     public RevealFrameLayout(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
         super(context, attrs, defStyleAttr, defStyleRes);
-        mRevealPath = new Path();
+        mRevealClip = new RevealClip(this);
     }
 
     /**
@@ -47,6 +46,7 @@ public class RevealFrameLayout extends FrameLayout implements RevealAnimator {
     @Override
     public void setTarget(View view) {
         mTarget = view;
+        mRevealClip.update(mTarget, mClipOutlines);
     }
 
     /**
@@ -58,6 +58,7 @@ public class RevealFrameLayout extends FrameLayout implements RevealAnimator {
     public void setCenter(float centerX, float centerY) {
         mCenterX = centerX;
         mCenterY = centerY;
+        mRevealClip.setCircle(mCenterX, mCenterY, mRadius);
     }
 
     /**
@@ -68,6 +69,7 @@ public class RevealFrameLayout extends FrameLayout implements RevealAnimator {
     @Override
     public void setClipOutlines(boolean clip) {
         mClipOutlines = clip;
+        mRevealClip.update(mTarget, mClipOutlines);
     }
 
     /**
@@ -88,6 +90,7 @@ public class RevealFrameLayout extends FrameLayout implements RevealAnimator {
     @Override
     public void setRevealRadius(float radius) {
         mRadius = radius;
+        mRevealClip.setCircle(mCenterX, mCenterY, mRadius);
         invalidate();
     }
 
@@ -96,12 +99,14 @@ public class RevealFrameLayout extends FrameLayout implements RevealAnimator {
         if (!mClipOutlines && child != mTarget)
             return super.drawChild(canvas, child, drawingTime);
 
-        final int state = canvas.save();
+        if (mRadius <= 0) {
+            // Nothing of it is revealed yet.
+            return false;
+        }
 
-        mRevealPath.reset();
-        mRevealPath.addCircle(mCenterX, mCenterY, mRadius, Path.Direction.CW);
+        final int state = canvas.save();
 
-        canvas.clipPath(mRevealPath);
+        mRevealClip.clip(canvas);
 
         boolean isInvalided = super.drawChild(canvas, child, drawingTime);
 
@@ -2,7 +2,6 @@ package io.codetail.widget;
 
 import android.content.Context;
 import android.graphics.Canvas;
-import android.graphics.Path;
 import android.util.AttributeSet;
 import android.view.View;
 import android.widget.LinearLayout;
@@ -11,7 +10,7 @@ import io.codetail.animation.RevealAnimator;
 
 public class RevealLinearLayout extends LinearLayout implements RevealAnimator {
 
-    Path mRevealPath;
+    RevealClip mRevealClip;
 
     boolean mClipOutlines;
 
@@ -31,7 +30,7 @@ public class RevealLinearLayout extends LinearLayout implements RevealAnimator {
 
     public RevealLinearLayout(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs);
-        mRevealPath = new Path();
+        mRevealClip = new RevealClip(this);
     }
 
     /**
@@ -40,6 +39,7 @@ public class RevealLinearLayout extends LinearLayout implements RevealAnimator {
     @Override
     public void setTarget(View view) {
         mTarget = view;
+        mRevealClip.update(mTarget, mClipOutlines);
     }
 
     /**
@@ -49,6 +49,7 @@ public class RevealLinearLayout extends LinearLayout implements RevealAnimator {
     public void setCenter(float centerX, float centerY) {
         mCenterX = centerX;
         mCenterY = centerY;
+        mRevealClip.setCircle(mCenterX, mCenterY, mRadius);
     }
 
     /**
@@ -57,6 +58,7 @@ public class RevealLinearLayout extends LinearLayout implements RevealAnimator {
     @Override
     public void setClipOutlines(boolean clip) {
         mClipOutlines = clip;
+        mRevealClip.update(mTarget, mClipOutlines);
     }
 
     /**
@@ -73,6 +75,7 @@ public class RevealLinearLayout extends LinearLayout implements RevealAnimator {
     @Override
     public void setRevealRadius(float radius) {
         mRadius = radius;
+        mRevealClip.setCircle(mCenterX, mCenterY, mRadius);
         invalidate();
     }
 
@@ -81,12 +84,14 @@ public class RevealLinearLayout extends LinearLayout implements RevealAnimator {
         if (!mClipOutlines && child != mTarget)
             return super.drawChild(canvas, child, drawingTime);
 
-        final int state = canvas.save();
+        if (mRadius <= 0) {
+            // Nothing of it is revealed yet.
+            return false;
+        }
 
-        mRevealPath.reset();
-        mRevealPath.addCircle(mCenterX, mCenterY, mRadius, Path.Direction.CW);
+        final int state = canvas.save();
 
-        canvas.clipPath(mRevealPath);
+        mRevealClip.clip(canvas);
 
         boolean isInvalided = super.drawChild(canvas, child, drawingTime);
 
@@ -3,7 +3,6 @@ package io.codetail.widget;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.graphics.Path;
 import android.util.AttributeSet;
 import android.view.View;
 
@@ -11,8 +10,7 @@ import io.codetail.animation.RevealAnimator;
 
 public class RevealView extends View implements RevealAnimator {
 
-    final Paint mPaint = new Paint();
-    Path mRevealPath;
+    final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
     float mCenterX;
     float mCenterY;
     float mRadius;
@@ -28,7 +26,6 @@ public class RevealView extends View implements RevealAnimator {
 
     public RevealView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        mRevealPath = new Path();
     }
 
     @Override
@@ -80,6 +77,7 @@ public class RevealView extends View implements RevealAnimator {
 
     public void setRevealColor(int color) {
         mPaint.setColor(color);
+        invalidate();
     }
 
     @Override
@@ -87,14 +85,7 @@ public class RevealView extends View implements RevealAnimator {
         if (mTarget == null) {
             canvas.drawColor(mPaint.getColor());
         } else {
-            final int state = canvas.save();
-
-            mRevealPath.reset();
-            mRevealPath.addCircle(mCenterX, mCenterY, mRadius, Path.Direction.CW);
-
-            canvas.drawPath(mRevealPath, mPaint);
-
-            canvas.restoreToCount(state);
+            canvas.drawCircle(mCenterX, mCenterY, mRadius, mPaint);
         }
     }
 }